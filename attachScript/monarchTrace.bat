@@ -0,0 +1,25 @@
+@echo off
+
+rem Check if JAVA_HOME is set
+if "%JAVA_HOME%" == "" (
+    echo JAVA_HOME environment variable is not set. Please set it to the Java installation directory.
+    exit /b 1
+)
+
+if "%~1" == "" (
+    echo Usage: monarchTrace.bat ^<agent JAR file^> -file ^<agent.mtrace^> [more files] [-format text^|json] [-method ^<pattern^>] [-thread ^<pattern^>] [-from ^<time^>] [-to ^<time^>]
+    exit /b 1
+)
+
+set agentJar=%~1
+shift
+
+set args=
+:collect
+if "%~1" == "" goto run
+set args=%args% %1
+shift
+goto collect
+
+:run
+"%JAVA_HOME%\bin\java" -cp "%agentJar%" com.asm.mja.trace.TraceDecoderCLI %args%
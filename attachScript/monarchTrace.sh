@@ -0,0 +1,17 @@
+#!/bin/bash
+
+# Check if JAVA_HOME is set
+if [ -z "$JAVA_HOME" ]; then
+    echo "JAVA_HOME environment variable is not set. Please set it to the Java installation directory."
+    exit 1
+fi
+
+if [ $# -lt 1 ]; then
+    echo "Usage: monarchTrace.sh <agent JAR file> -file <agent.mtrace> [more files] [-format text|json] [-method <pattern>] [-thread <pattern>] [-from <time>] [-to <time>]"
+    exit 1
+fi
+
+agentJar="$1"
+shift
+
+"$JAVA_HOME/bin/java" -cp "$agentJar" com.asm.mja.trace.TraceDecoderCLI "$@"
@@ -0,0 +1,105 @@
+package com.asm.mja.benchmarks;
+
+import com.asm.mja.benchmarks.target.OverheadTarget;
+import com.asm.mja.benchmarks.target.OverheadWorkload;
+import com.asm.mja.config.Config;
+import com.asm.mja.rule.RuleParser;
+import com.asm.mja.transformer.EngineType;
+import com.asm.mja.transformer.GlobalTransformer;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures what each rule costs the method it is attached to. The target class is
+ * transformed through {@link GlobalTransformer}, exactly as the agent would transform
+ * it at class load, and is then defined in a child classloader. Rule NONE leaves
+ * the class untouched and is the baseline the other rules compare against.
+ *
+ * HEAP rules are left out, since every call would write a heap dump.
+ *
+ * Run with "-prof gc" (or through {@link #main(String[])}) to see the allocation
+ * rate each rule adds next to its latency.
+ *
+ * @author ashut
+ * @since 16-10-2026
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ActionOverheadBenchmark {
+
+    private static final String TARGET = OverheadTarget.class.getName();
+    private static final String[] TARGET_METHODS = {"noArgs", "primitiveArgs", "objectArgs", "leaf"};
+
+    @Param({"JAVASSIST", "ASM"})
+    public EngineType engine;
+
+    @Param({"NONE", "PROFILE", "ENTRY::ARGS", "ENTRY::STACK", "ENTRY::STACK[depth=8]", "EXIT::RET", "EXIT::STACK"})
+    public String rule;
+
+    @Param({"32"})
+    public int stackDepth;
+
+    private OverheadWorkload workload;
+    private final Object value = new Object();
+    private int counter;
+
+    @Setup
+    public void setup() throws Exception {
+        Config config = new Config();
+        config.setInstrumentationEngine(engine);
+        List<String> ruleStrings = new ArrayList<>();
+        if (!rule.equals("NONE")) {
+            for (String method : TARGET_METHODS) {
+                ruleStrings.add(TARGET + "::" + method + "@" + rule);
+            }
+        }
+        GlobalTransformer transformer = new GlobalTransformer(config, BenchmarkSupport.traceFileLogger(), RuleParser.parseRules(ruleStrings));
+
+        byte[] original = BenchmarkSupport.classBytes(OverheadTarget.class);
+        byte[] transformed = transformer.transform(OverheadTarget.class.getClassLoader(), TARGET.replace('.', '/'),
+                null, OverheadTarget.class.getProtectionDomain(), original);
+        if (!rule.equals("NONE") && transformed == original) {
+            throw new IllegalStateException("GlobalTransformer did not instrument " + TARGET + " for rule " + rule);
+        }
+        workload = (OverheadWorkload) BenchmarkSupport.newIsolatedInstance(TARGET, transformed);
+    }
+
+    @Benchmark
+    public void noArgs() {
+        workload.noArgs();
+    }
+
+    @Benchmark
+    public long primitiveArgs() {
+        counter++;
+        return workload.primitiveArgs(counter, 7L);
+    }
+
+    @Benchmark
+    public String objectArgs() {
+        return workload.objectArgs("order", value);
+    }
+
+    @Benchmark
+    public int deepStack() {
+        return workload.deepStack(stackDepth);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(ActionOverheadBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+    }
+}
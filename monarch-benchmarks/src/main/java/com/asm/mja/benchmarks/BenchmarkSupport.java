@@ -0,0 +1,96 @@
+package com.asm.mja.benchmarks;
+
+import com.asm.mja.logging.OverflowPolicy;
+import com.asm.mja.logging.TraceFileLogger;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+
+/**
+ * Shared setup for the benchmarks: a trace logger writing to a scratch directory
+ * and a way to load instrumented bytecode next to the untouched original.
+ *
+ * @author ashut
+ * @since 16-10-2026
+ */
+
+public class BenchmarkSupport {
+
+    private static TraceFileLogger logger = null;
+
+    /**
+     * Returns the trace logger, initializing it on first use. Records go through the
+     * asynchronous writer with DROP_NEWEST, so disk speed does not leak into the results.
+     *
+     * @return The initialized trace logger.
+     */
+    public static synchronized TraceFileLogger traceFileLogger() throws IOException {
+        if (logger == null) {
+            logger = TraceFileLogger.getInstance();
+            logger.init(Files.createTempDirectory("monarch-bench").toString());
+            logger.startAsyncWriter(64 * 1024, OverflowPolicy.DROP_NEWEST);
+        }
+        return logger;
+    }
+
+    /**
+     * Reads the bytecode of a class from the classpath.
+     *
+     * @param clazz The class to read.
+     * @return The bytecode of the class.
+     */
+    public static byte[] classBytes(Class<?> clazz) throws IOException {
+        String resource = clazz.getName().replace('.', '/') + ".class";
+        try (InputStream is = clazz.getClassLoader().getResourceAsStream(resource)) {
+            if (is == null) {
+                throw new IOException("Class file not found: " + resource);
+            }
+            ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int bytesRead;
+            while ((bytesRead = is.read(buffer)) != -1) {
+                baos.write(buffer, 0, bytesRead);
+            }
+            return baos.toByteArray();
+        }
+    }
+
+    /**
+     * Defines a class from the given bytecode in a fresh child classloader and creates an instance of it.
+     *
+     * @param className The fully qualified name of the class.
+     * @param bytecode  The (possibly instrumented) bytecode of the class.
+     * @return A new instance of the class.
+     */
+    public static Object newIsolatedInstance(String className, byte[] bytecode) throws ReflectiveOperationException {
+        ClassLoader loader = new IsolatingClassLoader(BenchmarkSupport.class.getClassLoader(), className, bytecode);
+        return loader.loadClass(className).getDeclaredConstructor().newInstance();
+    }
+
+    private static class IsolatingClassLoader extends ClassLoader {
+        private final String className;
+        private final byte[] bytecode;
+
+        IsolatingClassLoader(ClassLoader parent, String className, byte[] bytecode) {
+            super(parent);
+            this.className = className;
+            this.bytecode = bytecode;
+        }
+
+        @Override
+        protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+            if (!name.equals(className)) {
+                return super.loadClass(name, resolve);
+            }
+            synchronized (getClassLoadingLock(name)) {
+                Class<?> loaded = findLoadedClass(name);
+                if (loaded == null) {
+                    loaded = defineClass(name, bytecode, 0, bytecode.length);
+                }
+                return loaded;
+            }
+        }
+    }
+}
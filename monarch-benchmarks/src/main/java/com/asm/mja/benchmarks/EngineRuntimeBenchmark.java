@@ -0,0 +1,61 @@
+package com.asm.mja.benchmarks;
+
+import com.asm.mja.benchmarks.target.Workload;
+import com.asm.mja.benchmarks.target.WorkloadTarget;
+import com.asm.mja.config.Config;
+import com.asm.mja.logging.TraceFileLogger;
+import com.asm.mja.rule.RuleParser;
+import com.asm.mja.transformer.AsmEngine;
+import com.asm.mja.transformer.InstrumentationEngine;
+import com.asm.mja.transformer.JavassistEngine;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the overhead an instrumented method pays at runtime with each engine,
+ * against the same method left uninstrumented (engine NONE).
+ *
+ * @author ashut
+ * @since 16-10-2026
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EngineRuntimeBenchmark {
+
+    private static final String TARGET = WorkloadTarget.class.getName();
+
+    @Param({"NONE", "JAVASSIST", "ASM"})
+    public String engine;
+
+    @Param({"PROFILE", "ENTRY::ARGS", "EXIT::RET"})
+    public String rule;
+
+    private Workload workload;
+    private int counter;
+
+    @Setup
+    public void setup() throws Exception {
+        TraceFileLogger logger = BenchmarkSupport.traceFileLogger();
+        Config config = new Config();
+        byte[] bytecode = BenchmarkSupport.classBytes(WorkloadTarget.class);
+        if (!engine.equals("NONE")) {
+            InstrumentationEngine javassistEngine = new JavassistEngine(config, logger);
+            InstrumentationEngine instrumentationEngine = engine.equals("ASM") ? new AsmEngine(config, logger, javassistEngine) : javassistEngine;
+            bytecode = instrumentationEngine.instrument(WorkloadTarget.class.getClassLoader(), TARGET, bytecode,
+                    RuleParser.parseRules(Collections.singletonList(TARGET + "::compute@" + rule)));
+        }
+        workload = (Workload) BenchmarkSupport.newIsolatedInstance(TARGET, bytecode);
+    }
+
+    @Benchmark
+    public long compute() {
+        counter++;
+        return workload.compute(counter, 7);
+    }
+}
@@ -0,0 +1,75 @@
+package com.asm.mja.benchmarks;
+
+import com.asm.mja.benchmarks.target.WorkloadTarget;
+import com.asm.mja.config.Config;
+import com.asm.mja.exception.TransformException;
+import com.asm.mja.logging.TraceFileLogger;
+import com.asm.mja.rule.Rule;
+import com.asm.mja.rule.RuleParser;
+import com.asm.mja.transformer.AsmEngine;
+import com.asm.mja.transformer.EngineType;
+import com.asm.mja.transformer.InstrumentationEngine;
+import com.asm.mja.transformer.JavassistEngine;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures how long each engine takes to instrument one class, i.e. the cost
+ * added to class loading and to every retransformation.
+ *
+ * @author ashut
+ * @since 16-10-2026
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EngineTransformBenchmark {
+
+    private static final String TARGET = WorkloadTarget.class.getName();
+
+    @Param({"JAVASSIST", "ASM"})
+    public EngineType engine;
+
+    @Param({"1", "4", "8"})
+    public int ruleCount;
+
+    private InstrumentationEngine instrumentationEngine;
+    private byte[] original;
+    private List<Rule> rules;
+
+    @Setup
+    public void setup() throws Exception {
+        TraceFileLogger logger = BenchmarkSupport.traceFileLogger();
+        Config config = new Config();
+        InstrumentationEngine javassistEngine = new JavassistEngine(config, logger);
+        instrumentationEngine = engine == EngineType.ASM ? new AsmEngine(config, logger, javassistEngine) : javassistEngine;
+        original = BenchmarkSupport.classBytes(WorkloadTarget.class);
+
+        String[] available = {
+                TARGET + "::compute@PROFILE",
+                TARGET + "::compute@ENTRY::ARGS",
+                TARGET + "::compute@EXIT::RET",
+                TARGET + "::describe@ENTRY::ARGS",
+                TARGET + "::describe@EXIT::RET",
+                TARGET + "::touch@ENTRY::STACK",
+                TARGET + "::touch@EXIT::RET",
+                TARGET + "::describe@PROFILE"
+        };
+        List<String> ruleStrings = new ArrayList<>();
+        for (int i = 0; i < ruleCount; i++) {
+            ruleStrings.add(available[i]);
+        }
+        rules = RuleParser.parseRules(ruleStrings);
+    }
+
+    @Benchmark
+    public byte[] instrument() throws TransformException {
+        return instrumentationEngine.instrument(WorkloadTarget.class.getClassLoader(), TARGET, original, rules);
+    }
+}
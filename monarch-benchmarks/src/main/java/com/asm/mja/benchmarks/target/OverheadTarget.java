@@ -0,0 +1,42 @@
+package com.asm.mja.benchmarks.target;
+
+/**
+ * The class instrumented by {@link com.asm.mja.benchmarks.ActionOverheadBenchmark}.
+ * deepStack() recurses before reaching leaf(), so STACK rules on leaf() capture
+ * a stack as deep as the benchmark asks for.
+ *
+ * @author ashut
+ * @since 16-10-2026
+ */
+
+public class OverheadTarget implements OverheadWorkload {
+
+    private long state;
+
+    @Override
+    public void noArgs() {
+        state++;
+    }
+
+    @Override
+    public long primitiveArgs(int a, long b) {
+        return a * 31L + b;
+    }
+
+    @Override
+    public String objectArgs(String name, Object value) {
+        return value == null ? name : null;
+    }
+
+    @Override
+    public int deepStack(int depth) {
+        if (depth <= 0) {
+            return leaf(depth);
+        }
+        return deepStack(depth - 1) + 1;
+    }
+
+    public int leaf(int depth) {
+        return depth;
+    }
+}
@@ -0,0 +1,20 @@
+package com.asm.mja.benchmarks.target;
+
+/**
+ * The view {@link com.asm.mja.benchmarks.ActionOverheadBenchmark} has of its target,
+ * one method per kind of signature a rule may be attached to.
+ *
+ * @author ashut
+ * @since 16-10-2026
+ */
+
+public interface OverheadWorkload {
+
+    void noArgs();
+
+    long primitiveArgs(int a, long b);
+
+    String objectArgs(String name, Object value);
+
+    int deepStack(int depth);
+}
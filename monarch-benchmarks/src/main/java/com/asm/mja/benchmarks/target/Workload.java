@@ -0,0 +1,18 @@
+package com.asm.mja.benchmarks.target;
+
+/**
+ * The view benchmarks have of a target class. The target is defined in an isolated
+ * classloader, so it is only reached through this interface from the parent loader.
+ *
+ * @author ashut
+ * @since 16-10-2026
+ */
+
+public interface Workload {
+
+    long compute(int a, int b);
+
+    String describe(String name, long value);
+
+    void touch();
+}
@@ -0,0 +1,29 @@
+package com.asm.mja.benchmarks.target;
+
+/**
+ * The class whose bytecode the engine benchmarks instrument. Method bodies are kept
+ * small and loop free so that the advice dominates the measured cost.
+ *
+ * @author ashut
+ * @since 16-10-2026
+ */
+
+public class WorkloadTarget implements Workload {
+
+    private long state;
+
+    @Override
+    public long compute(int a, int b) {
+        return a * 31L + b;
+    }
+
+    @Override
+    public String describe(String name, long value) {
+        return name;
+    }
+
+    @Override
+    public void touch() {
+        state++;
+    }
+}
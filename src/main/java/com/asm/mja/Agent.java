@@ -1,17 +1,27 @@
 package com.asm.mja;
 
+import com.asm.mja.bytecode.TransformCache;
 import com.asm.mja.config.Config;
 import com.asm.mja.config.ConfigParser;
 import com.asm.mja.config.ConfigValidator;
 import com.asm.mja.rule.Rule;
 import com.asm.mja.rule.RuleParser;
 import com.asm.mja.logging.AgentLogger;
+import com.asm.mja.logging.SegmentPolicy;
 import com.asm.mja.logging.TraceFileLogger;
+import com.asm.mja.logging.ValueRenderer;
+import com.asm.mja.metrics.MetricsReporter;
+import com.asm.mja.metrics.MetricsTarget;
+import com.asm.mja.metrics.PrometheusEndpoint;
+import com.asm.mja.metrics.StackDump;
+import com.asm.mja.metrics.StackTable;
 import com.asm.mja.monitor.JVMMemoryMonitor;
+import com.asm.mja.transformer.ClassRedefiner;
 import com.asm.mja.transformer.GlobalTransformer;
 import com.asm.mja.utils.*;
 
 import java.io.File;
+import java.io.IOException;
 import java.lang.instrument.Instrumentation;
 import java.lang.instrument.UnmodifiableClassException;
 import java.util.*;
@@ -91,7 +101,12 @@ public class Agent {
 
         AgentLogger.debug("Creating TraceFileLogger instance for instrumentation logging");
 
-        TraceFileLogger traceFileLogger = AgentConfigurator.setupTraceFileLogger(config.getTraceFileLocation());
+        TraceFileLogger traceFileLogger = AgentConfigurator.setupTraceFileLogger(config.getTraceFileLocation(), config.getTraceFormat(), segmentPolicy(config));
+
+        if(config.isAsyncTrace()) {
+            AgentLogger.debug("Starting asynchronous trace writer");
+            traceFileLogger.startAsyncWriter(config.getTraceBufferSize(), config.getTraceOverflowPolicy());
+        }
 
         traceFileLogger.trace(AGENT_NAME + " Java Agent " + VERSION);
         traceFileLogger.trace(JVMUtils.getJVMCommandLine());
@@ -108,20 +123,43 @@ public class Agent {
             startJVMMemoryMonitorThread(traceFileLogger);
         }
 
+        startMetricsReporterThread(traceFileLogger, config.getMetricsReportInterval(), config.getMetricsTarget());
+
+        StackTable.configure(config.isStackDedup(), config.getStackTableSize());
+        ValueRenderer.configure(config.getValueMaxLength(), config.getValueMaxElements(), config.getValueMaxDepth(),
+                config.getValueIdentityClasses());
+        StackDump stackDump = new StackDump(traceFileLogger, traceFileLogger.getTraceDir());
+        stackDump.register();
+
         List<String> rulesString = new ArrayList<String>(config.getAgentRules());
         List<Rule> rules = RuleParser.parseRules(rulesString);
         GlobalTransformer globalTransformer = new GlobalTransformer(config, traceFileLogger, rules);
+        if (config.getTransformCacheDir() != null) {
+            openTransformCache(globalTransformer, traceFileLogger, config);
+        }
+        PrometheusEndpoint prometheusEndpoint = null;
+        if (config.getPrometheusPort() > 0) {
+            prometheusEndpoint = startPrometheusEndpoint(traceFileLogger, globalTransformer, config.getPrometheusPort());
+        }
 
         if (launchType.equalsIgnoreCase(ATTACH_VM_MODE)) {
             AgentLogger.debug("Launch Type \"" + launchType + "\" detected, going to re-transform classes");
             if (inst.isRetransformClassesSupported()) {
-                Class<?>[] classesToInstrument = ClassRuleUtils.ruleClasses(inst.getAllLoadedClasses(), rules);
+                Class<?>[] classesToInstrument = Arrays.stream(ClassRuleUtils.ruleClasses(inst.getAllLoadedClasses(), rules))
+                        .filter(inst::isModifiableClass)
+                        .toArray(Class<?>[]::new);
                 inst.addTransformer(globalTransformer, Boolean.TRUE);
-                try {
-                    AgentLogger.debug("Re-transforming classes: " + Arrays.toString(classesToInstrument));
-                    inst.retransformClasses(classesToInstrument);
-                } catch (UnmodifiableClassException e) {
-                    AgentLogger.error("Error re-transforming classes: " + e.getMessage(), e);
+                if (config.isParallelRetransform() && inst.isRedefineClassesSupported()) {
+                    AgentLogger.debug("Pre-transforming " + classesToInstrument.length + " classes on " + config.getRetransformParallelism() + " threads");
+                    new ClassRedefiner(inst, globalTransformer, traceFileLogger)
+                            .redefine(Arrays.asList(classesToInstrument), config.getRetransformParallelism());
+                } else {
+                    try {
+                        AgentLogger.debug("Re-transforming classes: " + Arrays.toString(classesToInstrument));
+                        inst.retransformClasses(classesToInstrument);
+                    } catch (UnmodifiableClassException e) {
+                        AgentLogger.error("Error re-transforming classes: " + e.getMessage(), e);
+                    }
                 }
             } else {
                 AgentLogger.error("Re-transformation not supported by this JVM");
@@ -135,10 +173,16 @@ public class Agent {
         startInstrumentationManager(inst, configFile, globalTransformer, traceFileLogger, rules, config.getConfigRefreshInterval());
 
         AgentLogger.debug("Setting up shutdown hook to close resources");
+        PrometheusEndpoint endpoint = prometheusEndpoint;
         Thread shutdownHook = new Thread(() -> {
+            if(endpoint != null)
+                endpoint.shutdown();
             JVMMemoryMonitor jvmMemoryMonitor = JVMMemoryMonitor.getInstance();
             if(!jvmMemoryMonitor.isDown())
                 JVMMemoryMonitor.getInstance().shutdown();
+            MetricsReporter.getInstance().shutdown();
+            stackDump.dumpAtShutdown();
+            globalTransformer.close();
             traceFileLogger.close();
         });
         shutdownHook.setName("monarch-shutdown-hook");
@@ -160,6 +204,73 @@ public class Agent {
         jvmMemoryMonitor.execute();
     }
 
+    /**
+     * Opens the on-disk cache of instrumented bytecode, or continues without it if it can't be opened
+     *
+     * @param globalTransformer The transformer to use the cache
+     * @param traceFileLogger   The logger to be used by the cache
+     * @param config            The config with the cache directory and size bound
+     */
+    private static void openTransformCache(GlobalTransformer globalTransformer, TraceFileLogger traceFileLogger, Config config) {
+        try {
+            AgentLogger.debug("Opening transform cache in " + config.getTransformCacheDir());
+            globalTransformer.setTransformCache(new TransformCache(traceFileLogger, config.getTransformCacheDir(),
+                    config.getTransformCacheMaxSizeMB() * 1024L * 1024L, VERSION));
+        } catch (IOException e) {
+            AgentLogger.error("Error opening transform cache, classes will be instrumented without it: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Builds the trace segment policy from the config
+     *
+     * @param config The config with the segment size and retention
+     * @return The segment policy, or null if the trace is written to a single file
+     */
+    private static SegmentPolicy segmentPolicy(Config config) {
+        if (config.getTraceSegmentSizeMB() == 0) {
+            return null;
+        }
+        return new SegmentPolicy(config.getTraceSegmentSizeMB() * 1024L * 1024L, config.getTraceMaxSegments(),
+                config.getTraceMaxSizeMB() * 1024L * 1024L, config.isTraceCompressSegments());
+    }
+
+    /**
+     * Starts the metrics reporter thread
+     *
+     * @param traceFileLogger  The logger to be used by the reporter
+     * @param reportInterval   The interval (in seconds) at which metrics are reported
+     * @param target           Where the summary blocks are written
+     */
+    private static void startMetricsReporterThread(TraceFileLogger traceFileLogger, long reportInterval, MetricsTarget target) {
+        MetricsReporter metricsReporter = MetricsReporter.getInstance();
+        metricsReporter.setLogger(traceFileLogger);
+        metricsReporter.setReportInterval(reportInterval);
+        metricsReporter.setTarget(target);
+        metricsReporter.execute();
+    }
+
+    /**
+     * Starts the Prometheus endpoint, or continues without it if it can't be started
+     *
+     * @param traceFileLogger   The logger whose output is exposed
+     * @param globalTransformer The transformer whose overhead is exposed
+     * @param port              The port to listen on at localhost
+     * @return The endpoint, or null if it couldn't be started
+     */
+    private static PrometheusEndpoint startPrometheusEndpoint(TraceFileLogger traceFileLogger, GlobalTransformer globalTransformer, int port) {
+        try {
+            AgentLogger.debug("Starting Prometheus endpoint on port " + port);
+            PrometheusEndpoint prometheusEndpoint = new PrometheusEndpoint(traceFileLogger, globalTransformer, port);
+            prometheusEndpoint.execute();
+            return prometheusEndpoint;
+        } catch (IOException | LinkageError e) {
+            // LinkageError if the JDK's HTTP server (module jdk.httpserver) isn't available
+            AgentLogger.error("Error starting Prometheus endpoint, metrics won't be served: " + e.getMessage());
+            return null;
+        }
+    }
+
     /**
      * Initializes and starts the Instrumentation Manager with the provided parameters.
      *
@@ -176,6 +287,7 @@ public class Agent {
         instrumentationManager.setInstrumentation(inst);
         instrumentationManager.setConfigFilePath(configFile);
         instrumentationManager.setJvmMemoryMonitor(JVMMemoryMonitor.getInstance());
+        instrumentationManager.setMetricsReporter(MetricsReporter.getInstance());
         instrumentationManager.setTransformer(globalTransformer);
         instrumentationManager.setCurrentRules(rules);
         instrumentationManager.setLastModified(new File(configFile).lastModified());
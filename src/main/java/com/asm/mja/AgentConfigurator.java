@@ -2,7 +2,9 @@ package com.asm.mja;
 
 import com.asm.mja.logging.AgentLogger;
 import com.asm.mja.logging.LogLevel;
+import com.asm.mja.logging.SegmentPolicy;
 import com.asm.mja.logging.TraceFileLogger;
+import com.asm.mja.logging.TraceFormat;
 import com.asm.mja.utils.DateUtils;
 import com.asm.mja.utils.JVMUtils;
 
@@ -150,17 +152,17 @@ public class AgentConfigurator {
         return configFile;
     }
 
-    public static TraceFileLogger setupTraceFileLogger(String traceFileLocation) {
+    public static TraceFileLogger setupTraceFileLogger(String traceFileLocation, TraceFormat traceFormat, SegmentPolicy segmentPolicy) {
         TraceFileLogger traceFileLogger = null;
         String traceDir = traceFileLocation + File.separator + "Monarch_" + JVMUtils.getJVMPID() + "_" + DateUtils.getFormattedTimestampForFileName();
         File traceDirObj = new File(traceDir);
         if(traceDirObj.mkdir()) {
             traceFileLogger = TraceFileLogger.getInstance();
-            traceFileLogger.init(traceDirObj.getAbsolutePath());
+            traceFileLogger.init(traceDirObj.getAbsolutePath(), traceFormat, segmentPolicy);
         }
         else {
             traceFileLogger = TraceFileLogger.getInstance();
-            traceFileLogger.init(traceFileLocation);
+            traceFileLogger.init(traceFileLocation, traceFormat, segmentPolicy);
         }
         return traceFileLogger;
     }
@@ -3,22 +3,26 @@ package com.asm.mja;
 import com.asm.mja.config.Config;
 import com.asm.mja.config.ConfigParser;
 import com.asm.mja.rule.Rule;
+import com.asm.mja.rule.RuleIndex;
 import com.asm.mja.rule.RuleParser;
 import com.asm.mja.logging.TraceFileLogger;
+import com.asm.mja.metrics.MetricsReporter;
 import com.asm.mja.monitor.JVMMemoryMonitor;
+import com.asm.mja.transformer.ClassRedefiner;
 import com.asm.mja.transformer.GlobalTransformer;
-import com.asm.mja.utils.ByteCodeUtils;
-import com.asm.mja.utils.ClassRuleUtils;
 
 import java.io.File;
 import java.io.IOException;
-import java.lang.instrument.ClassDefinition;
 import java.lang.instrument.Instrumentation;
-import java.lang.instrument.UnmodifiableClassException;
-import java.nio.file.Files;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
 import java.util.*;
-import java.util.stream.Collectors;
+import java.util.concurrent.TimeUnit;
 
 /**
  * @author ashut
@@ -38,13 +42,17 @@ public class InstrumentationManager implements Runnable {
 
     private JVMMemoryMonitor jvmMemoryMonitor;
 
+    private MetricsReporter metricsReporter;
+
     private static InstrumentationManager instance = null;
     private GlobalTransformer transformer;
 
     private long configRefreshInterval;
 
-    // Cache for original bytecode to avoid redundant file I/O
-    private final Map<String, byte[]> bytecodeCache = new HashMap<>();
+    // Lower bound for the fallback poll of the config file, configRefreshInterval is in milliseconds
+    private static final long MIN_POLL_INTERVAL_MILLIS = 1000L;
+    // Quiet period after the last change event before the config is re-read
+    private static final long DEBOUNCE_MILLIS = 200L;
 
     public static InstrumentationManager getInstance() {
         if(instance == null) {
@@ -80,6 +88,10 @@ public class InstrumentationManager implements Runnable {
         this.jvmMemoryMonitor = jvmMemoryMonitor;
     }
 
+    public void setMetricsReporter(MetricsReporter metricsReporter) {
+        this.metricsReporter = metricsReporter;
+    }
+
     public void setCurrentRules(List<Rule> currentRules) {
         this.currentRules = currentRules;
     }
@@ -88,110 +100,185 @@ public class InstrumentationManager implements Runnable {
 
     @Override
     public void run() {
-        while (true) {
-            File file = new File(configFilePath);
-            long currentLastModified = file.lastModified();
-
-            if (currentLastModified != lastModified) {
-                Config config = null;
-                try {
-                    config = ConfigParser.parse(configFilePath, logger);
-                    configRefreshInterval = config.getConfigRefreshInterval();
-                    logger.trace("Configuration file has been modified, re-parsing it");
-                    handleConfigurationChange(config);
-                    lastModified = currentLastModified;
-                } catch (IOException e) {
-                    logger.error("Configuration file parsing failed, please verify if it is a valid YAML file after your changes", e);
+        WatchService watchService = registerConfigWatch();
+        try {
+            while (true) {
+                if (watchService == null) {
+                    Thread.sleep(Math.max(configRefreshInterval, MIN_POLL_INTERVAL_MILLIS));
+                } else {
+                    // Blocks until the config directory changes, the file isn't checked otherwise
+                    WatchKey key = watchService.take();
+                    boolean configTouched = drainEvents(key);
+                    if (!key.reset()) {
+                        logger.warn("Config directory can no longer be watched, falling back to polling every "
+                                + Math.max(configRefreshInterval, MIN_POLL_INTERVAL_MILLIS) + "ms");
+                        watchService.close();
+                        watchService = null;
+                    }
+                    if (!configTouched) {
+                        continue;
+                    }
+                    debounce(watchService);
                 }
+                checkForConfigChange();
             }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            logger.trace("Instrumentation Manager thread interrupted");
+        } catch (ClosedWatchServiceException | IOException e) {
+            logger.error("Config watch failed, configuration changes will no longer be picked up", e);
+        } finally {
+            closeQuietly(watchService);
+        }
+    }
 
-            try {
-                Thread.sleep(configRefreshInterval);
-            } catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
-                logger.trace("Instrumentation Manager thread interrupted");
-                break;
+    /**
+     * Watches the directory of the config file, since editors often replace the file instead of writing to it.
+     *
+     * @return The watch service, or null if the directory can't be watched and the file has to be polled.
+     */
+    private WatchService registerConfigWatch() {
+        Path configDir = Paths.get(configFilePath).toAbsolutePath().getParent();
+        WatchService watchService = null;
+        try {
+            watchService = configDir.getFileSystem().newWatchService();
+            configDir.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+            logger.trace("Watching " + configDir + " for configuration changes");
+            return watchService;
+        } catch (IOException | UnsupportedOperationException e) {
+            closeQuietly(watchService);
+            logger.warn("Can't watch " + configDir + " for changes (" + e.getMessage() + "), polling the config file every "
+                    + Math.max(configRefreshInterval, MIN_POLL_INTERVAL_MILLIS) + "ms instead");
+            return null;
+        }
+    }
+
+    /**
+     * Drains the events of a key.
+     *
+     * @return true if any event concerns the config file, or events were lost.
+     */
+    private boolean drainEvents(WatchKey key) {
+        Path configFileName = Paths.get(configFilePath).getFileName();
+        boolean configTouched = false;
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW || configFileName.equals(event.context())) {
+                configTouched = true;
             }
         }
+        return configTouched;
     }
 
-    private void handleConfigurationChange(Config config) {
-        if (!isBackupDirAvailable()) {
-            logger.warn("No backup available, won't proceed with reverting instrumentations");
+    /**
+     * Waits until no further events arrive for {@link #DEBOUNCE_MILLIS}, so that a burst of writes
+     * by an editor results in a single reload of the final file.
+     */
+    private void debounce(WatchService watchService) throws InterruptedException {
+        if (watchService == null) {
             return;
         }
+        WatchKey key;
+        while ((key = watchService.poll(DEBOUNCE_MILLIS, TimeUnit.MILLISECONDS)) != null) {
+            key.pollEvents();
+            key.reset();
+        }
+    }
 
-        List<Rule> rules = new ArrayList<>(currentRules);
-        resetTransformerState();
-        revertInstrumentation(rules);
-
-        if (!config.isShouldInstrument()) {
-            logger.trace("Going to shutdown instrumentation");
-            shutdown();
+    private void checkForConfigChange() {
+        long currentLastModified = new File(configFilePath).lastModified();
+        if (currentLastModified == lastModified) {
             return;
         }
-        transformer.resetConfig(config);
-        List<String> rulesString = new ArrayList<>(config.getAgentRules());
-        List<Rule> newRules = RuleParser.parseRules(rulesString);
-        addNewInstrumentation(newRules);
-        currentRules = newRules;
+        try {
+            Config config = ConfigParser.parse(configFilePath, logger);
+            configRefreshInterval = config.getConfigRefreshInterval();
+            logger.trace("Configuration file has been modified, re-parsing it");
+            handleConfigurationChange(config);
+            lastModified = currentLastModified;
+        } catch (IOException e) {
+            logger.error("Configuration file parsing failed, please verify if it is a valid YAML file after your changes", e);
+        } catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+            // Nothing has been applied yet, so the current rules stay in place until the file is fixed
+            logger.error("Configuration file has invalid rules, keeping the current ones: " + e.getMessage());
+            lastModified = currentLastModified;
+        }
     }
 
-    private boolean isBackupDirAvailable() {
-        String backupDir = logger.getTraceDir() + File.separator + "backup";
-        return new File(backupDir).exists();
+    private void closeQuietly(WatchService watchService) {
+        if (watchService == null) {
+            return;
+        }
+        try {
+            watchService.close();
+        } catch (IOException e) {
+            // nothing left to release
+        }
     }
 
-    private void resetTransformerState() {
-        transformer.resetClassesTransformed();
-        transformer.resetRules();
-    }
+    private void handleConfigurationChange(Config config) {
+        long start = System.nanoTime();
+        List<Rule> newRules = config.isShouldInstrument()
+                ? RuleParser.parseRules(new ArrayList<>(config.getAgentRules()))
+                : Collections.<Rule>emptyList();
 
-    private void addNewInstrumentation(List<Rule> newRules) {
+        List<Class<?>> changedClasses = changedClasses(RuleIndex.build(currentRules), RuleIndex.build(newRules),
+                requiresFullReinstrumentation(transformer.getConfig(), config));
+
+        if (config.isShouldInstrument()) {
+            transformer.resetConfig(config);
+        }
+        // The transformer must see the new rules before redefinition, as it is run on the original bytecode of the changed classes
         transformer.setRules(newRules);
-        Class<?>[] classesToInstrument = ClassRuleUtils.ruleClasses(instrumentation.getAllLoadedClasses(), newRules);
-        for (Class<?> classz : classesToInstrument) {
-            String className = classz.getName();
-            try {
-                /*
-                 Using redefine here because re-transform will take the modified byte code as its source and would then result in changes which aren't intended
-                 whereas I can pass the source for redefine myself
-                 */
-                if(bytecodeCache.containsKey(className))
-                    instrumentation.redefineClasses(new ClassDefinition(classz, bytecodeCache.get(className)));
-                else {
-                    //First time for this class: Get the original byte code. Going forward, it will be put in bytecode-cache, so, it will be used from there
-                    instrumentation.redefineClasses(new ClassDefinition(classz, ByteCodeUtils.getClassBytecode(classz)));
-                }
-            } catch (UnmodifiableClassException | ClassNotFoundException | IOException e) {
-                logger.error("Failed to re-transform classes;" + "Exception: " + e.getMessage(), e);
-            }
+        currentRules = newRules;
+        int redefined = new ClassRedefiner(instrumentation, transformer, logger).redefine(changedClasses, transformParallelism(config));
+        logger.trace("Rules reloaded: " + changedClasses.size() + " loaded classes with changed rules, " + redefined +
+                " redefined in " + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + "ms");
+
+        if (!config.isShouldInstrument()) {
+            logger.trace("Going to shutdown instrumentation");
+            shutdown();
         }
     }
 
-    private void revertInstrumentation(List<Rule> currentRules) {
-        if (currentRules != null) {
-            Set<String> classSet = currentRules.stream().map(Rule::getClassName).collect(Collectors.toSet());
-            for (String cName : classSet) {
-                loadOriginalByteCode(cName);
-            }
-        }
-        logger.trace("Reverted previous instrumentation");
+    /**
+     * Pre-transforming in parallel is opt-in; otherwise the JVM runs the transformer while redefining.
+     */
+    private int transformParallelism(Config config) {
+        return config.isParallelRetransform() ? config.getRetransformParallelism() : 1;
     }
 
-    private void loadOriginalByteCode(String className) {
-        String backupClassPath =  constructBackupClassPath(className);
-        try {
-            byte[] originalBytecode = Files.readAllBytes(Paths.get(backupClassPath));
-            bytecodeCache.put(className, originalBytecode);
-            instrumentation.redefineClasses(new ClassDefinition(Class.forName(className), originalBytecode));
-        } catch (IOException | UnmodifiableClassException | ClassNotFoundException e) {
-            logger.error("Failed to read bytecode for class " + className + "; Exception: " + e.getMessage(), e);
-        }
+    /**
+     * A different engine or PROFILE call tracing setting changes the bytecode emitted for every rule.
+     */
+    private boolean requiresFullReinstrumentation(Config oldConfig, Config newConfig) {
+        return oldConfig.getInstrumentationEngine() != newConfig.getInstrumentationEngine()
+                || oldConfig.isProfileTraceCalls() != newConfig.isProfileTraceCalls();
     }
 
-    private String constructBackupClassPath(String className) {
-        return logger.getTraceDir() + File.separator + "backup" + File.separator + className.substring(className.lastIndexOf(".") + 1) + ".class";
+    /**
+     * Returns the loaded classes whose effective rule set differs between the two indexes.
+     * Rules may be class patterns, so the loaded classes are matched rather than the rules' class names.
+     */
+    private List<Class<?>> changedClasses(RuleIndex oldIndex, RuleIndex newIndex, boolean includeUnchanged) {
+        List<Class<?>> changed = new ArrayList<>();
+        if (oldIndex.isEmpty() && newIndex.isEmpty()) {
+            return changed;
+        }
+        for (Class<?> loadedClass : instrumentation.getAllLoadedClasses()) {
+            if (!instrumentation.isModifiableClass(loadedClass)) {
+                continue;
+            }
+            String className = loadedClass.getName().replace('.', '/');
+            List<Rule> oldRules = oldIndex.getRules(className);
+            List<Rule> newRules = newIndex.getRules(className);
+            if (oldRules.isEmpty() && newRules.isEmpty()) {
+                continue;
+            }
+            if (includeUnchanged || !oldRules.equals(newRules)) {
+                changed.add(loadedClass);
+            }
+        }
+        return changed;
     }
 
     public void execute() {
@@ -205,10 +292,14 @@ public class InstrumentationManager implements Runnable {
         if(jvmMemoryMonitor != null) {
             jvmMemoryMonitor.shutdown();
         }
+        if(metricsReporter != null) {
+            metricsReporter.shutdown();
+        }
         if(thread != null) {
             logger.trace("Shutting down Monarch Instrumentation Manager");
             thread.interrupt();
         }
+        transformer.close();
         logger.close();
     }
 }
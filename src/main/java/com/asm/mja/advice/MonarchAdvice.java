@@ -0,0 +1,340 @@
+package com.asm.mja.advice;
+
+import com.asm.mja.logging.TraceFileLogger;
+import com.asm.mja.metrics.EventThrottle;
+import com.asm.mja.metrics.MethodMetrics;
+import com.asm.mja.metrics.MethodRegistry;
+import com.asm.mja.metrics.MetricsReporter;
+import com.asm.mja.metrics.StackTable;
+import com.asm.mja.transformer.Action;
+import com.asm.mja.transformer.Event;
+import com.asm.mja.utils.HeapDumpUtils;
+import com.asm.mja.utils.StackTraceUtils;
+import com.asm.mja.utils.ThreadResourceUtils;
+
+/**
+ * Static entry points called from the code injected by both engines.
+ *
+ * Instrumented methods only pass their method id (see {@link MethodRegistry}),
+ * the event ordinal, raw values and the packed throttle settings of sampled or rate
+ * limited rules (0 for the others); the throttle is applied and the trace record
+ * built here. Records carry the method id rather than the method name, which is only
+ * looked up when the record is written, and events without a value trace constant
+ * messages, so that advice allocates no strings of its own. Argument and return values
+ * are captured as is and rendered when the record is written, see
+ * {@link com.asm.mja.logging.ValueRenderer}; primitive return values are passed on
+ * unboxed, while the injected code boxes primitive arguments into the argument array.
+ * None of these methods throw, so advice can never break the instrumented method.
+ *
+ * @author ashut
+ * @since 16-10-2026
+ */
+
+public class MonarchAdvice {
+
+    private static final Event[] EVENTS = Event.values();
+    private static final int ARGS_SLOT = EventThrottle.slot(Event.ENTRY, Action.ARGS);
+    private static final int RET_SLOT = EventThrottle.slot(Event.EXIT, Action.RET);
+    private static final String ARGS_MESSAGE = " | ENTRY | ARGS | ";
+    private static final String RET_MESSAGE = " | EXIT | RET | ";
+    // Messages of STACK and HEAP records, by event ordinal
+    private static final String[] STACK_MESSAGES = messages("STACK");
+    private static final String[] HEAP_MESSAGES = messages("HEAP");
+
+    private MonarchAdvice() {
+
+    }
+
+    private static String[] messages(String action) {
+        String[] messages = new String[EVENTS.length];
+        for (int i = 0; i < EVENTS.length; i++) {
+            messages[i] = " | " + EVENTS[i] + " | " + action;
+        }
+        return messages;
+    }
+
+    /**
+     * Entry point for PROFILE code at method entry.
+     *
+     * @param methodId The id of the profiled method.
+     * @return The start time of the invocation, to be passed to {@link #onExit(int, long)}.
+     */
+    public static long onEnter(int methodId) {
+        return System.nanoTime();
+    }
+
+    /**
+     * Entry point for PROFILE code at method exit. Records the duration of the invocation and
+     * traces it as the method's PROFILE rule asks for (see {@link MethodMetrics#configureProfile}),
+     * except for slow calls whose arguments are traced, which the injected code reports through
+     * {@link #onSlowCall(int, long, Object[])} as only it has the arguments.
+     *
+     * @param methodId   The id of the profiled method.
+     * @param startNanos The start time returned by {@link #onEnter(int)}.
+     * @return The duration of the invocation in nanoseconds.
+     */
+    public static long onExit(int methodId, long startNanos) {
+        long executionTime = System.nanoTime() - startNanos;
+        try {
+            MethodMetrics metrics = MethodRegistry.get(methodId);
+            metrics.recordLatency(executionTime);
+            if (metrics.isTraceCalls()) {
+                logger().trace(methodId, " | PROFILE | Execution time: " + executionTime + "ns");
+            }
+            long thresholdNanos = metrics.getSlowThresholdNanos();
+            if (thresholdNanos > 0 && executionTime > thresholdNanos && !metrics.isSlowCallArgs()) {
+                traceSlowCall(metrics, executionTime, null);
+            }
+        } catch (Exception e) {
+            // never propagate into the instrumented method
+        }
+        return executionTime;
+    }
+
+    /**
+     * Entry point for PROFILE code when the method ends with an exception, which the injected
+     * code rethrows. Records the duration of the invocation as an error.
+     *
+     * @param methodId   The id of the profiled method.
+     * @param startNanos The start time returned by {@link #onEnter(int)}.
+     */
+    public static void onError(int methodId, long startNanos) {
+        long executionTime = System.nanoTime() - startNanos;
+        try {
+            MethodRegistry.get(methodId).recordError(executionTime);
+        } catch (Exception e) {
+            // never propagate into the instrumented method
+        }
+    }
+
+    /**
+     * Entry point for CPU code at method entry.
+     *
+     * @return The CPU time of the current thread, to be passed to {@link #onCpuExit(int, long)}, or -1 if it can't be measured.
+     */
+    public static long onCpuEnter(int methodId) {
+        try {
+            return ThreadResourceUtils.currentThreadCpuTime();
+        } catch (Exception e) {
+            return -1L;
+        }
+    }
+
+    /**
+     * Entry point for CPU code at method exit. Adds the CPU time the invocation took to the method's metrics.
+     */
+    public static void onCpuExit(int methodId, long startCpuNanos) {
+        try {
+            if (startCpuNanos >= 0) {
+                MethodRegistry.get(methodId).recordCpuTime(ThreadResourceUtils.currentThreadCpuTime() - startCpuNanos);
+            }
+        } catch (Exception e) {
+            // never propagate into the instrumented method
+        }
+    }
+
+    /**
+     * Entry point for ALLOC code at method entry.
+     *
+     * @return The bytes allocated by the current thread so far, to be passed to {@link #onAllocExit(int, long)}, or -1 if they can't be measured.
+     */
+    public static long onAllocEnter(int methodId) {
+        try {
+            return ThreadResourceUtils.currentThreadAllocatedBytes();
+        } catch (Exception e) {
+            return -1L;
+        }
+    }
+
+    /**
+     * Entry point for ALLOC code at method exit. Adds the bytes the invocation allocated to the method's metrics.
+     */
+    public static void onAllocExit(int methodId, long startBytes) {
+        try {
+            if (startBytes >= 0) {
+                MethodRegistry.get(methodId).recordAllocatedBytes(ThreadResourceUtils.currentThreadAllocatedBytes() - startBytes);
+            }
+        } catch (Exception e) {
+            // never propagate into the instrumented method
+        }
+    }
+
+    /**
+     * Entry point for Javassist PROFILE code capturing arguments, called only once an invocation exceeded the rule's threshold.
+     *
+     * @param executionTime The duration returned by {@link #onExit(int, long)}.
+     * @param args          The arguments of the invocation.
+     */
+    public static void onSlowCall(int methodId, long executionTime, Object[] args) {
+        try {
+            traceSlowCall(MethodRegistry.get(methodId), executionTime, args);
+        } catch (Exception e) {
+            // never propagate into the instrumented method
+        }
+    }
+
+    private static void traceSlowCall(MethodMetrics metrics, long executionTime, Object[] args) {
+        metrics.recordSlowCall();
+        String message = " | PROFILE | SLOW | " + MetricsReporter.formatNanos(executionTime) + " > " +
+                MetricsReporter.formatNanos(metrics.getSlowThresholdNanos());
+        StackTraceElement[] stackTrace = null;
+        if (metrics.isSlowCallStack()) {
+            // Skip the advice frames so that the trace starts at the instrumented method
+            stackTrace = StackTraceUtils.capture(2, metrics.getSlowCallStackDepth());
+        }
+        if (args != null) {
+            logger().stack(metrics.getId(), message + " | ARGS |", args, stackTrace);
+        } else {
+            logger().stack(metrics.getId(), message, stackTrace);
+        }
+    }
+
+    /**
+     * @param stackDepth The maximum number of frames captured, 0 for all.
+     */
+    public static void onStack(int methodId, int event, long throttleSpec, int stackDepth) {
+        try {
+            if (throttleSpec != 0 && !MethodRegistry.allow(methodId, EventThrottle.slot(EVENTS[event], Action.STACK), throttleSpec)) {
+                return;
+            }
+            // Skip this frame so that the trace starts at the instrumented method
+            StackTraceElement[] stackTrace = StackTraceUtils.capture(1, stackDepth);
+            StackTable.Entry entry = StackTable.record(methodId, event, stackTrace, 0);
+            if (entry == null) {
+                logger().stack(methodId, STACK_MESSAGES[event], stackTrace);
+            } else if (entry.claimWrite()) {
+                // Later occurrences are only counted, see MetricsReporter
+                logger().stack(methodId, STACK_MESSAGES[event] + " | stack=" + entry.getId(), entry.getFrames());
+            }
+        } catch (Exception e) {
+            // never propagate into the instrumented method
+        }
+    }
+
+    public static void onHeap(int methodId, int event, long throttleSpec) {
+        try {
+            if (throttleSpec != 0 && !MethodRegistry.allow(methodId, EventThrottle.slot(EVENTS[event], Action.HEAP), throttleSpec)) {
+                return;
+            }
+            HeapDumpUtils.collectHeap();
+            logger().trace(methodId, HEAP_MESSAGES[event]);
+        } catch (Exception e) {
+            // never propagate into the instrumented method
+        }
+    }
+
+    public static void onArgs(int methodId, Object[] args, long throttleSpec) {
+        try {
+            if (throttleSpec != 0 && !MethodRegistry.allow(methodId, ARGS_SLOT, throttleSpec)) {
+                return;
+            }
+            if (args.length == 0) {
+                logger().trace(methodId, " | ENTRY | ARGS | NULL");
+                return;
+            }
+            // The array is created by the injected code for this call, so it is not copied
+            logger().traceValues(methodId, ARGS_MESSAGE, args);
+        } catch (Exception e) {
+            // never propagate into the instrumented method
+        }
+    }
+
+    public static void onReturnVoid(int methodId, long throttleSpec) {
+        try {
+            if (allowReturn(methodId, throttleSpec)) {
+                logger().trace(methodId, " | EXIT | RET | VOID");
+            }
+        } catch (Exception e) {
+            // never propagate into the instrumented method
+        }
+    }
+
+    public static void onReturn(int methodId, int value, long throttleSpec) {
+        try {
+            if (allowReturn(methodId, throttleSpec)) {
+                logger().tracePrimitive(methodId, RET_MESSAGE, 'I', value);
+            }
+        } catch (Exception e) {
+            // never propagate into the instrumented method
+        }
+    }
+
+    public static void onReturn(int methodId, long value, long throttleSpec) {
+        try {
+            if (allowReturn(methodId, throttleSpec)) {
+                logger().tracePrimitive(methodId, RET_MESSAGE, 'J', value);
+            }
+        } catch (Exception e) {
+            // never propagate into the instrumented method
+        }
+    }
+
+    public static void onReturn(int methodId, float value, long throttleSpec) {
+        try {
+            if (allowReturn(methodId, throttleSpec)) {
+                logger().tracePrimitive(methodId, RET_MESSAGE, 'F', Float.floatToRawIntBits(value));
+            }
+        } catch (Exception e) {
+            // never propagate into the instrumented method
+        }
+    }
+
+    public static void onReturn(int methodId, double value, long throttleSpec) {
+        try {
+            if (allowReturn(methodId, throttleSpec)) {
+                logger().tracePrimitive(methodId, RET_MESSAGE, 'D', Double.doubleToRawLongBits(value));
+            }
+        } catch (Exception e) {
+            // never propagate into the instrumented method
+        }
+    }
+
+    public static void onReturn(int methodId, boolean value, long throttleSpec) {
+        try {
+            if (allowReturn(methodId, throttleSpec)) {
+                logger().tracePrimitive(methodId, RET_MESSAGE, 'Z', value ? 1L : 0L);
+            }
+        } catch (Exception e) {
+            // never propagate into the instrumented method
+        }
+    }
+
+    public static void onReturn(int methodId, char value, long throttleSpec) {
+        try {
+            if (allowReturn(methodId, throttleSpec)) {
+                logger().tracePrimitive(methodId, RET_MESSAGE, 'C', value);
+            }
+        } catch (Exception e) {
+            // never propagate into the instrumented method
+        }
+    }
+
+    public static void onReturn(int methodId, Object value, long throttleSpec) {
+        try {
+            if (allowReturn(methodId, throttleSpec)) {
+                if (value == null) {
+                    logger().trace(methodId, " | EXIT | RET | NULL");
+                } else {
+                    logger().traceValue(methodId, RET_MESSAGE, value);
+                }
+            }
+        } catch (Exception e) {
+            // never propagate into the instrumented method
+        }
+    }
+
+    /**
+     * Applies the sampling and rate limit of a RET rule before the return value is rendered.
+     */
+    private static boolean allowReturn(int methodId, long throttleSpec) {
+        try {
+            return throttleSpec == 0 || MethodRegistry.allow(methodId, RET_SLOT, throttleSpec);
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
+    private static TraceFileLogger logger() {
+        return TraceFileLogger.getInstance();
+    }
+}
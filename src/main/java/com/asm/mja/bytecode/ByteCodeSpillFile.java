@@ -0,0 +1,149 @@
+package com.asm.mja.bytecode;
+
+import com.asm.mja.logging.TraceFileLogger;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.function.Consumer;
+
+/**
+ * A single append-only file holding the bytecode the {@link OriginalByteCodeStore}
+ * couldn't keep in memory. Entries are appended by a dedicated writer thread; the
+ * index is the offset each entry records once it has been written.
+ *
+ * @author ashut
+ * @since 16-10-2026
+ */
+
+class ByteCodeSpillFile implements Runnable {
+
+    private final TraceFileLogger logger;
+    private final Path path;
+    private final BlockingQueue<PendingWrite> queue = new LinkedBlockingQueue<>();
+    private volatile FileChannel channel;
+    private Thread thread = null;
+    private long position = 0;
+
+    ByteCodeSpillFile(TraceFileLogger logger, String path) {
+        this.logger = logger;
+        this.path = Paths.get(path);
+    }
+
+    /**
+     * Queues an entry to be appended. Until it is written the entry stays readable from memory.
+     *
+     * @param entry     The entry to append.
+     * @param onWritten Called on the writer thread after the entry has been written and dropped from memory.
+     */
+    void append(OriginalByteCodeStore.Entry entry, Consumer<OriginalByteCodeStore.Entry> onWritten) {
+        queue.add(new PendingWrite(entry, onWritten));
+    }
+
+    /**
+     * Reads a written entry back.
+     *
+     * @param offset The offset of the entry.
+     * @param length The length of the entry.
+     * @return The stored bytes.
+     */
+    byte[] read(long offset, int length) throws IOException {
+        FileChannel fileChannel = channel;
+        if (fileChannel == null) {
+            throw new IOException("Bytecode spill file " + path + " is closed");
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            // Positional reads don't move the channel's position, so they don't interfere with the writer
+            if (fileChannel.read(buffer, offset + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of bytecode spill file " + path);
+            }
+        }
+        return buffer.array();
+    }
+
+    @Override
+    public void run() {
+        while (true) {
+            PendingWrite pending;
+            try {
+                pending = queue.take();
+            } catch (InterruptedException e) {
+                break;
+            }
+            write(pending);
+        }
+    }
+
+    private void write(PendingWrite pending) {
+        OriginalByteCodeStore.Entry entry = pending.entry;
+        try {
+            ByteBuffer buffer = ByteBuffer.wrap(entry.data);
+            long offset = position;
+            while (buffer.hasRemaining()) {
+                position += channel.write(buffer, position);
+            }
+            // Publish the offset before dropping the data, readers check data first
+            entry.offset = offset;
+            entry.data = null;
+            pending.onWritten.accept(entry);
+        } catch (IOException e) {
+            // The entry simply stays in memory
+            logger.error("Failed to spill bytecode to " + path + "; Exception: " + e.getMessage(), e);
+        }
+    }
+
+    void execute() {
+        try {
+            channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE);
+        } catch (IOException e) {
+            logger.error("Failed to create bytecode spill file " + path + ", original bytecode will be kept in memory", e);
+            return;
+        }
+        thread = new Thread(this, "monarch-bytecode-spill");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Stops the writer and deletes the file. Spilled entries are no longer readable afterwards.
+     */
+    void close() {
+        if (thread != null) {
+            thread.interrupt();
+            try {
+                thread.join(1000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            thread = null;
+        }
+        FileChannel fileChannel = channel;
+        channel = null;
+        try {
+            if (fileChannel != null) {
+                fileChannel.close();
+            }
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            logger.error("Failed to delete bytecode spill file " + path, e);
+        }
+    }
+
+    private static final class PendingWrite {
+        final OriginalByteCodeStore.Entry entry;
+        final Consumer<OriginalByteCodeStore.Entry> onWritten;
+
+        PendingWrite(OriginalByteCodeStore.Entry entry, Consumer<OriginalByteCodeStore.Entry> onWritten) {
+            this.entry = entry;
+            this.onWritten = onWritten;
+        }
+    }
+}
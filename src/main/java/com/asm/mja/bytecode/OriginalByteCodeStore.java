@@ -0,0 +1,217 @@
+package com.asm.mja.bytecode;
+
+import com.asm.mja.logging.TraceFileLogger;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Keeps the original (uninstrumented) bytecode of every transformed class, so that
+ * instrumentation can be reverted or re-applied with redefineClasses().
+ *
+ * Entries are keyed by the identity of the defining classloader and the fully
+ * qualified class name, so same-named classes of different packages or loaders
+ * never collide. Loaders are held weakly and their entries go away with them.
+ *
+ * Bytecode is held in memory, deflate-compressed if enabled. Once the memory
+ * budget is used up, further entries are handed to a {@link ByteCodeSpillFile}
+ * which appends them to a single file on its own thread, off the class loading path.
+ *
+ * @author ashut
+ * @since 16-10-2026
+ */
+
+public class OriginalByteCodeStore {
+
+    private static final String SPILL_FILE_NAME = "original-bytecode.bin";
+
+    private final TraceFileLogger logger;
+    private final long memoryBudgetBytes;
+    private final boolean compress;
+    private final String spillDir;
+    private final AtomicLong memoryUsed = new AtomicLong();
+
+    // WeakHashMap compares keys with equals(), which ClassLoader doesn't override, so loaders are matched by identity
+    private final Map<ClassLoader, ConcurrentMap<String, Entry>> entriesByLoader = Collections.synchronizedMap(new WeakHashMap<>());
+    // Classes of the bootstrap loader, which has no ClassLoader object
+    private final ConcurrentMap<String, Entry> bootstrapEntries = new ConcurrentHashMap<>();
+
+    private ByteCodeSpillFile spillFile;
+
+    /**
+     * @param logger            The logger.
+     * @param spillDir          The directory of the spill file.
+     * @param memoryBudgetBytes How much (possibly compressed) bytecode to keep in memory before spilling to disk.
+     * @param compress          Whether to deflate bytecode.
+     */
+    public OriginalByteCodeStore(TraceFileLogger logger, String spillDir, long memoryBudgetBytes, boolean compress) {
+        this.logger = logger;
+        this.spillDir = spillDir;
+        this.memoryBudgetBytes = memoryBudgetBytes;
+        this.compress = compress;
+    }
+
+    /**
+     * Stores the original bytecode of a class unless it is already stored.
+     * The first bytecode seen for a class is the original one; later transforms of the class
+     * are handed the original bytecode again by redefineClasses().
+     *
+     * @param loader    The defining classloader, null for the bootstrap loader.
+     * @param className The fully qualified class name.
+     * @param bytecode  The original bytecode.
+     */
+    public void putIfAbsent(ClassLoader loader, String className, byte[] bytecode) {
+        ConcurrentMap<String, Entry> entries = entriesFor(loader, true);
+        if (entries.containsKey(className)) {
+            return;
+        }
+        byte[] stored = compress ? deflate(bytecode) : bytecode.clone();
+        Entry entry = new Entry(stored, bytecode.length, compress);
+        if (entries.putIfAbsent(className, entry) != null) {
+            return;
+        }
+        if (memoryUsed.addAndGet(stored.length) > memoryBudgetBytes) {
+            spill(entry);
+        }
+    }
+
+    /**
+     * Returns the original bytecode of a class.
+     *
+     * @param loader    The defining classloader, null for the bootstrap loader.
+     * @param className The fully qualified class name.
+     * @return The original bytecode, or null if the class was never stored.
+     * @throws IOException If the bytecode was spilled to disk and can't be read back.
+     */
+    public byte[] get(ClassLoader loader, String className) throws IOException {
+        ConcurrentMap<String, Entry> entries = entriesFor(loader, false);
+        Entry entry = entries == null ? null : entries.get(className);
+        if (entry == null) {
+            return null;
+        }
+        byte[] stored = entry.data;
+        if (stored == null) {
+            stored = spillFile.read(entry.offset, entry.storedLength);
+        }
+        return entry.compressed ? inflate(stored, entry.originalLength) : stored.clone();
+    }
+
+    /**
+     * Returns how many bytes of bytecode are currently held in memory.
+     *
+     * @return The memory used in bytes.
+     */
+    public long getMemoryUsed() {
+        return memoryUsed.get();
+    }
+
+    /**
+     * Stops the spill writer and deletes the spill file.
+     */
+    public synchronized void close() {
+        if (spillFile != null) {
+            spillFile.close();
+            spillFile = null;
+        }
+    }
+
+    private ConcurrentMap<String, Entry> entriesFor(ClassLoader loader, boolean create) {
+        if (loader == null) {
+            return bootstrapEntries;
+        }
+        synchronized (entriesByLoader) {
+            ConcurrentMap<String, Entry> entries = entriesByLoader.get(loader);
+            if (entries == null && create) {
+                entries = new ConcurrentHashMap<>();
+                entriesByLoader.put(loader, entries);
+            }
+            return entries;
+        }
+    }
+
+    private void spill(Entry entry) {
+        ByteCodeSpillFile file;
+        synchronized (this) {
+            if (spillFile == null) {
+                spillFile = new ByteCodeSpillFile(logger, spillDir + java.io.File.separator + SPILL_FILE_NAME);
+                spillFile.execute();
+                logger.trace("Original bytecode exceeds the memory budget of " + memoryBudgetBytes + " bytes, spilling further classes to disk");
+            }
+            file = spillFile;
+        }
+        file.append(entry, this::onSpilled);
+    }
+
+    private void onSpilled(Entry entry) {
+        memoryUsed.addAndGet(-entry.storedLength);
+    }
+
+    private static byte[] deflate(byte[] bytecode) {
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            deflater.setInput(bytecode);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(bytecode.length / 2 + 64);
+            byte[] buffer = new byte[4096];
+            while (!deflater.finished()) {
+                int length = deflater.deflate(buffer);
+                out.write(buffer, 0, length);
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static byte[] inflate(byte[] stored, int originalLength) throws IOException {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(stored);
+            byte[] bytecode = new byte[originalLength];
+            int offset = 0;
+            while (offset < originalLength && !inflater.finished()) {
+                int length = inflater.inflate(bytecode, offset, originalLength - offset);
+                if (length == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                offset += length;
+            }
+            if (offset != originalLength) {
+                throw new IOException("Stored bytecode is truncated, expected " + originalLength + " bytes but got " + offset);
+            }
+            return bytecode;
+        } catch (DataFormatException e) {
+            throw new IOException("Stored bytecode is corrupt", e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    /**
+     * The stored bytecode of one class. The data is dropped from memory once
+     * the spill writer has written it and published its offset.
+     */
+    static final class Entry {
+        final int storedLength;
+        final int originalLength;
+        final boolean compressed;
+        volatile long offset = -1;
+        volatile byte[] data;
+
+        Entry(byte[] data, int originalLength, boolean compressed) {
+            this.data = data;
+            this.storedLength = data.length;
+            this.originalLength = originalLength;
+            this.compressed = compressed;
+        }
+    }
+}
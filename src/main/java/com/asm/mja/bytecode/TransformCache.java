@@ -0,0 +1,558 @@
+package com.asm.mja.bytecode;
+
+import com.asm.mja.config.Config;
+import com.asm.mja.logging.TraceFileLogger;
+import com.asm.mja.metrics.MethodRegistry;
+import com.asm.mja.metrics.MethodMetrics;
+import com.asm.mja.rule.Rule;
+import com.asm.mja.rule.RuleOptions;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.security.CodeSource;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+
+/**
+ * An on-disk cache of instrumented bytecode, so that a restarted JVM doesn't have
+ * to instrument the same classes with the same rules again.
+ *
+ * Entries are keyed by a SHA-256 of the original bytecode, the class's rules, the
+ * settings that affect the emitted code and the agent build. Each entry is a file
+ * of its own, written to a temporary file and moved into place, and ends with a
+ * CRC32 of its content; entries that fail the check are deleted and treated as misses.
+ * Once the cache grows beyond its size bound, the least recently used entries are evicted.
+ *
+ * Instrumented bytecode contains {@link MethodRegistry} ids as constants, so the
+ * signatures of the registered methods are kept in id order in a separate file and
+ * registered again, in the same order, when the cache is opened. An entry whose ids don't map
+ * to the same methods anymore is a miss. Once most of the signatures belong to no entry, the file
+ * is rewritten with the referenced ones only. The settings of PROFILE rules aren't part of the
+ * bytecode but kept by {@link MethodMetrics}, so entries carry them too and a hit applies them again.
+ *
+ * @author ashut
+ * @since 16-10-2026
+ */
+
+public class TransformCache {
+
+    private static final String ENTRY_SUFFIX = ".mtc";
+    private static final String METHODS_FILE_NAME = "methods.idx";
+    private static final int MAGIC = 0x4d544332; // "MTC2"
+    // Eviction frees space down to this share of the size bound, so that it doesn't run on every write
+    private static final double EVICTION_TARGET = 0.9;
+
+    private final TraceFileLogger logger;
+    private final Path dir;
+    private final Path methodsFile;
+    private final long maxSizeBytes;
+    private final byte[] agentFingerprint;
+    private final AtomicLong sizeBytes = new AtomicLong();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    // Number of registered methods written to the methods file, guarded by this
+    private int persistedMethods;
+
+    /**
+     * Opens the cache, creating its directory if needed. Must be called before any class
+     * is instrumented, so that the method ids of the previous run can be restored.
+     *
+     * @param logger       The logger.
+     * @param dir          The cache directory.
+     * @param maxSizeBytes The size bound of the cached bytecode.
+     * @param agentVersion The agent version, entries of other versions are never hit.
+     * @throws IOException If the directory can't be created or read.
+     */
+    public TransformCache(TraceFileLogger logger, String dir, long maxSizeBytes, String agentVersion) throws IOException {
+        this.logger = logger;
+        this.dir = Files.createDirectories(Paths.get(dir));
+        this.methodsFile = this.dir.resolve(METHODS_FILE_NAME);
+        this.maxSizeBytes = maxSizeBytes;
+        this.agentFingerprint = sha256(agentFingerprint(agentVersion).getBytes(StandardCharsets.UTF_8));
+        restoreMethodIds();
+        sizeBytes.set(totalEntrySize());
+        logger.trace("Transform cache opened in " + this.dir + " with " + (sizeBytes.get() / 1024) + "KB of entries, "
+                + persistedMethods + " method ids restored");
+    }
+
+    /**
+     * Computes the key of a class's instrumented bytecode.
+     *
+     * @param className        The fully qualified class name.
+     * @param originalByteCode The original bytecode of the class.
+     * @param rules            The rules of the class, in definition order.
+     * @param config           The config, for the settings that affect the instrumented bytecode.
+     * @return The key.
+     */
+    public String key(String className, byte[] originalByteCode, List<Rule> rules, Config config) {
+        MessageDigest digest = newDigest();
+        digest.update(agentFingerprint);
+        StringBuilder settings = new StringBuilder(128)
+                .append(config.getInstrumentationEngine()).append('\n')
+                .append(config.isProfileTraceCalls()).append('\n')
+                .append(className).append('\n');
+        for (Rule rule : rules) {
+            settings.append(rule.getClassName()).append('\0')
+                    .append(rule.getMethodName()).append('\0')
+                    .append(rule.getEvent()).append('\0')
+                    .append(rule.getAction()).append('\0')
+                    .append(rule.getLineNumber()).append('\0')
+                    .append(rule.getCustomCode()).append('\0')
+                    .append(rule.getOptions()).append('\n');
+        }
+        digest.update(settings.toString().getBytes(StandardCharsets.UTF_8));
+        digest.update(originalByteCode);
+        return toHex(digest.digest());
+    }
+
+    /**
+     * Looks up instrumented bytecode.
+     *
+     * @param key The key from {@link #key(String, byte[], List, Config)}.
+     * @return The instrumented bytecode, or null on a miss.
+     */
+    public byte[] get(String key) {
+        Path entryFile = entryFile(key);
+        byte[] content;
+        try {
+            content = Files.readAllBytes(entryFile);
+        } catch (NoSuchFileException e) {
+            misses.incrementAndGet();
+            return null;
+        } catch (IOException e) {
+            logger.warn("Failed to read transform cache entry " + entryFile + ": " + e.getMessage());
+            misses.incrementAndGet();
+            return null;
+        }
+        byte[] bytecode = decode(key, content);
+        if (bytecode == null) {
+            logger.warn("Discarding corrupt transform cache entry " + entryFile);
+            delete(entryFile);
+            misses.incrementAndGet();
+            return null;
+        }
+        if (bytecode.length == 0) {
+            // Intact, but its method ids now belong to other methods
+            misses.incrementAndGet();
+            return null;
+        }
+        try {
+            // The modification time orders entries for eviction
+            Files.setLastModifiedTime(entryFile, FileTime.fromMillis(System.currentTimeMillis()));
+        } catch (IOException e) {
+            // eviction order is best effort
+        }
+        hits.incrementAndGet();
+        return bytecode;
+    }
+
+    /**
+     * Stores instrumented bytecode. Failures are logged and otherwise ignored.
+     *
+     * @param key       The key from {@link #key(String, byte[], List, Config)}.
+     * @param bytecode  The instrumented bytecode.
+     * @param methodIds The method ids registered while instrumenting, see {@link MethodRegistry#startRecording()}.
+     */
+    public void put(String key, byte[] bytecode, List<Integer> methodIds) {
+        Path entryFile = entryFile(key);
+        Path tempFile = null;
+        try {
+            persistMethodSignatures();
+            byte[] content = encode(key, bytecode, methodIds);
+            tempFile = Files.createTempFile(dir, key, ".tmp");
+            Files.write(tempFile, content);
+            long previousSize = entryFile.toFile().length();
+            try {
+                Files.move(tempFile, entryFile, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tempFile, entryFile, StandardCopyOption.REPLACE_EXISTING);
+            }
+            tempFile = null;
+            if (sizeBytes.addAndGet(content.length - previousSize) > maxSizeBytes) {
+                evict();
+            }
+        } catch (IOException e) {
+            logger.warn("Failed to write transform cache entry " + entryFile + ": " + e.getMessage());
+        } finally {
+            if (tempFile != null) {
+                delete(tempFile);
+            }
+        }
+    }
+
+    /**
+     * Writes the cache statistics to the trace file.
+     */
+    public void close() {
+        logger.trace("Transform cache: " + hits.get() + " hits, " + misses.get() + " misses, "
+                + (sizeBytes.get() / 1024) + "KB in " + dir);
+    }
+
+    private byte[] encode(String key, byte[] bytecode, List<Integer> methodIds) throws IOException {
+        Set<Integer> uniqueIds = new LinkedHashSet<>(methodIds);
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream(bytecode.length + 128);
+        DataOutputStream out = new DataOutputStream(buffer);
+        out.writeInt(MAGIC);
+        out.writeUTF(key);
+        out.writeInt(uniqueIds.size());
+        for (int id : uniqueIds) {
+            MethodMetrics methodMetrics = MethodRegistry.get(id);
+            out.writeInt(id);
+            out.writeUTF(methodMetrics.getSignature());
+            RuleOptions profileOptions = methodMetrics.getProfileOptions();
+            out.writeBoolean(profileOptions != null);
+            if (profileOptions != null) {
+                out.writeBoolean(methodMetrics.isTraceCalls());
+                out.writeUTF(profileOptions.toString());
+            }
+        }
+        out.writeInt(bytecode.length);
+        out.write(bytecode);
+        CRC32 crc = new CRC32();
+        crc.update(buffer.toByteArray());
+        out.writeLong(crc.getValue());
+        out.flush();
+        return buffer.toByteArray();
+    }
+
+    /**
+     * @return The bytecode of an entry, an empty array if its method ids are stale, or null if it is corrupt.
+     */
+    private byte[] decode(String key, byte[] content) {
+        if (content.length < 8) {
+            return null;
+        }
+        int crcOffset = content.length - 8;
+        CRC32 crc = new CRC32();
+        crc.update(content, 0, crcOffset);
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(content));
+        try {
+            DataInputStream crcIn = new DataInputStream(new ByteArrayInputStream(content, crcOffset, 8));
+            if (crcIn.readLong() != crc.getValue() || in.readInt() != MAGIC || !key.equals(in.readUTF())) {
+                return null;
+            }
+            boolean idsMatch = true;
+            int methodCount = in.readInt();
+            int[] profiledIds = new int[methodCount];
+            boolean[] traceCalls = new boolean[methodCount];
+            RuleOptions[] profileOptions = new RuleOptions[methodCount];
+            int profiled = 0;
+            for (int i = 0; i < methodCount; i++) {
+                int id = in.readInt();
+                // Registers the method if this run hasn't yet, which assigns the same id if the methods file was restored
+                idsMatch &= MethodRegistry.registerSignature(in.readUTF()) == id;
+                if (in.readBoolean()) {
+                    profiledIds[profiled] = id;
+                    traceCalls[profiled] = in.readBoolean();
+                    profileOptions[profiled] = RuleOptions.fromString(in.readUTF());
+                    profiled++;
+                }
+            }
+            int length = in.readInt();
+            if (length < 0 || length > crcOffset) {
+                return null;
+            }
+            byte[] bytecode = new byte[length];
+            in.readFully(bytecode);
+            if (!idsMatch) {
+                return new byte[0];
+            }
+            // Set by the engine on a miss, which a hit skips
+            for (int i = 0; i < profiled; i++) {
+                MethodRegistry.get(profiledIds[i]).configureProfile(traceCalls[i], profileOptions[i]);
+            }
+            return bytecode;
+        } catch (IOException | IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Registers the methods of the previous runs in id order, so that they get their old ids back.
+     */
+    private synchronized void restoreMethodIds() throws IOException {
+        if (MethodRegistry.size() > 0) {
+            // Ids are already taken, so the file can't be replayed; start it over from the current registry
+            logger.warn("Methods were registered before the transform cache was opened, cached entries won't be reused");
+            Files.write(methodsFile, new byte[0]);
+            persistedMethods = 0;
+            return;
+        }
+        List<String> signatures = compactMethodSignatures(readMethodSignatures());
+        for (String signature : signatures) {
+            MethodRegistry.registerSignature(signature);
+        }
+        persistedMethods = signatures.size();
+    }
+
+    /**
+     * @return The signatures of the methods file, in id order.
+     */
+    private List<String> readMethodSignatures() throws IOException {
+        List<String> signatures = new ArrayList<>();
+        if (!Files.exists(methodsFile)) {
+            return signatures;
+        }
+        byte[] content = Files.readAllBytes(methodsFile);
+        int end = content.length;
+        while (end > 0 && content[end - 1] != '\n') {
+            end--;
+        }
+        if (end < content.length) {
+            // A run ended halfway through a write, drop the incomplete signature
+            Files.write(methodsFile, Arrays.copyOf(content, end));
+        }
+        int start = 0;
+        for (int i = 0; i < end; i++) {
+            if (content[i] == '\n') {
+                signatures.add(new String(content, start, i - start, StandardCharsets.UTF_8));
+                start = i + 1;
+            }
+        }
+        return signatures;
+    }
+
+    /**
+     * Drops the signatures that no entry refers to anymore, once they are the majority of the
+     * methods file, so that the methods of evicted and outdated entries aren't registered by every
+     * later run. Entries whose ids don't match the methods file can never be hit, and are deleted,
+     * as are the entries whose ids change by the compaction.
+     *
+     * @param signatures The signatures of the methods file, in id order.
+     * @return The signatures to register, in id order.
+     */
+    private List<String> compactMethodSignatures(List<String> signatures) throws IOException {
+        Map<Path, int[]> entryIds = new HashMap<>();
+        boolean[] referenced = new boolean[signatures.size()];
+        int referencedCount = 0;
+        for (File entry : listEntries()) {
+            Path entryFile = entry.toPath();
+            int[] ids = readMethodIds(entryFile, signatures);
+            if (ids == null) {
+                delete(entryFile);
+                continue;
+            }
+            entryIds.put(entryFile, ids);
+            for (int id : ids) {
+                if (!referenced[id]) {
+                    referenced[id] = true;
+                    referencedCount++;
+                }
+            }
+        }
+        if (referencedCount * 2 >= signatures.size()) {
+            return signatures;
+        }
+
+        List<String> live = new ArrayList<>(referencedCount);
+        int[] newIds = new int[signatures.size()];
+        for (int id = 0; id < signatures.size(); id++) {
+            if (referenced[id]) {
+                newIds[id] = live.size();
+                live.add(signatures.get(id));
+            }
+        }
+        int invalidated = 0;
+        for (Map.Entry<Path, int[]> entry : entryIds.entrySet()) {
+            for (int id : entry.getValue()) {
+                if (newIds[id] != id) {
+                    // The ids are constants in its bytecode
+                    delete(entry.getKey());
+                    invalidated++;
+                    break;
+                }
+            }
+        }
+        StringBuilder content = new StringBuilder();
+        for (String signature : live) {
+            content.append(signature).append('\n');
+        }
+        Path tempFile = Files.createTempFile(dir, METHODS_FILE_NAME, ".tmp");
+        try {
+            Files.write(tempFile, content.toString().getBytes(StandardCharsets.UTF_8));
+            try {
+                Files.move(tempFile, methodsFile, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tempFile, methodsFile, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            delete(tempFile);
+        }
+        logger.trace("Transform cache dropped " + (signatures.size() - live.size()) + " unreferenced method ids and "
+                + invalidated + " entries that referred to moved ones");
+        return live;
+    }
+
+    /**
+     * Reads the method ids an entry refers to, without checking the rest of the entry.
+     *
+     * @return The ids, or null if the entry is unreadable or its ids don't map to the given signatures.
+     */
+    private static int[] readMethodIds(Path entryFile, List<String> signatures) {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(entryFile)))) {
+            if (in.readInt() != MAGIC) {
+                return null;
+            }
+            in.readUTF();
+            int methodCount = in.readInt();
+            if (methodCount < 0 || methodCount > signatures.size()) {
+                return null;
+            }
+            int[] ids = new int[methodCount];
+            for (int i = 0; i < methodCount; i++) {
+                ids[i] = in.readInt();
+                if (ids[i] < 0 || ids[i] >= signatures.size() || !signatures.get(ids[i]).equals(in.readUTF())) {
+                    return null;
+                }
+                if (in.readBoolean()) {
+                    in.readBoolean();
+                    in.readUTF();
+                }
+            }
+            return ids;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Appends the signatures of the methods registered since the last call to the methods file.
+     */
+    private synchronized void persistMethodSignatures() throws IOException {
+        List<MethodMetrics> all = MethodRegistry.getAll();
+        if (all.size() <= persistedMethods) {
+            return;
+        }
+        StringBuilder signatures = new StringBuilder();
+        for (MethodMetrics methodMetrics : all.subList(persistedMethods, all.size())) {
+            signatures.append(methodMetrics.getSignature()).append('\n');
+        }
+        Files.write(methodsFile, signatures.toString().getBytes(StandardCharsets.UTF_8),
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        persistedMethods = all.size();
+    }
+
+    /**
+     * Deletes the least recently used entries until the cache is back below its size bound.
+     */
+    private synchronized void evict() throws IOException {
+        List<File> entries = listEntries();
+        long total = 0;
+        for (File entry : entries) {
+            total += entry.length();
+        }
+        final long target = (long) (maxSizeBytes * EVICTION_TARGET);
+        if (total > target) {
+            entries.sort(Comparator.comparingLong(File::lastModified));
+            int evicted = 0;
+            for (File entry : entries) {
+                if (total <= target) {
+                    break;
+                }
+                long length = entry.length();
+                if (entry.delete()) {
+                    total -= length;
+                    evicted++;
+                }
+            }
+            logger.trace("Transform cache evicted " + evicted + " entries, " + (total / 1024) + "KB left");
+        }
+        sizeBytes.set(total);
+    }
+
+    private long totalEntrySize() throws IOException {
+        long total = 0;
+        for (File entry : listEntries()) {
+            total += entry.length();
+        }
+        return total;
+    }
+
+    private List<File> listEntries() throws IOException {
+        List<File> entries = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir, "*" + ENTRY_SUFFIX)) {
+            for (Path path : stream) {
+                entries.add(path.toFile());
+            }
+        }
+        return entries;
+    }
+
+    private Path entryFile(String key) {
+        return dir.resolve(key + ENTRY_SUFFIX);
+    }
+
+    private void delete(Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            // a leftover file is overwritten or evicted later
+        }
+    }
+
+    /**
+     * Identifies the agent build: its version, plus the size and timestamp of the agent jar
+     * so that rebuilt snapshots don't hit entries of an older build.
+     */
+    private static String agentFingerprint(String agentVersion) {
+        StringBuilder fingerprint = new StringBuilder(agentVersion);
+        CodeSource codeSource = TransformCache.class.getProtectionDomain().getCodeSource();
+        if (codeSource != null && codeSource.getLocation() != null) {
+            try {
+                File agentJar = new File(codeSource.getLocation().toURI());
+                fingerprint.append('/').append(agentJar.length()).append('/').append(agentJar.lastModified());
+            } catch (URISyntaxException | IllegalArgumentException e) {
+                // version only
+            }
+        }
+        return fingerprint.toString();
+    }
+
+    private static byte[] sha256(byte[] input) {
+        return newDigest().digest(input);
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // Every Java platform is required to support SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        char[] hex = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            hex[i * 2] = Character.forDigit((bytes[i] >> 4) & 0xf, 16);
+            hex[i * 2 + 1] = Character.forDigit(bytes[i] & 0xf, 16);
+        }
+        return new String(hex);
+    }
+}
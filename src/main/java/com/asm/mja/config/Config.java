@@ -1,6 +1,13 @@
 package com.asm.mja.config;
 
+import com.asm.mja.logging.OverflowPolicy;
+import com.asm.mja.logging.TraceFormat;
+import com.asm.mja.metrics.MetricsTarget;
+import com.asm.mja.transformer.EngineType;
+
+import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.List;
 
 /**
  * @author ashut
@@ -21,6 +28,56 @@ public class Config {
 
     private int configRefreshInterval;
 
+    private boolean asyncTrace;
+
+    private int traceBufferSize = 8192;
+
+    private OverflowPolicy traceOverflowPolicy = OverflowPolicy.DROP_NEWEST;
+
+    private TraceFormat traceFormat = TraceFormat.TEXT;
+
+    private int traceSegmentSizeMB;
+
+    private int traceMaxSegments = 10;
+
+    private int traceMaxSizeMB;
+
+    private boolean traceCompressSegments = true;
+
+    private int metricsReportInterval = 60;
+
+    private MetricsTarget metricsTarget = MetricsTarget.TRACE;
+
+    private int prometheusPort;
+
+    private boolean profileTraceCalls;
+
+    private boolean stackDedup = true;
+
+    private int stackTableSize = 10000;
+
+    private int valueMaxLength = 256;
+
+    private int valueMaxElements = 10;
+
+    private int valueMaxDepth = 2;
+
+    private List<String> valueIdentityClasses = new ArrayList<>();
+
+    private EngineType instrumentationEngine = EngineType.JAVASSIST;
+
+    private int byteCodeStoreMemoryBudgetMB = 32;
+
+    private boolean byteCodeStoreCompression = true;
+
+    private boolean parallelRetransform;
+
+    private String transformCacheDir;
+
+    private int transformCacheMaxSizeMB = 64;
+
+    private int retransformParallelism = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+
     public int getConfigRefreshInterval() {
         return configRefreshInterval;
     }
@@ -93,6 +150,220 @@ public class Config {
         this.maxHeapDumps = maxHeapDumps;
     }
 
+    public boolean isAsyncTrace() {
+        return asyncTrace;
+    }
+
+    public void setAsyncTrace(boolean asyncTrace) {
+        this.asyncTrace = asyncTrace;
+    }
+
+    public int getTraceBufferSize() {
+        return traceBufferSize;
+    }
+
+    public void setTraceBufferSize(int traceBufferSize) {
+        this.traceBufferSize = traceBufferSize;
+    }
+
+    public OverflowPolicy getTraceOverflowPolicy() {
+        return traceOverflowPolicy;
+    }
+
+    public void setTraceOverflowPolicy(OverflowPolicy traceOverflowPolicy) {
+        this.traceOverflowPolicy = traceOverflowPolicy;
+    }
+
+    public TraceFormat getTraceFormat() {
+        return traceFormat;
+    }
+
+    public void setTraceFormat(TraceFormat traceFormat) {
+        this.traceFormat = traceFormat;
+    }
+
+    /**
+     * @return The size of the memory-mapped trace segments, 0 if the trace is a single file.
+     */
+    public int getTraceSegmentSizeMB() {
+        return traceSegmentSizeMB;
+    }
+
+    public void setTraceSegmentSizeMB(int traceSegmentSizeMB) {
+        this.traceSegmentSizeMB = traceSegmentSizeMB;
+    }
+
+    public int getTraceMaxSegments() {
+        return traceMaxSegments;
+    }
+
+    public void setTraceMaxSegments(int traceMaxSegments) {
+        this.traceMaxSegments = traceMaxSegments;
+    }
+
+    /**
+     * @return The total size of the trace segments kept, 0 if only bounded by traceMaxSegments.
+     */
+    public int getTraceMaxSizeMB() {
+        return traceMaxSizeMB;
+    }
+
+    public void setTraceMaxSizeMB(int traceMaxSizeMB) {
+        this.traceMaxSizeMB = traceMaxSizeMB;
+    }
+
+    public boolean isTraceCompressSegments() {
+        return traceCompressSegments;
+    }
+
+    public void setTraceCompressSegments(boolean traceCompressSegments) {
+        this.traceCompressSegments = traceCompressSegments;
+    }
+
+    public int getMetricsReportInterval() {
+        return metricsReportInterval;
+    }
+
+    public void setMetricsReportInterval(int metricsReportInterval) {
+        this.metricsReportInterval = metricsReportInterval;
+    }
+
+    /**
+     * The former name of metricsReportInterval, still accepted in config files.
+     */
+    @Deprecated
+    public void setProfileReportInterval(int profileReportInterval) {
+        this.metricsReportInterval = profileReportInterval;
+    }
+
+    public MetricsTarget getMetricsTarget() {
+        return metricsTarget;
+    }
+
+    public void setMetricsTarget(MetricsTarget metricsTarget) {
+        this.metricsTarget = metricsTarget;
+    }
+
+    public int getPrometheusPort() {
+        return prometheusPort;
+    }
+
+    public void setPrometheusPort(int prometheusPort) {
+        this.prometheusPort = prometheusPort;
+    }
+
+    public boolean isStackDedup() {
+        return stackDedup;
+    }
+
+    public void setStackDedup(boolean stackDedup) {
+        this.stackDedup = stackDedup;
+    }
+
+    public int getStackTableSize() {
+        return stackTableSize;
+    }
+
+    public void setStackTableSize(int stackTableSize) {
+        this.stackTableSize = stackTableSize;
+    }
+
+    public int getValueMaxLength() {
+        return valueMaxLength;
+    }
+
+    public void setValueMaxLength(int valueMaxLength) {
+        this.valueMaxLength = valueMaxLength;
+    }
+
+    public int getValueMaxElements() {
+        return valueMaxElements;
+    }
+
+    public void setValueMaxElements(int valueMaxElements) {
+        this.valueMaxElements = valueMaxElements;
+    }
+
+    public int getValueMaxDepth() {
+        return valueMaxDepth;
+    }
+
+    public void setValueMaxDepth(int valueMaxDepth) {
+        this.valueMaxDepth = valueMaxDepth;
+    }
+
+    public List<String> getValueIdentityClasses() {
+        return valueIdentityClasses;
+    }
+
+    public void setValueIdentityClasses(List<String> valueIdentityClasses) {
+        this.valueIdentityClasses = valueIdentityClasses;
+    }
+
+    public boolean isProfileTraceCalls() {
+        return profileTraceCalls;
+    }
+
+    public void setProfileTraceCalls(boolean profileTraceCalls) {
+        this.profileTraceCalls = profileTraceCalls;
+    }
+
+    public EngineType getInstrumentationEngine() {
+        return instrumentationEngine;
+    }
+
+    public void setInstrumentationEngine(EngineType instrumentationEngine) {
+        this.instrumentationEngine = instrumentationEngine;
+    }
+
+    public int getByteCodeStoreMemoryBudgetMB() {
+        return byteCodeStoreMemoryBudgetMB;
+    }
+
+    public void setByteCodeStoreMemoryBudgetMB(int byteCodeStoreMemoryBudgetMB) {
+        this.byteCodeStoreMemoryBudgetMB = byteCodeStoreMemoryBudgetMB;
+    }
+
+    public boolean isByteCodeStoreCompression() {
+        return byteCodeStoreCompression;
+    }
+
+    public void setByteCodeStoreCompression(boolean byteCodeStoreCompression) {
+        this.byteCodeStoreCompression = byteCodeStoreCompression;
+    }
+
+    public boolean isParallelRetransform() {
+        return parallelRetransform;
+    }
+
+    public void setParallelRetransform(boolean parallelRetransform) {
+        this.parallelRetransform = parallelRetransform;
+    }
+
+    public int getRetransformParallelism() {
+        return retransformParallelism;
+    }
+
+    public void setRetransformParallelism(int retransformParallelism) {
+        this.retransformParallelism = retransformParallelism;
+    }
+
+    public String getTransformCacheDir() {
+        return transformCacheDir;
+    }
+
+    public void setTransformCacheDir(String transformCacheDir) {
+        this.transformCacheDir = transformCacheDir;
+    }
+
+    public int getTransformCacheMaxSizeMB() {
+        return transformCacheMaxSizeMB;
+    }
+
+    public void setTransformCacheMaxSizeMB(int transformCacheMaxSizeMB) {
+        this.transformCacheMaxSizeMB = transformCacheMaxSizeMB;
+    }
+
     @Override
     public String toString() {
         return "Config{" +
@@ -103,6 +374,31 @@ public class Config {
                 ", printJVMSystemProperties=" + printJVMSystemProperties +
                 ", printEnvironmentVariables=" + printEnvironmentVariables +
                 ", maxHeapDumps=" + maxHeapDumps +
+                ", asyncTrace=" + asyncTrace +
+                ", traceBufferSize=" + traceBufferSize +
+                ", traceOverflowPolicy=" + traceOverflowPolicy +
+                ", traceFormat=" + traceFormat +
+                ", traceSegmentSizeMB=" + traceSegmentSizeMB +
+                ", traceMaxSegments=" + traceMaxSegments +
+                ", traceMaxSizeMB=" + traceMaxSizeMB +
+                ", traceCompressSegments=" + traceCompressSegments +
+                ", metricsReportInterval=" + metricsReportInterval +
+                ", metricsTarget=" + metricsTarget +
+                ", prometheusPort=" + prometheusPort +
+                ", profileTraceCalls=" + profileTraceCalls +
+                ", stackDedup=" + stackDedup +
+                ", stackTableSize=" + stackTableSize +
+                ", valueMaxLength=" + valueMaxLength +
+                ", valueMaxElements=" + valueMaxElements +
+                ", valueMaxDepth=" + valueMaxDepth +
+                ", valueIdentityClasses=" + valueIdentityClasses +
+                ", instrumentationEngine=" + instrumentationEngine +
+                ", byteCodeStoreMemoryBudgetMB=" + byteCodeStoreMemoryBudgetMB +
+                ", byteCodeStoreCompression=" + byteCodeStoreCompression +
+                ", parallelRetransform=" + parallelRetransform +
+                ", retransformParallelism=" + retransformParallelism +
+                ", transformCacheDir='" + transformCacheDir + '\'' +
+                ", transformCacheMaxSizeMB=" + transformCacheMaxSizeMB +
                 '}';
     }
 }
@@ -1,8 +1,10 @@
 package com.asm.mja.config;
 
 import com.asm.mja.logging.AgentLogger;
+import com.asm.mja.rule.RuleParser;
 
 import java.io.File;
+import java.util.ArrayList;
 
 /**
  * The ConfigValidator class validates the configuration object.
@@ -32,6 +34,81 @@ public class ConfigValidator {
             AgentLogger.error("Rules are missing or empty");
             return false;
         }
+        try {
+            RuleParser.parseRules(new ArrayList<>(config.getAgentRules()));
+        } catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+            AgentLogger.error("Rules are invalid: " + e.getMessage());
+            return false;
+        }
+        if (config.isAsyncTrace() && (config.getTraceBufferSize() < 2 || config.getTraceOverflowPolicy() == null)) {
+            AgentLogger.error("traceBufferSize must be at least 2 and traceOverflowPolicy must be set when asyncTrace is enabled");
+            return false;
+        }
+        if (config.getTraceFormat() == null) {
+            AgentLogger.error("traceFormat must be one of TEXT or BINARY");
+            return false;
+        }
+        if (config.getTraceSegmentSizeMB() < 0 || config.getTraceSegmentSizeMB() > 1024) {
+            AgentLogger.error("traceSegmentSizeMB must be between 0 (no segments) and 1024");
+            return false;
+        }
+        if (config.getTraceSegmentSizeMB() > 0 && config.getTraceMaxSegments() < 1) {
+            AgentLogger.error("traceMaxSegments must be at least 1");
+            return false;
+        }
+        if (config.getTraceSegmentSizeMB() > 0 && config.getTraceMaxSizeMB() != 0 && config.getTraceMaxSizeMB() < config.getTraceSegmentSizeMB()) {
+            AgentLogger.error("traceMaxSizeMB must be 0 (unbounded) or at least traceSegmentSizeMB");
+            return false;
+        }
+        if (config.getInstrumentationEngine() == null) {
+            AgentLogger.error("instrumentationEngine must be one of JAVASSIST or ASM");
+            return false;
+        }
+
+        if (config.getByteCodeStoreMemoryBudgetMB() < 0) {
+            AgentLogger.error("byteCodeStoreMemoryBudgetMB must not be negative");
+            return false;
+        }
+
+        if (config.getRetransformParallelism() < 1) {
+            AgentLogger.error("retransformParallelism must be at least 1");
+            return false;
+        }
+
+        if (config.getTransformCacheDir() != null && config.getTransformCacheMaxSizeMB() < 1) {
+            AgentLogger.error("transformCacheMaxSizeMB must be at least 1 when transformCacheDir is set");
+            return false;
+        }
+
+        if (config.getMetricsReportInterval() <= 0) {
+            AgentLogger.error("metricsReportInterval must be a positive number of seconds");
+            return false;
+        }
+
+        if (config.getMetricsTarget() == null) {
+            AgentLogger.error("metricsTarget must be TRACE or FILE");
+            return false;
+        }
+
+        if (config.getPrometheusPort() < 0 || config.getPrometheusPort() > 65535) {
+            AgentLogger.error("prometheusPort must be a port number, or 0 to disable the Prometheus endpoint");
+            return false;
+        }
+
+        if (config.getStackTableSize() < 1) {
+            AgentLogger.error("stackTableSize must be at least 1");
+            return false;
+        }
+
+        if (config.getValueMaxLength() < 1 || config.getValueMaxElements() < 1 || config.getValueMaxDepth() < 0) {
+            AgentLogger.error("valueMaxLength and valueMaxElements must be at least 1, valueMaxDepth must not be negative");
+            return false;
+        }
+
+        if (config.getValueIdentityClasses() == null) {
+            AgentLogger.error("valueIdentityClasses must be a list of class name patterns");
+            return false;
+        }
         return config.getMaxHeapDumps() >= 0;
     }
 }
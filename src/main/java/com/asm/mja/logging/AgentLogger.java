@@ -1,5 +1,7 @@
 package com.asm.mja.logging;
 
+import com.asm.mja.utils.TimestampFormatter;
+
 import java.io.FileWriter;
 import java.io.IOException;
 import java.io.PrintWriter;
@@ -44,7 +46,9 @@ public class AgentLogger {
             System.err.println("Error: Log file writer is not initialized. Call init() method first.");
             return;
         }
-        writer.println("[" + logLevel.name() + "] " + message);
+        StringBuilder line = new StringBuilder(32 + message.length());
+        TimestampFormatter.appendTo(line, System.currentTimeMillis()).append(" [").append(logLevel.name()).append("] ").append(message);
+        writer.println(line);
         writer.flush(); // Ensure the message is written immediately
     }
 
@@ -0,0 +1,189 @@
+package com.asm.mja.logging;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Drains trace records published by application threads and writes them to the
+ * trace file in batches, flushing once per batch.
+ *
+ * @author ashut
+ * @since 16-10-2026
+ */
+
+class AsyncTraceWriter implements Runnable {
+    private static final int BATCH_SIZE = 1024;
+    private static final long MAX_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+    private static final long BLOCK_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+    private static final long DROP_REPORT_INTERVAL_MILLIS = 1000;
+    private static final long SHUTDOWN_WAIT_MILLIS = 5000;
+
+    private final TraceRingBuffer<TraceRecord> buffer;
+    private final OverflowPolicy overflowPolicy;
+    private final TraceEncoder encoder;
+    // The logger's lock, held per batch, as a thread may still be writing inline when the writer starts
+    private final Lock encoderLock;
+    private final AtomicLong dropped = new AtomicLong();
+
+    private volatile Thread thread = null;
+    private volatile boolean running = false;
+    private volatile boolean parked = false;
+
+    // Guarded by encoderLock
+    private boolean finished = false;
+    private boolean closeWhenFinished = false;
+
+    private long reportedDrops = 0;
+    private long lastDropReport = 0;
+
+    AsyncTraceWriter(TraceEncoder encoder, Lock encoderLock, int bufferSize, OverflowPolicy overflowPolicy) {
+        this.encoder = encoder;
+        this.encoderLock = encoderLock;
+        this.buffer = new TraceRingBuffer<>(bufferSize);
+        this.overflowPolicy = overflowPolicy;
+    }
+
+    /**
+     * Publishes a record for the writer thread, applying the overflow policy if the buffer is full.
+     *
+     * @param record The record to publish.
+     */
+    void publish(TraceRecord record) {
+        while (!buffer.offer(record)) {
+            if (overflowPolicy == OverflowPolicy.DROP_NEWEST || !running) {
+                dropped.incrementAndGet();
+                break;
+            }
+            LockSupport.unpark(thread);
+            LockSupport.parkNanos(BLOCK_PARK_NANOS);
+        }
+        if (parked) {
+            LockSupport.unpark(thread);
+        }
+    }
+
+    @Override
+    public void run() {
+        while (running) {
+            int drained = drainBatch();
+            if (drained == 0) {
+                parked = true;
+                if (running && buffer.isEmpty()) {
+                    LockSupport.parkNanos(this, MAX_PARK_NANOS);
+                }
+                parked = false;
+            }
+        }
+        // Final drain so that everything published before shutdown reaches the file
+        while (drainBatch() > 0) {
+            // keep draining
+        }
+        encoderLock.lock();
+        try {
+            reportDrops(true);
+            finished = true;
+            if (closeWhenFinished) {
+                closeEncoder();
+            }
+        } finally {
+            encoderLock.unlock();
+        }
+    }
+
+    private int drainBatch() {
+        encoderLock.lock();
+        try {
+            int drained = buffer.drain(this::write, BATCH_SIZE);
+            if (drained > 0) {
+                reportDrops(false);
+                flush();
+            }
+            return drained;
+        } finally {
+            encoderLock.unlock();
+        }
+    }
+
+    private void write(TraceRecord record) {
+        try {
+            encoder.write(record);
+        } catch (IOException e) {
+            TraceFileLogger.reportWriteFailure(e);
+        }
+    }
+
+    private void flush() {
+        try {
+            encoder.flush();
+        } catch (IOException e) {
+            TraceFileLogger.reportWriteFailure(e);
+        }
+    }
+
+    private void closeEncoder() {
+        try {
+            encoder.close();
+        } catch (IOException e) {
+            TraceFileLogger.reportWriteFailure(e);
+        }
+    }
+
+    private void reportDrops(boolean force) {
+        long now = System.currentTimeMillis();
+        if (!force && now - lastDropReport < DROP_REPORT_INTERVAL_MILLIS) {
+            return;
+        }
+        long totalDrops = dropped.get();
+        if (totalDrops != reportedDrops) {
+            write(new TraceRecord("WARN", "Trace buffer full, dropped " + (totalDrops - reportedDrops) +
+                    " record(s) (" + totalDrops + " in total)", null));
+            flush();
+            reportedDrops = totalDrops;
+        }
+        lastDropReport = now;
+    }
+
+    long getDroppedCount() {
+        return dropped.get();
+    }
+
+    void execute() {
+        Thread writerThread = new Thread(this, "monarch-trace-writer");
+        writerThread.setDaemon(true);
+        thread = writerThread;
+        running = true;
+        writerThread.start();
+    }
+
+    /**
+     * Stops the writer thread after it has drained the buffer, and closes the encoder. If the thread
+     * doesn't stop in time, e.g. because it is stuck on a slow disk, it closes the encoder itself once
+     * it is done, so that the encoder is never closed under it.
+     */
+    void shutdownAndClose() {
+        Thread writerThread = thread;
+        if (writerThread != null) {
+            running = false;
+            LockSupport.unpark(writerThread);
+            try {
+                writerThread.join(SHUTDOWN_WAIT_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            thread = null;
+        }
+        encoderLock.lock();
+        try {
+            if (finished || writerThread == null) {
+                closeEncoder();
+            } else {
+                closeWhenFinished = true;
+            }
+        } finally {
+            encoderLock.unlock();
+        }
+    }
+}
@@ -0,0 +1,266 @@
+package com.asm.mja.logging;
+
+import com.asm.mja.metrics.MethodRegistry;
+
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Writes trace records in the {@link BinaryTraceFormat} to a {@link TraceOutput}.
+ *
+ * Levels, method names, thread names and stack frames are written once into the session's
+ * string table and referenced by id afterwards, and thread names are only looked up here,
+ * on the writing thread. The definitions a record needs and the record itself are written
+ * as one unit; if the unit starts a new file, it is encoded again after the file header
+ * and a new session, so that every file can be decoded on its own.
+ *
+ * @author ashut
+ * @since 16-10-2026
+ */
+
+class BinaryTraceEncoder implements TraceEncoder {
+    private static final int MAX_VARINT_SIZE = 10;
+    // Records are at most 2GB, so their length fits into 5 bytes
+    private static final int MAX_LENGTH_PREFIX_SIZE = 5;
+
+    private final TraceOutput output;
+    private ByteBuffer unit = ByteBuffer.allocate(1024);
+
+    private final Map<String, Integer> strings = new HashMap<>();
+    private final Map<StackTraceElement, Integer> frames = new HashMap<>();
+    private final Map<Long, String> threadNames = new HashMap<>();
+    private int nextStringId;
+    private int[] frameIds = new int[64];
+    private long lastTimestamp;
+    private boolean sessionStarted;
+
+    BinaryTraceEncoder(TraceOutput output) {
+        this.output = output;
+    }
+
+    @Override
+    public void write(TraceRecord record) throws IOException {
+        // Called through Buffer, as the covariant ByteBuffer overrides of newer JDKs don't exist on Java 8
+        ((Buffer) unit).clear();
+        if (sessionStarted) {
+            encode(record);
+        }
+        if (!sessionStarted || output.startsNewFile(unit.position())) {
+            ((Buffer) unit).clear();
+            startSession(output.startsNewFile(0), record.getTimestamp());
+            encode(record);
+        }
+        ((Buffer) unit).flip();
+        output.write(unit);
+    }
+
+    private void startSession(boolean newFile, long timestamp) {
+        strings.clear();
+        frames.clear();
+        threadNames.clear();
+        nextStringId = 1;
+        lastTimestamp = timestamp;
+        sessionStarted = true;
+        if (newFile) {
+            ensureCapacity(BinaryTraceFormat.MAGIC.length + 1);
+            unit.put(BinaryTraceFormat.MAGIC).put((byte) BinaryTraceFormat.VERSION);
+        }
+        int lengthPosition = beginRecord(BinaryTraceFormat.SESSION);
+        putVarint(timestamp);
+        endRecord(lengthPosition);
+    }
+
+    private void encode(TraceRecord record) {
+        // Definitions go first, as records of their own, so ids are resolved before the event is built
+        int levelId = levelId(record.getLevel());
+        long threadId = record.getThread().getId();
+        defineThread(threadId, record.getThread().getName());
+
+        String message = record.getMessage() == null ? "null" : record.getMessage();
+        int methodId = 0;
+        if (record.getMethodId() != TraceRecord.NO_METHOD) {
+            String method = MethodRegistry.getName(record.getMethodId());
+            methodId = stringId(method);
+            if (methodId == 0) {
+                // The string table is full, the method stays part of the message
+                message = "{" + method + "}" + message;
+            }
+        } else {
+            int methodEnd = message.startsWith("{") ? message.indexOf('}') : -1;
+            if (methodEnd > 1) {
+                methodId = stringId(message.substring(1, methodEnd));
+                if (methodId > 0) {
+                    message = message.substring(methodEnd + 1);
+                }
+            }
+        }
+
+        StackTraceElement[] stackTrace = record.getStackTrace();
+        int frameCount = 0;
+        if (stackTrace != null) {
+            if (frameIds.length < stackTrace.length) {
+                frameIds = new int[stackTrace.length];
+            }
+            for (StackTraceElement element : stackTrace) {
+                if (!TraceRecord.isThreadFrame(element)) {
+                    frameIds[frameCount++] = frameId(element);
+                }
+            }
+        }
+
+        int lengthPosition = beginRecord(BinaryTraceFormat.EVENT);
+        long timestampDelta = record.getTimestamp() - lastTimestamp;
+        putVarint((timestampDelta << 1) ^ (timestampDelta >> 63));
+        lastTimestamp = record.getTimestamp();
+        putVarint(levelId);
+        putVarint(threadId);
+        putVarint(methodId);
+        putString(message);
+        if (stackTrace == null) {
+            putVarint(0);
+        } else {
+            putVarint(frameCount + 1);
+            int written = 0;
+            for (StackTraceElement element : stackTrace) {
+                if (TraceRecord.isThreadFrame(element)) {
+                    continue;
+                }
+                int frameId = frameIds[written++];
+                putVarint(frameId);
+                if (frameId == 0) {
+                    putString(element.toString());
+                }
+            }
+        }
+        endRecord(lengthPosition);
+    }
+
+    private int levelId(String level) {
+        Integer id = strings.get(level);
+        // Levels are few, so they are interned even once the table is full
+        return id != null ? id : defineString(level);
+    }
+
+    /**
+     * @return The id of the string, defining it if needed, or 0 if the string table is full.
+     */
+    private int stringId(String value) {
+        Integer id = strings.get(value);
+        if (id != null) {
+            return id;
+        }
+        return nextStringId < BinaryTraceFormat.MAX_STRINGS ? defineString(value) : 0;
+    }
+
+    private int frameId(StackTraceElement element) {
+        Integer id = frames.get(element);
+        if (id != null) {
+            return id;
+        }
+        if (nextStringId >= BinaryTraceFormat.MAX_STRINGS) {
+            return 0;
+        }
+        int frameId = defineString(element.toString());
+        frames.put(element, frameId);
+        return frameId;
+    }
+
+    private int defineString(String value) {
+        int id = nextStringId++;
+        strings.put(value, id);
+        int lengthPosition = beginRecord(BinaryTraceFormat.STRING);
+        putVarint(id);
+        putString(value);
+        endRecord(lengthPosition);
+        return id;
+    }
+
+    private void defineThread(long threadId, String name) {
+        String known = threadNames.get(threadId);
+        if (known != null && known.equals(name)) {
+            return;
+        }
+        threadNames.put(threadId, name);
+        int nameId = stringId(name);
+        int lengthPosition = beginRecord(BinaryTraceFormat.THREAD);
+        putVarint(threadId);
+        putVarint(nameId);
+        if (nameId == 0) {
+            putString(name);
+        }
+        endRecord(lengthPosition);
+    }
+
+    /**
+     * Starts a record, leaving room for the longest length prefix.
+     *
+     * @return The position of the length prefix.
+     */
+    private int beginRecord(int type) {
+        ensureCapacity(MAX_LENGTH_PREFIX_SIZE + 1);
+        int lengthPosition = unit.position();
+        ((Buffer) unit).position(lengthPosition + MAX_LENGTH_PREFIX_SIZE);
+        unit.put((byte) type);
+        return lengthPosition;
+    }
+
+    /**
+     * Writes the length prefix of a record, moving the body back to close the gap if the prefix is shorter.
+     */
+    private void endRecord(int lengthPosition) {
+        int bodyPosition = lengthPosition + MAX_LENGTH_PREFIX_SIZE;
+        int length = unit.position() - bodyPosition;
+        ((Buffer) unit).position(lengthPosition);
+        // The room was reserved by beginRecord, so the buffer must not grow (and lose the body) here
+        putVarint(unit, length);
+        int prefixEnd = unit.position();
+        if (prefixEnd < bodyPosition) {
+            byte[] array = unit.array();
+            System.arraycopy(array, unit.arrayOffset() + bodyPosition, array, unit.arrayOffset() + prefixEnd, length);
+        }
+        ((Buffer) unit).position(prefixEnd + length);
+    }
+
+    private void putString(String value) {
+        byte[] utf8 = value.getBytes(StandardCharsets.UTF_8);
+        putVarint(utf8.length);
+        ensureCapacity(utf8.length);
+        unit.put(utf8);
+    }
+
+    private void putVarint(long value) {
+        ensureCapacity(MAX_VARINT_SIZE);
+        putVarint(unit, value);
+    }
+
+    private static void putVarint(ByteBuffer buffer, long value) {
+        while ((value & ~0x7FL) != 0) {
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    private void ensureCapacity(int size) {
+        if (unit.remaining() < size) {
+            ByteBuffer larger = ByteBuffer.allocate(Math.max(unit.capacity() * 2, unit.position() + size));
+            ((Buffer) unit).flip();
+            larger.put(unit);
+            unit = larger;
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        output.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        output.close();
+    }
+}
@@ -0,0 +1,51 @@
+package com.asm.mja.logging;
+
+/**
+ * Layout of the binary trace file (agent.mtrace), written by {@link BinaryTraceEncoder}
+ * and read by {@link BinaryTraceReader}.
+ *
+ * <pre>
+ * file    := "MTRC" version:u8 record*
+ * record  := length:varint body[length]
+ * body    := SESSION (0) startMillis:varint
+ *          | STRING  (1) id:varint utf8Length:varint utf8
+ *          | THREAD  (2) threadId:varint name:ref
+ *          | EVENT   (3) timestampDelta:zigzag-varint level:varint threadId:varint method:varint
+ *                        messageLength:varint utf8 frameCount:varint frame:ref*
+ * ref     := id:varint                      (id &gt; 0: a string defined earlier in the session)
+ *          | 0 utf8Length:varint utf8      (inline string, once the string table is full)
+ * </pre>
+ *
+ * Varints are unsigned LEB128. Every time a logger opens the file a SESSION record starts a
+ * new session, which resets the string table, the threads and the timestamp base, so a file
+ * appended to by several runs stays readable. Strings and threads are defined once per
+ * session before the first event that uses them; a thread is redefined when it is renamed.
+ * An event's timestamp is the difference in milliseconds to the previous event of the session
+ * (to the start of the session for the first one). Its method is 0 if the message has no
+ * {@code {method}} prefix, otherwise the id of the method name, and the message holds the rest.
+ * frameCount is 0 for events without a stack trace and the number of frames plus one otherwise.
+ * A record length of 0 ends the file: it is where the zero-filled tail of a memory-mapped
+ * segment starts if the JVM stopped without closing it.
+ *
+ * @author ashut
+ * @since 16-10-2026
+ */
+
+public final class BinaryTraceFormat {
+
+    public static final String FILE_NAME = "agent.mtrace";
+
+    static final byte[] MAGIC = {'M', 'T', 'R', 'C'};
+    static final int VERSION = 1;
+
+    static final int SESSION = 0;
+    static final int STRING = 1;
+    static final int THREAD = 2;
+    static final int EVENT = 3;
+
+    // Beyond this many distinct strings per session method names are left in the message and frames are inlined
+    static final int MAX_STRINGS = 1 << 16;
+
+    private BinaryTraceFormat() {
+    }
+}
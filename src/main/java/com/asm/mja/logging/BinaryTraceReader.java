@@ -0,0 +1,241 @@
+package com.asm.mja.logging;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Streams the events of a binary trace file (see {@link BinaryTraceFormat}) one record at
+ * a time; only the string table and thread names of the current session are kept.
+ *
+ * After {@link #next()} the timestamp, level, thread and method of the event are available.
+ * Its message and stack trace are only decoded when asked for, so filtered out events are
+ * cheap to skip.
+ *
+ * @author ashut
+ * @since 16-10-2026
+ */
+
+public class BinaryTraceReader implements Closeable {
+
+    private final DataInputStream in;
+    private final List<String> strings = new ArrayList<>();
+    private final Map<Long, String> threadNames = new HashMap<>();
+    private byte[] body = new byte[1024];
+    private int position;
+    private boolean truncated;
+
+    private long timestamp;
+    private String level;
+    private long threadId;
+    private String method;
+    private int messageOffset;
+
+    public BinaryTraceReader(InputStream inputStream) throws IOException {
+        in = new DataInputStream(new BufferedInputStream(inputStream, 64 * 1024));
+        byte[] magic = new byte[BinaryTraceFormat.MAGIC.length];
+        try {
+            in.readFully(magic);
+        } catch (EOFException e) {
+            throw new IOException("Not a Monarch binary trace file: file is too short");
+        }
+        if (!Arrays.equals(magic, BinaryTraceFormat.MAGIC)) {
+            throw new IOException("Not a Monarch binary trace file");
+        }
+        int version = in.readUnsignedByte();
+        if (version != BinaryTraceFormat.VERSION) {
+            throw new IOException("Unsupported binary trace file version " + version);
+        }
+    }
+
+    /**
+     * Advances to the next event, applying the definitions in between.
+     *
+     * @return true if there is an event, false at the end of the file.
+     * @throws IOException If the file can't be read or is malformed.
+     */
+    public boolean next() throws IOException {
+        while (readRecord()) {
+            int type = body[position++];
+            switch (type) {
+                case BinaryTraceFormat.SESSION:
+                    strings.clear();
+                    threadNames.clear();
+                    timestamp = readVarint();
+                    break;
+                case BinaryTraceFormat.STRING:
+                    int id = (int) readVarint();
+                    while (strings.size() <= id) {
+                        strings.add(null);
+                    }
+                    strings.set(id, readString());
+                    break;
+                case BinaryTraceFormat.THREAD:
+                    long definedThreadId = readVarint();
+                    threadNames.put(definedThreadId, readRef());
+                    break;
+                case BinaryTraceFormat.EVENT:
+                    long zigzag = readVarint();
+                    timestamp += (zigzag >>> 1) ^ -(zigzag & 1);
+                    level = string((int) readVarint());
+                    threadId = readVarint();
+                    int methodId = (int) readVarint();
+                    method = methodId == 0 ? null : string(methodId);
+                    messageOffset = position;
+                    return true;
+                default:
+                    throw new IOException("Unknown binary trace record type " + type);
+            }
+        }
+        return false;
+    }
+
+    private boolean readRecord() throws IOException {
+        int length;
+        try {
+            length = (int) readStreamVarint();
+        } catch (EOFException e) {
+            return false;
+        }
+        if (length == 0) {
+            // The zero-filled tail of a segment the JVM didn't close
+            return false;
+        }
+        if (length < 0) {
+            throw new IOException("Malformed binary trace record of length " + length);
+        }
+        if (body.length < length) {
+            body = new byte[Math.max(length, body.length * 2)];
+        }
+        try {
+            in.readFully(body, 0, length);
+        } catch (EOFException e) {
+            // The JVM stopped while the record was written
+            truncated = true;
+            return false;
+        }
+        position = 0;
+        return true;
+    }
+
+    private long readStreamVarint() throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.read();
+            if (b < 0) {
+                if (shift > 0) {
+                    truncated = true;
+                }
+                throw new EOFException();
+            }
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed varint in binary trace file");
+    }
+
+    private long readVarint() throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = body[position++];
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed varint in binary trace file");
+    }
+
+    private String readString() throws IOException {
+        int length = (int) readVarint();
+        String value = new String(body, position, length, StandardCharsets.UTF_8);
+        position += length;
+        return value;
+    }
+
+    private String readRef() throws IOException {
+        int id = (int) readVarint();
+        return id == 0 ? readString() : string(id);
+    }
+
+    private String string(int id) throws IOException {
+        if (id <= 0 || id >= strings.size() || strings.get(id) == null) {
+            throw new IOException("Binary trace file references undefined string " + id);
+        }
+        return strings.get(id);
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public String getLevel() {
+        return level;
+    }
+
+    public long getThreadId() {
+        return threadId;
+    }
+
+    public String getThreadName() {
+        String name = threadNames.get(threadId);
+        return name != null ? name : "thread-" + threadId;
+    }
+
+    /**
+     * @return The method from the {@code {method}} prefix of the message, or null if there is none.
+     */
+    public String getMethod() {
+        return method;
+    }
+
+    /**
+     * @return The message as written to agent.trace, including the {@code {method}} prefix.
+     */
+    public String getMessage() throws IOException {
+        position = messageOffset;
+        String message = readString();
+        return method == null ? message : "{" + method + "}" + message;
+    }
+
+    /**
+     * @return The stack trace frames, or null if the event has none.
+     */
+    public List<String> getStackTrace() throws IOException {
+        position = messageOffset;
+        int messageLength = (int) readVarint();
+        position += messageLength;
+        int frameCount = (int) readVarint();
+        if (frameCount == 0) {
+            return null;
+        }
+        List<String> frames = new ArrayList<>(frameCount - 1);
+        for (int i = 1; i < frameCount; i++) {
+            frames.add(readRef());
+        }
+        return frames;
+    }
+
+    /**
+     * @return true if the file ended in the middle of a record, e.g. because the JVM was killed.
+     */
+    public boolean isTruncated() {
+        return truncated;
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+}
@@ -0,0 +1,83 @@
+package com.asm.mja.logging;
+
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Appends to a single trace file through a {@link FileChannel}, staging units in a direct
+ * buffer which is handed to the channel when it fills up or on flush.
+ *
+ * @author ashut
+ * @since 16-10-2026
+ */
+
+class ChannelTraceOutput implements TraceOutput {
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final FileChannel channel;
+    private final ByteBuffer out = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    private boolean atFileStart;
+    private boolean closed;
+
+    ChannelTraceOutput(Path file) throws IOException {
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        atFileStart = channel.size() == 0;
+    }
+
+    @Override
+    public boolean startsNewFile(int length) {
+        return atFileStart;
+    }
+
+    @Override
+    public void write(ByteBuffer unit) throws IOException {
+        if (closed) {
+            return;
+        }
+        atFileStart = false;
+        if (unit.remaining() > out.remaining()) {
+            drain();
+        }
+        if (unit.remaining() <= out.remaining()) {
+            out.put(unit);
+        } else {
+            // Larger than the buffer (e.g. a deep stack trace): hand it to the channel directly
+            while (unit.hasRemaining()) {
+                channel.write(unit);
+            }
+        }
+    }
+
+    private void drain() throws IOException {
+        // Called through Buffer, as the covariant ByteBuffer overrides of newer JDKs don't exist on Java 8
+        ((Buffer) out).flip();
+        while (out.hasRemaining()) {
+            channel.write(out);
+        }
+        ((Buffer) out).clear();
+    }
+
+    @Override
+    public void flush() throws IOException {
+        if (!closed) {
+            drain();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            drain();
+        } finally {
+            channel.close();
+        }
+    }
+}
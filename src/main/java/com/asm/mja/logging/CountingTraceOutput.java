@@ -0,0 +1,53 @@
+package com.asm.mja.logging;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Counts the records and bytes written to a {@link TraceOutput}, for the metrics report.
+ * Units are only written by one thread at a time, so the counters have a single writer.
+ *
+ * @author ashut
+ * @since 16-10-2026
+ */
+
+class CountingTraceOutput implements TraceOutput {
+    private final TraceOutput output;
+    private volatile long recordsWritten;
+    private volatile long bytesWritten;
+
+    CountingTraceOutput(TraceOutput output) {
+        this.output = output;
+    }
+
+    @Override
+    public boolean startsNewFile(int length) throws IOException {
+        return output.startsNewFile(length);
+    }
+
+    @Override
+    public void write(ByteBuffer unit) throws IOException {
+        int length = unit.remaining();
+        output.write(unit);
+        recordsWritten++;
+        bytesWritten += length;
+    }
+
+    long getRecordsWritten() {
+        return recordsWritten;
+    }
+
+    long getBytesWritten() {
+        return bytesWritten;
+    }
+
+    @Override
+    public void flush() throws IOException {
+        output.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        output.close();
+    }
+}
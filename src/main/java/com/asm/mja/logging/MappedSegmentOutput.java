@@ -0,0 +1,207 @@
+package com.asm.mja.logging;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Writes trace output into fixed-size memory-mapped segments, e.g. agent-00001.trace,
+ * agent-00002.trace, ... Writing a unit is a copy into the mapped segment; the operating
+ * system writes the pages back, so nothing needs to be flushed and the data is visible to
+ * readers of the file right away.
+ *
+ * A unit that doesn't fit into the rest of a segment starts the next one. Closed segments
+ * are truncated to their content and handed to the {@link SegmentArchiver}, which compresses
+ * them and deletes the oldest ones beyond the retention limits. If the JVM dies, the segment
+ * being written keeps its zero-filled tail.
+ *
+ * @author ashut
+ * @since 16-10-2026
+ */
+
+class MappedSegmentOutput implements TraceOutput {
+    private static final Unmapper UNMAPPER = new Unmapper();
+
+    private final Path dir;
+    private final String baseName;
+    private final String extension;
+    private final SegmentPolicy policy;
+    private final SegmentArchiver archiver;
+
+    private int index;
+    private Path path;
+    private FileChannel channel;
+    private MappedByteBuffer segment;
+    private boolean closed;
+
+    /**
+     * @param dir       The directory of the segments.
+     * @param baseName  The name of the segments before their number, e.g. "agent".
+     * @param extension The extension of the segments, e.g. ".trace".
+     * @param policy    The segment size and retention.
+     */
+    MappedSegmentOutput(Path dir, String baseName, String extension, SegmentPolicy policy) throws IOException {
+        this.dir = dir;
+        this.baseName = baseName;
+        this.extension = extension;
+        this.policy = policy;
+        this.index = lastSegmentIndex();
+        this.archiver = new SegmentArchiver(policy);
+        archiver.execute();
+        open(policy.getSegmentSizeBytes());
+    }
+
+    /**
+     * @return The highest number of the segments already in the directory, so that numbering continues after them.
+     */
+    private int lastSegmentIndex() throws IOException {
+        int last = 0;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, baseName + "-*" + extension + "*")) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                int start = baseName.length() + 1;
+                int end = name.indexOf(extension, start);
+                if (end > start) {
+                    try {
+                        last = Math.max(last, Integer.parseInt(name.substring(start, end)));
+                    } catch (NumberFormatException e) {
+                        // not a segment
+                    }
+                }
+            }
+        }
+        return last;
+    }
+
+    private void open(long size) throws IOException {
+        index++;
+        path = dir.resolve(String.format("%s-%05d%s", baseName, index, extension));
+        channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        segment = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+    }
+
+    @Override
+    public boolean startsNewFile(int length) throws IOException {
+        if (closed) {
+            return false;
+        }
+        if (segment.position() == 0) {
+            return true;
+        }
+        if (length > segment.remaining()) {
+            roll();
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    public void write(ByteBuffer unit) throws IOException {
+        if (closed) {
+            return;
+        }
+        if (unit.remaining() > segment.remaining()) {
+            if (segment.position() > 0) {
+                roll();
+            }
+            if (unit.remaining() > segment.remaining()) {
+                // Larger than a whole segment: this segment is sized to fit it
+                UNMAPPER.unmap(segment);
+                segment = channel.map(FileChannel.MapMode.READ_WRITE, 0, unit.remaining());
+            }
+        }
+        segment.put(unit);
+    }
+
+    private void roll() throws IOException {
+        Path closedSegment = path;
+        int length = finish();
+        archiver.archive(closedSegment, length);
+        open(policy.getSegmentSizeBytes());
+    }
+
+    /**
+     * Unmaps the current segment and truncates it to what was written.
+     *
+     * @return The length of the segment's content.
+     */
+    private int finish() throws IOException {
+        int length = segment.position();
+        UNMAPPER.unmap(segment);
+        segment = null;
+        try {
+            channel.truncate(length);
+        } catch (IOException e) {
+            // Some platforms refuse to truncate a file which is still mapped; the archiver only reads the content
+        } finally {
+            channel.close();
+        }
+        return length;
+    }
+
+    @Override
+    public void flush() {
+        // Mapped pages are written back by the operating system
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            finish();
+        } finally {
+            archiver.shutdown();
+        }
+    }
+
+    /**
+     * Releases mapped buffers right away instead of when they are garbage collected, so that segments
+     * can be truncated and deleted and their address space is given back. Falls back to the garbage
+     * collector if neither the Java 9+ nor the Java 8 way is accessible.
+     */
+    private static final class Unmapper {
+        private Object unsafe;
+        private Method invokeCleaner;
+
+        Unmapper() {
+            try {
+                Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+                invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+                Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+                theUnsafe.setAccessible(true);
+                unsafe = theUnsafe.get(null);
+            } catch (ReflectiveOperationException | RuntimeException e) {
+                // Java 8, the buffer's own cleaner is used
+                invokeCleaner = null;
+            }
+        }
+
+        void unmap(MappedByteBuffer buffer) {
+            try {
+                if (invokeCleaner != null) {
+                    invokeCleaner.invoke(unsafe, buffer);
+                } else {
+                    Method cleanerMethod = buffer.getClass().getMethod("cleaner");
+                    cleanerMethod.setAccessible(true);
+                    Object cleaner = cleanerMethod.invoke(buffer);
+                    if (cleaner != null) {
+                        cleaner.getClass().getMethod("clean").invoke(cleaner);
+                    }
+                }
+            } catch (ReflectiveOperationException | RuntimeException e) {
+                // Unmapped once the buffer is garbage collected
+            }
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package com.asm.mja.logging;
+
+/**
+ * The OverflowPolicy enum decides what an application thread does when the
+ * asynchronous trace buffer is full.
+ *
+ * DROP_NEWEST: The record being published is discarded and counted as dropped.
+ * BLOCK:       The publishing thread waits until the trace writer frees a slot.
+ *
+ * @author ashut
+ * @since 16-10-2026
+ */
+
+public enum OverflowPolicy {
+    DROP_NEWEST,
+    BLOCK
+}
@@ -0,0 +1,166 @@
+package com.asm.mja.logging;
+
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Takes care of closed trace segments on a background thread: compresses them with gzip,
+ * if enabled, and deletes the oldest ones once more segments or bytes than the
+ * {@link SegmentPolicy} allows are kept. The segment being written counts as one full
+ * segment towards both limits.
+ *
+ * Errors go to the agent log rather than the trace, which is what is being archived.
+ *
+ * @author ashut
+ * @since 16-10-2026
+ */
+
+class SegmentArchiver implements Runnable {
+    private static final long POLL_MILLIS = 100;
+    private static final long SHUTDOWN_WAIT_MILLIS = 5000;
+
+    private final SegmentPolicy policy;
+    private final BlockingQueue<ClosedSegment> queue = new LinkedBlockingQueue<>();
+    // Only used by the archiver thread, oldest first
+    private final Deque<Path> archived = new ArrayDeque<>();
+    private long archivedBytes = 0;
+
+    private volatile boolean running = false;
+    private Thread thread = null;
+
+    SegmentArchiver(SegmentPolicy policy) {
+        this.policy = policy;
+    }
+
+    /**
+     * Queues a closed segment for compression and retention.
+     *
+     * @param segment The segment file.
+     * @param length  The length of its content, which the file may exceed if it couldn't be truncated.
+     */
+    void archive(Path segment, int length) {
+        queue.add(new ClosedSegment(segment, length));
+    }
+
+    @Override
+    public void run() {
+        // Segments closed before shutdown are still archived, within the shutdown wait
+        while (running || !queue.isEmpty()) {
+            ClosedSegment closedSegment;
+            try {
+                closedSegment = queue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                break;
+            }
+            if (closedSegment != null) {
+                process(closedSegment);
+            }
+        }
+    }
+
+    private void process(ClosedSegment closedSegment) {
+        Path kept = closedSegment.path;
+        if (policy.isCompress()) {
+            try {
+                kept = compress(closedSegment);
+            } catch (IOException e) {
+                AgentLogger.error("Failed to compress trace segment " + closedSegment.path + ", keeping it uncompressed; Exception: " + e.getMessage());
+            }
+        }
+        archived.addLast(kept);
+        archivedBytes += sizeOf(kept);
+        enforceRetention();
+    }
+
+    private Path compress(ClosedSegment closedSegment) throws IOException {
+        Path compressed = closedSegment.path.resolveSibling(closedSegment.path.getFileName() + ".gz");
+        Path temp = closedSegment.path.resolveSibling(closedSegment.path.getFileName() + ".gz.tmp");
+        // Plain streams rather than channels, as channels are closed if the thread is interrupted
+        try (InputStream in = new FileInputStream(closedSegment.path.toFile());
+             OutputStream out = new GZIPOutputStream(new FileOutputStream(temp.toFile()), 64 * 1024)) {
+            byte[] buffer = new byte[64 * 1024];
+            long remaining = closedSegment.length;
+            while (remaining > 0) {
+                int read = in.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+                if (read < 0) {
+                    break;
+                }
+                out.write(buffer, 0, read);
+                remaining -= read;
+            }
+        } catch (IOException e) {
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+        Files.move(temp, compressed, StandardCopyOption.REPLACE_EXISTING);
+        Files.delete(closedSegment.path);
+        return compressed;
+    }
+
+    private void enforceRetention() {
+        long maxTotalBytes = policy.getMaxTotalBytes();
+        while (!archived.isEmpty() && (archived.size() + 1 > policy.getMaxSegments() ||
+                (maxTotalBytes > 0 && archivedBytes + policy.getSegmentSizeBytes() > maxTotalBytes))) {
+            Path oldest = archived.removeFirst();
+            archivedBytes -= sizeOf(oldest);
+            try {
+                Files.deleteIfExists(oldest);
+            } catch (IOException e) {
+                AgentLogger.error("Failed to delete trace segment " + oldest + "; Exception: " + e.getMessage());
+            }
+        }
+    }
+
+    private static long sizeOf(Path file) {
+        try {
+            return Files.size(file);
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    void execute() {
+        running = true;
+        thread = new Thread(this, "monarch-trace-archiver");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Stops the archiver once the queued segments are archived, waiting for at most a few seconds.
+     */
+    void shutdown() {
+        Thread archiverThread = thread;
+        if (archiverThread != null) {
+            running = false;
+            try {
+                archiverThread.join(SHUTDOWN_WAIT_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            thread = null;
+        }
+    }
+
+    private static final class ClosedSegment {
+        final Path path;
+        final int length;
+
+        ClosedSegment(Path path, int length) {
+            this.path = path;
+            this.length = length;
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package com.asm.mja.logging;
+
+/**
+ * How trace output is split into segments and how many of them are kept.
+ *
+ * @author ashut
+ * @since 16-10-2026
+ */
+
+public final class SegmentPolicy {
+    private final long segmentSizeBytes;
+    private final int maxSegments;
+    private final long maxTotalBytes;
+    private final boolean compress;
+
+    /**
+     * @param segmentSizeBytes The size at which a segment is closed and the next one started.
+     * @param maxSegments      The number of segments kept, including the one being written.
+     * @param maxTotalBytes    The size of the segments kept on disk, including the one being written, 0 if unbounded.
+     * @param compress         Whether closed segments are compressed with gzip.
+     */
+    public SegmentPolicy(long segmentSizeBytes, int maxSegments, long maxTotalBytes, boolean compress) {
+        this.segmentSizeBytes = segmentSizeBytes;
+        this.maxSegments = maxSegments;
+        this.maxTotalBytes = maxTotalBytes;
+        this.compress = compress;
+    }
+
+    public long getSegmentSizeBytes() {
+        return segmentSizeBytes;
+    }
+
+    public int getMaxSegments() {
+        return maxSegments;
+    }
+
+    public long getMaxTotalBytes() {
+        return maxTotalBytes;
+    }
+
+    public boolean isCompress() {
+        return compress;
+    }
+}
@@ -0,0 +1,72 @@
+package com.asm.mja.logging;
+
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+
+/**
+ * Writes trace records as agent.trace lines in the platform charset, rendering and encoding
+ * them into reused buffers.
+ *
+ * @author ashut
+ * @since 16-10-2026
+ */
+
+class TextTraceEncoder implements TraceEncoder {
+    private static final String LINE_SEPARATOR = System.lineSeparator();
+
+    private final TraceOutput output;
+    private final StringBuilder line = new StringBuilder(256);
+    private final CharsetEncoder charsetEncoder = Charset.defaultCharset().newEncoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    private ByteBuffer bytes = ByteBuffer.allocate(1024);
+
+    TextTraceEncoder(TraceOutput output) {
+        this.output = output;
+    }
+
+    @Override
+    public void write(TraceRecord record) throws IOException {
+        line.setLength(0);
+        record.render(line);
+        line.append(LINE_SEPARATOR);
+        encode();
+        output.startsNewFile(bytes.remaining());
+        output.write(bytes);
+    }
+
+    private void encode() {
+        CharBuffer chars = CharBuffer.wrap(line);
+        while (true) {
+            // Called through Buffer, as the covariant ByteBuffer overrides of newer JDKs don't exist on Java 8
+            ((Buffer) bytes).clear();
+            charsetEncoder.reset();
+            CoderResult result = charsetEncoder.encode(chars, bytes, true);
+            if (!result.isOverflow()) {
+                result = charsetEncoder.flush(bytes);
+            }
+            if (!result.isOverflow()) {
+                ((Buffer) bytes).flip();
+                return;
+            }
+            bytes = ByteBuffer.allocate(bytes.capacity() * 2);
+            ((Buffer) chars).rewind();
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        output.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        output.close();
+    }
+}
@@ -0,0 +1,21 @@
+package com.asm.mja.logging;
+
+import java.io.IOException;
+
+/**
+ * Writes trace records to the trace file in one {@link TraceFormat}. An encoder is only
+ * used by one thread at a time: the writer thread in async mode, or under the logger's
+ * lock otherwise.
+ *
+ * @author ashut
+ * @since 16-10-2026
+ */
+
+interface TraceEncoder {
+
+    void write(TraceRecord record) throws IOException;
+
+    void flush() throws IOException;
+
+    void close() throws IOException;
+}
@@ -1,11 +1,7 @@
 package com.asm.mja.logging;
 
-import com.asm.mja.utils.DateUtils;
-
-import java.io.File;
-import java.io.FileWriter;
 import java.io.IOException;
-import java.io.PrintWriter;
+import java.nio.file.Paths;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 
@@ -16,138 +12,255 @@ import java.util.concurrent.locks.ReentrantLock;
 
 public class TraceFileLogger {
 
-    private static TraceFileLogger instance;
+    // Created eagerly, so that injected code and advice get it without synchronization
+    private static final TraceFileLogger instance = new TraceFileLogger();
     private static final String LOG_FILE_NAME = "agent.trace";
-    private String fileName;
-    private PrintWriter writer;
+    private static volatile boolean writeFailureReported = false;
+    // Set by init(); encoding is done under the lock, but write() and the counters read these without it
+    private volatile TraceEncoder encoder;
+    private volatile CountingTraceOutput output;
     private final Lock lock = new ReentrantLock();
 
+    // Set when trace records are handed off to the monarch-trace-writer thread instead of written inline
+    private volatile AsyncTraceWriter asyncWriter;
+
     public String traceDir;
 
     public void init(String location) {
-        fileName = location + File.separator + LOG_FILE_NAME;
+        init(location, TraceFormat.TEXT);
+    }
+
+    /**
+     * Opens the trace file in the given directory.
+     *
+     * @param location The trace directory.
+     * @param format   TEXT to write agent.trace, BINARY to write agent.mtrace.
+     */
+    public void init(String location, TraceFormat format) {
+        init(location, format, null);
+    }
+
+    /**
+     * Opens the trace file, or its first segment, in the given directory.
+     *
+     * @param location      The trace directory.
+     * @param format        TEXT to write agent.trace, BINARY to write agent.mtrace.
+     * @param segmentPolicy How to split the trace into memory-mapped segments (agent-00001.trace, ...),
+     *                      or null to append to a single file.
+     */
+    public void init(String location, TraceFormat format, SegmentPolicy segmentPolicy) {
         traceDir = location;
+        String name = format == TraceFormat.BINARY ? BinaryTraceFormat.FILE_NAME : LOG_FILE_NAME;
         try {
-            writer = new PrintWriter(new FileWriter(fileName, true));
+            TraceOutput output;
+            if (segmentPolicy != null) {
+                int extensionStart = name.lastIndexOf('.');
+                output = new MappedSegmentOutput(Paths.get(location), name.substring(0, extensionStart),
+                        name.substring(extensionStart), segmentPolicy);
+            } else {
+                output = new ChannelTraceOutput(Paths.get(location, name));
+            }
+            this.output = new CountingTraceOutput(output);
+            encoder = format == TraceFormat.BINARY ? new BinaryTraceEncoder(this.output) : new TextTraceEncoder(this.output);
         } catch (IOException e) {
             e.printStackTrace();
         }
     }
 
+    /**
+     * Switches the logger to asynchronous mode. Records are published into a bounded ring buffer
+     * and written by a dedicated writer thread which flushes once per batch.
+     *
+     * @param bufferSize     The capacity of the ring buffer (rounded up to a power of two).
+     * @param overflowPolicy What to do with a record when the buffer is full.
+     */
+    public void startAsyncWriter(int bufferSize, OverflowPolicy overflowPolicy) {
+        if (encoder == null) {
+            throw new IllegalStateException("TraceFileLogger has not been initialized. Call init() first.");
+        }
+        if (asyncWriter != null) {
+            return;
+        }
+        AsyncTraceWriter traceWriter = new AsyncTraceWriter(encoder, lock, bufferSize, overflowPolicy);
+        traceWriter.execute();
+        asyncWriter = traceWriter;
+        trace("Asynchronous trace writer started with buffer size " + bufferSize + " and overflow policy " + overflowPolicy);
+    }
+
     public String getTraceDir() {
         return traceDir;
     }
 
+    /**
+     * @return The number of records written to the trace file since the agent started.
+     */
+    public long getRecordsWritten() {
+        CountingTraceOutput counter = output;
+        return counter == null ? 0L : counter.getRecordsWritten();
+    }
+
+    /**
+     * @return The number of bytes written to the trace file since the agent started.
+     */
+    public long getBytesWritten() {
+        CountingTraceOutput counter = output;
+        return counter == null ? 0L : counter.getBytesWritten();
+    }
+
+    /**
+     * @return The number of records the asynchronous trace writer dropped because its buffer was full.
+     */
+    public long getDroppedCount() {
+        AsyncTraceWriter traceWriter = asyncWriter;
+        return traceWriter == null ? 0L : traceWriter.getDroppedCount();
+    }
+
     private TraceFileLogger() {
 
     }
 
     public static TraceFileLogger getInstance() {
-        if(instance == null) {
-            synchronized (TraceFileLogger.class) {
-                if (instance == null) {
-                    instance = new TraceFileLogger();
-                }
-            }
-        }
         return instance;
     }
 
     public void trace(String message) {
-        if (writer == null) {
-            throw new IllegalStateException("TraceFileLogger has not been initialized. Call init() first.");
-        }
-        StringBuilder logMessage = new StringBuilder();
-        logMessage.append(DateUtils.getFormattedTimestamp()).append(' ');
-        logMessage.append("[TRACE] ");
-        logMessage.append('[').append(Thread.currentThread().getName()).append("] ");
-        logMessage.append(message);
-        writeLog(logMessage.toString());
+        log("TRACE", message, null);
+    }
+
+    /**
+     * Traces an event of an instrumented method. The method name is only looked up when the
+     * record is written, so that tracing a constant message doesn't build a string.
+     *
+     * @param methodId The id of the method, see {@link com.asm.mja.metrics.MethodRegistry}.
+     * @param message  The message following the {@code {method}} prefix, e.g. " | ENTRY | HEAP".
+     */
+    public void trace(int methodId, String message) {
+        log("TRACE", methodId, message, null, false, null);
+    }
+
+    /**
+     * Traces the argument values of an instrumented method, which are rendered after the message
+     * as " 0=... 1=..." when the record is written, see {@link ValueRenderer}.
+     *
+     * @param values The values, which must not be modified afterwards, e.g. a fresh array of the arguments.
+     */
+    public void traceValues(int methodId, String message, Object[] values) {
+        log("TRACE", methodId, message, values, true, null);
+    }
+
+    /**
+     * Traces a value, e.g. a return value, which is rendered after the message when the record is written.
+     */
+    public void traceValue(int methodId, String message, Object value) {
+        log("TRACE", methodId, message, new Object[]{value}, false, null);
+    }
+
+    /**
+     * Traces a primitive value, e.g. a return value, without boxing it.
+     *
+     * @param type The descriptor type of the value: I (also for byte and short), J, F, D, Z or C.
+     * @param bits The value widened to a long; float and double values as Float.floatToRawIntBits()
+     *             and Double.doubleToRawLongBits().
+     */
+    public void tracePrimitive(int methodId, String message, char type, long bits) {
+        write(new TraceRecord("TRACE", methodId, message, type, bits));
     }
 
     public void error(String message) {
-        if (writer == null) {
-            throw new IllegalStateException("TraceFileLogger has not been initialized. Call init() first.");
-        }
-        StringBuilder logMessage = new StringBuilder();
-        logMessage.append(DateUtils.getFormattedTimestamp()).append(' ');
-        logMessage.append("[ERROR] ");
-        logMessage.append('[').append(Thread.currentThread().getName()).append("] ");
-        logMessage.append(message);
-        writeLog(logMessage.toString());
+        log("ERROR", message, null);
     }
 
     public void error(String message, Exception e) {
-        if (writer == null) {
-            throw new IllegalStateException("TraceFileLogger has not been initialized. Call init() first.");
-        }
-        StringBuilder logMessage = new StringBuilder();
-        logMessage.append(DateUtils.getFormattedTimestamp()).append(' ');
-        logMessage.append("[ERROR] ");
-        logMessage.append('[').append(Thread.currentThread().getName()).append("] ");
-        logMessage.append(message);
-        writeLog(logMessage.toString());
+        log("ERROR", message, null);
         exception(e);
     }
 
     public void warn(String message) {
-        if (writer == null) {
-            throw new IllegalStateException("TraceFileLogger has not been initialized. Call init() first.");
-        }
-        StringBuilder logMessage = new StringBuilder();
-        logMessage.append(DateUtils.getFormattedTimestamp()).append(' ');
-        logMessage.append("[WARN] ");
-        logMessage.append('[').append(Thread.currentThread().getName()).append("] ");
-        logMessage.append(message);
-        writeLog(logMessage.toString());
+        log("WARN", message, null);
     }
 
     public void stack(String message, StackTraceElement[] stackTraceElements) {
-        if (writer == null) {
-            throw new IllegalStateException("TraceFileLogger has not been initialized. Call init() first.");
-        }
-        StringBuilder logMessage = new StringBuilder();
-        logMessage.append(DateUtils.getFormattedTimestamp()).append(' ');
-        logMessage.append("[TRACE] ");
-        logMessage.append('[').append(Thread.currentThread().getName()).append("] ");
-        logMessage.append(message).append("\n");
-        for (StackTraceElement element : stackTraceElements) {
-            if(element.toString().startsWith("java.lang.Thread.getStackTrace"))
-                continue;
-            logMessage.append("\tat ").append(element.toString()).append('\n');
-        }
-        writeLog(logMessage.toString());
+        log("TRACE", message, stackTraceElements);
+    }
+
+    /**
+     * Traces a stack trace captured in an instrumented method, see {@link #trace(int, String)}.
+     */
+    public void stack(int methodId, String message, StackTraceElement[] stackTraceElements) {
+        log("TRACE", methodId, message, null, false, stackTraceElements);
+    }
+
+    /**
+     * Traces argument values, see {@link #traceValues(int, String, Object[])}, with a stack trace.
+     */
+    public void stack(int methodId, String message, Object[] values, StackTraceElement[] stackTraceElements) {
+        log("TRACE", methodId, message, values, true, stackTraceElements);
     }
 
     public void exception(Exception e) {
-        if (writer == null) {
+        log("EXCEPTION", e.getMessage(), e.getStackTrace());
+    }
+
+    private void log(String level, String message, StackTraceElement[] stackTraceElements) {
+        log(level, TraceRecord.NO_METHOD, message, null, false, stackTraceElements);
+    }
+
+    private void log(String level, int methodId, String message, Object[] values, boolean indexed,
+                     StackTraceElement[] stackTraceElements) {
+        write(new TraceRecord(level, methodId, message, values, indexed, stackTraceElements));
+    }
+
+    private void write(TraceRecord record) {
+        if (encoder == null) {
             throw new IllegalStateException("TraceFileLogger has not been initialized. Call init() first.");
         }
-        StringBuilder logMessage = new StringBuilder();
-        logMessage.append(DateUtils.getFormattedTimestamp()).append(' ');
-        logMessage.append("[EXCEPTION] ");
-        logMessage.append('[').append(Thread.currentThread().getName()).append("] ");
-        logMessage.append(e.getMessage());
-        for (StackTraceElement element : e.getStackTrace()) {
-            logMessage.append("\tat ").append(element.toString()).append("\n");
+        AsyncTraceWriter traceWriter = asyncWriter;
+        if (traceWriter != null) {
+            traceWriter.publish(record);
+        } else {
+            writeLog(record);
         }
-        writeLog(logMessage.toString());
     }
 
-    private void writeLog(String message) {
+    private void writeLog(TraceRecord record) {
         lock.lock();
         try {
-            writer.println(message);
-            writer.flush();
+            encoder.write(record);
+            encoder.flush();
+        } catch (IOException e) {
+            reportWriteFailure(e);
         } finally {
             lock.unlock();
         }
     }
 
+    /**
+     * Reports the first failure to write the trace file to the agent log; the records are lost.
+     */
+    static void reportWriteFailure(IOException e) {
+        if (!writeFailureReported) {
+            writeFailureReported = true;
+            AgentLogger.error("Error writing trace file, trace records are being lost: " + e.getMessage(), e);
+        }
+    }
+
     public void close() {
-        if (writer != null) {
+        if (encoder != null) {
             trace("Shutting down TraceFileLogger");
-            writer.close();
+            AsyncTraceWriter traceWriter = asyncWriter;
+            if (traceWriter != null) {
+                asyncWriter = null;
+                traceWriter.shutdownAndClose();
+                return;
+            }
+            lock.lock();
+            try {
+                encoder.close();
+            } catch (IOException e) {
+                reportWriteFailure(e);
+            } finally {
+                lock.unlock();
+            }
         }
     }
 
@@ -0,0 +1,17 @@
+package com.asm.mja.logging;
+
+/**
+ * The TraceFormat enum selects how trace records are written.
+ *
+ * TEXT:   One human readable line per record in agent.trace.
+ * BINARY: Compact length-prefixed records in agent.mtrace, see {@link BinaryTraceFormat}.
+ *         Decoded with {@link com.asm.mja.trace.TraceDecoderCLI}.
+ *
+ * @author ashut
+ * @since 16-10-2026
+ */
+
+public enum TraceFormat {
+    TEXT,
+    BINARY
+}
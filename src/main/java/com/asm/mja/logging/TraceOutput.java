@@ -0,0 +1,37 @@
+package com.asm.mja.logging;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * The file(s) a {@link TraceEncoder} writes to. Encoders hand over the bytes of one trace
+ * record at a time as a unit, which never spans two files, so that every file can be
+ * decoded on its own.
+ *
+ * @author ashut
+ * @since 16-10-2026
+ */
+
+interface TraceOutput {
+
+    /**
+     * Tells whether a unit of the given length goes to the start of a file, because nothing has
+     * been written to the current file yet or because the unit doesn't fit into the current
+     * segment, in which case the segment is closed and the next one started.
+     *
+     * @param length The length of the unit about to be written.
+     * @return true if the unit will be the first in its file.
+     */
+    boolean startsNewFile(int length) throws IOException;
+
+    /**
+     * Writes a unit. Units written after {@link #close()} are discarded.
+     *
+     * @param unit The bytes of one trace record, from position to limit.
+     */
+    void write(ByteBuffer unit) throws IOException;
+
+    void flush() throws IOException;
+
+    void close() throws IOException;
+}
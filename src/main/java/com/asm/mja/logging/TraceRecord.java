@@ -0,0 +1,147 @@
+package com.asm.mja.logging;
+
+import com.asm.mja.metrics.MethodRegistry;
+import com.asm.mja.utils.TimestampFormatter;
+
+/**
+ * A single trace entry. It is captured on the calling thread and rendered or
+ * encoded by whichever thread writes it out, so that the async mode keeps
+ * formatting, including resolving the thread and method names, off the
+ * instrumented code path.
+ *
+ * @author ashut
+ * @since 16-10-2026
+ */
+
+class TraceRecord {
+    private static final String THREAD_CLASS = "java.lang.Thread";
+    private static final String THREAD_METHOD = "getStackTrace";
+    static final int NO_METHOD = -1;
+
+    private final String level;
+    private final long timestamp;
+    private final Thread thread;
+    // The id of the instrumented method, see MethodRegistry, or NO_METHOD
+    private final int methodId;
+    private final String message;
+    // Captured argument values, or a return value, rendered after the message by ValueRenderer
+    private final Object[] values;
+    private final boolean indexed;
+    // A primitive return value kept unboxed: its descriptor type (I, J, F, D, Z or C), or 0 if none, and its bits
+    private final char primitiveType;
+    private final long primitiveBits;
+    private final StackTraceElement[] stackTrace;
+
+    TraceRecord(String level, String message, StackTraceElement[] stackTrace) {
+        this(level, NO_METHOD, message, null, false, stackTrace);
+    }
+
+    /**
+     * @param methodId The id of the instrumented method the record is about, written as the
+     *                 {@code {method}} prefix of the message, or {@link #NO_METHOD}.
+     * @param values   The values rendered after the message, or null.
+     * @param indexed  true to render the values as " 0=... 1=...", false to render the single value as is.
+     */
+    TraceRecord(String level, int methodId, String message, Object[] values, boolean indexed, StackTraceElement[] stackTrace) {
+        this(level, methodId, message, values, indexed, (char) 0, 0L, stackTrace);
+    }
+
+    /**
+     * A record of a primitive value, rendered after the message without being boxed.
+     *
+     * @param primitiveType The descriptor type of the value: I, J, F, D, Z or C.
+     * @param primitiveBits The value, see {@link ValueRenderer#appendPrimitive(StringBuilder, char, long)}.
+     */
+    TraceRecord(String level, int methodId, String message, char primitiveType, long primitiveBits) {
+        this(level, methodId, message, null, false, primitiveType, primitiveBits, null);
+    }
+
+    private TraceRecord(String level, int methodId, String message, Object[] values, boolean indexed,
+                        char primitiveType, long primitiveBits, StackTraceElement[] stackTrace) {
+        this.level = level;
+        this.timestamp = System.currentTimeMillis();
+        this.thread = Thread.currentThread();
+        this.methodId = methodId;
+        this.message = message;
+        this.values = values;
+        this.indexed = indexed;
+        this.primitiveType = primitiveType;
+        this.primitiveBits = primitiveBits;
+        this.stackTrace = stackTrace;
+    }
+
+    /**
+     * Renders the record in the agent.trace line format.
+     *
+     * @param out The builder to append the record to.
+     */
+    void render(StringBuilder out) {
+        TimestampFormatter.appendTo(out, timestamp).append(' ');
+        out.append('[').append(level).append("] ");
+        out.append('[').append(thread.getName()).append("] ");
+        if (methodId != NO_METHOD) {
+            out.append('{').append(MethodRegistry.getName(methodId)).append('}');
+        }
+        appendMessage(out);
+        if (stackTrace != null) {
+            out.append('\n');
+            for (StackTraceElement element : stackTrace) {
+                if (isThreadFrame(element))
+                    continue;
+                out.append("\tat ").append(element).append('\n');
+            }
+        }
+    }
+
+    private void appendMessage(StringBuilder out) {
+        out.append(message);
+        if (values != null) {
+            if (indexed) {
+                ValueRenderer.getInstance().appendIndexed(out, values);
+            } else {
+                ValueRenderer.getInstance().append(out, values[0]);
+            }
+        } else if (primitiveType != 0) {
+            ValueRenderer.appendPrimitive(out, primitiveType, primitiveBits);
+        }
+    }
+
+    /**
+     * @return true for the Thread.getStackTrace() frame on top of captured stacks, which is not written.
+     */
+    static boolean isThreadFrame(StackTraceElement element) {
+        return THREAD_CLASS.equals(element.getClassName()) && THREAD_METHOD.equals(element.getMethodName());
+    }
+
+    String getLevel() {
+        return level;
+    }
+
+    long getTimestamp() {
+        return timestamp;
+    }
+
+    Thread getThread() {
+        return thread;
+    }
+
+    int getMethodId() {
+        return methodId;
+    }
+
+    /**
+     * @return The message including its rendered values, without the {@code {method}} prefix if the record has a method id.
+     */
+    String getMessage() {
+        if (values == null && primitiveType == 0) {
+            return message;
+        }
+        StringBuilder out = new StringBuilder(128);
+        appendMessage(out);
+        return out.toString();
+    }
+
+    StackTraceElement[] getStackTrace() {
+        return stackTrace;
+    }
+}
@@ -0,0 +1,89 @@
+package com.asm.mja.logging;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+
+/**
+ * A bounded, lock-free, multi-producer single-consumer ring buffer.
+ *
+ * Producers claim a sequence with a CAS on the producer index and then publish
+ * the element into its slot with an ordered write. The single consumer treats a
+ * null slot as "not yet published", so it never overtakes a producer that has
+ * claimed a sequence but not yet written it.
+ *
+ * @author ashut
+ * @since 16-10-2026
+ */
+
+public class TraceRingBuffer<E> {
+    private final AtomicReferenceArray<E> slots;
+    private final int capacity;
+    private final int mask;
+    private final AtomicLong producerIndex = new AtomicLong();
+    private final AtomicLong consumerIndex = new AtomicLong();
+
+    /**
+     * Creates a ring buffer. The capacity is rounded up to the next power of two.
+     *
+     * @param requestedCapacity The minimum number of elements the buffer must hold.
+     */
+    public TraceRingBuffer(int requestedCapacity) {
+        if (requestedCapacity < 2) {
+            throw new IllegalArgumentException("Ring buffer capacity must be at least 2 - " + requestedCapacity);
+        }
+        this.capacity = Integer.highestOneBit(requestedCapacity - 1) << 1;
+        this.mask = capacity - 1;
+        this.slots = new AtomicReferenceArray<>(capacity);
+    }
+
+    /**
+     * Publishes an element. Safe to call from any number of threads.
+     *
+     * @param element The element to publish, must not be null.
+     * @return true if the element was published, false if the buffer was full.
+     */
+    public boolean offer(E element) {
+        long sequence;
+        do {
+            sequence = producerIndex.get();
+            if (sequence - consumerIndex.get() >= capacity) {
+                return false;
+            }
+        } while (!producerIndex.compareAndSet(sequence, sequence + 1));
+        slots.lazySet((int) sequence & mask, element);
+        return true;
+    }
+
+    /**
+     * Hands published elements to the consumer in order. Must only be called from the consumer thread.
+     *
+     * @param consumer The callback receiving each element.
+     * @param limit    The maximum number of elements to drain in this call.
+     * @return The number of elements drained.
+     */
+    public int drain(Consumer<E> consumer, int limit) {
+        long sequence = consumerIndex.get();
+        int drained = 0;
+        while (drained < limit) {
+            int index = (int) sequence & mask;
+            E element = slots.get(index);
+            if (element == null) {
+                break;
+            }
+            slots.lazySet(index, null);
+            consumerIndex.lazySet(++sequence);
+            drained++;
+            consumer.accept(element);
+        }
+        return drained;
+    }
+
+    public boolean isEmpty() {
+        return producerIndex.get() == consumerIndex.get();
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+}
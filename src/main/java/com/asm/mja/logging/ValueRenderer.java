@@ -0,0 +1,220 @@
+package com.asm.mja.logging;
+
+import com.asm.mja.rule.GlobPattern;
+
+import java.lang.reflect.Array;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Renders the argument and return values captured by ARGS and RET rules. Values are captured
+ * by reference and rendered when their trace record is written, which with the async trace
+ * writer is on the writer thread, so a value shows its state at that time. Primitive return
+ * values are kept unboxed in their record; primitive arguments are boxed into the argument array.
+ *
+ * Rendering is bounded: each value is cut to a maximum length, arrays, collections and maps
+ * show a maximum number of elements, and containers nested deeper than the maximum depth are
+ * only summarized. Instances of the configured identity classes, and their subclasses, are
+ * rendered as their type and identity hash without calling their toString(). Exceptions
+ * thrown while rendering a value are written in its place.
+ *
+ * @author ashut
+ * @since 16-10-2026
+ */
+
+public final class ValueRenderer {
+
+    private static final String TRUNCATED = "...";
+
+    private static volatile ValueRenderer instance = new ValueRenderer(256, 10, 2, new ArrayList<String>());
+
+    private final int maxLength;
+    private final int maxElements;
+    private final int maxDepth;
+    private final List<GlobPattern> identityClasses = new ArrayList<>();
+    private final ClassValue<Boolean> identityOnly = new ClassValue<Boolean>() {
+        @Override
+        protected Boolean computeValue(Class<?> type) {
+            return matchesIdentityClass(type);
+        }
+    };
+
+    private ValueRenderer(int maxLength, int maxElements, int maxDepth, List<String> identityClasses) {
+        this.maxLength = maxLength;
+        this.maxElements = maxElements;
+        this.maxDepth = maxDepth;
+        for (String identityClass : identityClasses) {
+            this.identityClasses.add(GlobPattern.compile(identityClass));
+        }
+    }
+
+    /**
+     * @param maxLength       The maximum number of characters of a rendered value.
+     * @param maxElements     The maximum number of elements rendered of an array, collection or map.
+     * @param maxDepth        The maximum nesting of arrays, collections and maps rendered element by element.
+     * @param identityClasses Patterns of class names, e.g. com.acme.entity.*, rendered as type and identity hash only.
+     */
+    public static void configure(int maxLength, int maxElements, int maxDepth, List<String> identityClasses) {
+        instance = new ValueRenderer(maxLength, maxElements, maxDepth, identityClasses);
+    }
+
+    static ValueRenderer getInstance() {
+        return instance;
+    }
+
+    /**
+     * Appends the values of an ARGS record, e.g. " 0=foo 1=42".
+     */
+    void appendIndexed(StringBuilder out, Object[] values) {
+        for (int i = 0; i < values.length; i++) {
+            out.append(' ').append(i).append('=');
+            append(out, values[i]);
+        }
+    }
+
+    /**
+     * Appends a value, cut to the maximum length.
+     */
+    void append(StringBuilder out, Object value) {
+        int limit = out.length() + maxLength;
+        appendValue(out, value, 0, limit);
+        if (out.length() > limit) {
+            out.setLength(limit);
+            out.append(TRUNCATED);
+        }
+    }
+
+    /**
+     * Appends a primitive value the way its boxed form's toString() would.
+     *
+     * @param type The descriptor type of the value: I, J, F, D, Z or C.
+     * @param bits The value widened to a long; float and double values as their raw bits.
+     */
+    static void appendPrimitive(StringBuilder out, char type, long bits) {
+        switch (type) {
+            case 'I':
+                out.append((int) bits);
+                break;
+            case 'J':
+                out.append(bits);
+                break;
+            case 'F':
+                out.append(Float.intBitsToFloat((int) bits));
+                break;
+            case 'D':
+                out.append(Double.longBitsToDouble(bits));
+                break;
+            case 'Z':
+                out.append(bits != 0L);
+                break;
+            case 'C':
+                out.append((char) bits);
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown primitive type " + type);
+        }
+    }
+
+    private void appendValue(StringBuilder out, Object value, int depth, int limit) {
+        if (value == null) {
+            out.append("null");
+            return;
+        }
+        Class<?> type = value.getClass();
+        if (identityOnly.get(type)) {
+            appendIdentity(out, value);
+            return;
+        }
+        try {
+            if (type.isArray()) {
+                appendArray(out, value, depth, limit);
+            } else if (value instanceof Collection) {
+                appendElements(out, ((Collection<?>) value).iterator(), ((Collection<?>) value).size(), depth, limit, value);
+            } else if (value instanceof Map) {
+                appendElements(out, ((Map<?, ?>) value).entrySet().iterator(), ((Map<?, ?>) value).size(), depth, limit, value);
+            } else if (value instanceof CharSequence) {
+                CharSequence chars = (CharSequence) value;
+                // Long strings are only copied up to the limit
+                out.append(chars, 0, Math.min(chars.length(), Math.max(0, limit - out.length() + 1)));
+            } else {
+                out.append(value.toString());
+            }
+        } catch (Exception e) {
+            out.append('<');
+            appendIdentity(out, value);
+            out.append(" threw ").append(e.getClass().getName()).append('>');
+        }
+    }
+
+    private void appendArray(StringBuilder out, Object array, int depth, int limit) {
+        int length = Array.getLength(array);
+        if (depth >= maxDepth) {
+            appendSummary(out, array, length);
+            return;
+        }
+        out.append('[');
+        int i = 0;
+        for (; i < length && i < maxElements && out.length() <= limit; i++) {
+            if (i > 0) {
+                out.append(", ");
+            }
+            appendValue(out, Array.get(array, i), depth + 1, limit);
+        }
+        appendRest(out, length - i);
+        out.append(']');
+    }
+
+    private void appendElements(StringBuilder out, Iterator<?> elements, int size, int depth, int limit, Object container) {
+        if (depth >= maxDepth) {
+            appendSummary(out, container, size);
+            return;
+        }
+        boolean map = container instanceof Map;
+        out.append(map ? '{' : '[');
+        int i = 0;
+        for (; i < maxElements && out.length() <= limit && elements.hasNext(); i++) {
+            if (i > 0) {
+                out.append(", ");
+            }
+            Object element = elements.next();
+            if (map) {
+                Map.Entry<?, ?> entry = (Map.Entry<?, ?>) element;
+                appendValue(out, entry.getKey(), depth + 1, limit);
+                out.append('=');
+                appendValue(out, entry.getValue(), depth + 1, limit);
+            } else {
+                appendValue(out, element, depth + 1, limit);
+            }
+        }
+        appendRest(out, size - i);
+        out.append(map ? '}' : ']');
+    }
+
+    private static void appendRest(StringBuilder out, int remaining) {
+        if (remaining > 0) {
+            out.append(", ...").append(remaining).append(" more");
+        }
+    }
+
+    private static void appendSummary(StringBuilder out, Object container, int size) {
+        out.append(container.getClass().getSimpleName()).append("(size=").append(size).append(')');
+    }
+
+    private static void appendIdentity(StringBuilder out, Object value) {
+        out.append(value.getClass().getName()).append('@').append(Integer.toHexString(System.identityHashCode(value)));
+    }
+
+    private boolean matchesIdentityClass(Class<?> type) {
+        for (Class<?> c = type; c != null; c = c.getSuperclass()) {
+            for (GlobPattern identityClass : identityClasses) {
+                if (identityClass.matches(c.getName())) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,129 @@
+package com.asm.mja.metrics;
+
+import com.asm.mja.transformer.Action;
+import com.asm.mja.transformer.Event;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Decides whether an invocation of a sampled or rate limited rule is traced, before
+ * any message is built or stack captured.
+ *
+ * Sampling draws from {@link ThreadLocalRandom}. The rate limit is a token bucket in
+ * its GCRA form: a single "theoretical arrival time" advanced with a CAS, holding up
+ * to one second worth of events as burst. Suppressed invocations are counted and
+ * reported by {@link MetricsReporter}.
+ *
+ * The throttle settings travel as one packed long constant in instrumented bytecode
+ * (see {@link com.asm.mja.rule.RuleOptions#getThrottleSpec()}), and a method's
+ * throttles are created from it on first use.
+ *
+ * @author ashut
+ * @since 16-10-2026
+ */
+
+public class EventThrottle {
+
+    private static final int ACTION_COUNT = Action.values().length;
+    static final int SLOT_COUNT = Event.values().length * ACTION_COUNT;
+
+    private final Event event;
+    private final Action action;
+    private final AtomicLong theoreticalArrivalNanos = new AtomicLong(Long.MIN_VALUE);
+    private final LongAdder suppressed = new LongAdder();
+    private volatile Settings settings;
+
+    EventThrottle(int slot, long throttleSpec) {
+        this.event = Event.values()[slot / ACTION_COUNT];
+        this.action = Action.values()[slot % ACTION_COUNT];
+        this.settings = new Settings(throttleSpec);
+    }
+
+    /**
+     * Returns the slot of the throttle of a rule within its method; a method's rules with
+     * the same event and action share a throttle.
+     *
+     * @param event  The event of the rule.
+     * @param action The action of the rule.
+     * @return The slot.
+     */
+    public static int slot(Event event, Action action) {
+        return event.ordinal() * ACTION_COUNT + action.ordinal();
+    }
+
+    /**
+     * @return true if the invocation should be traced, false if it is suppressed.
+     */
+    boolean tryAcquire() {
+        Settings current = settings;
+        if (current.sampleRate < 1f && ThreadLocalRandom.current().nextFloat() >= current.sampleRate) {
+            suppressed.increment();
+            return false;
+        }
+        if (current.emissionIntervalNanos > 0 && !tryAcquirePermit(current)) {
+            suppressed.increment();
+            return false;
+        }
+        return true;
+    }
+
+    private boolean tryAcquirePermit(Settings current) {
+        long now = System.nanoTime();
+        while (true) {
+            long theoreticalArrival = theoreticalArrivalNanos.get();
+            long next = Math.max(theoreticalArrival, now) + current.emissionIntervalNanos;
+            if (next - now > current.burstToleranceNanos) {
+                return false;
+            }
+            if (theoreticalArrivalNanos.compareAndSet(theoreticalArrival, next)) {
+                return true;
+            }
+        }
+    }
+
+    long getThrottleSpec() {
+        return settings.throttleSpec;
+    }
+
+    /**
+     * Applies new settings, e.g. after a rule reload, without resetting the suppressed count.
+     */
+    void reconfigure(long throttleSpec) {
+        settings = new Settings(throttleSpec);
+    }
+
+    public Event getEvent() {
+        return event;
+    }
+
+    public Action getAction() {
+        return action;
+    }
+
+    public long getSuppressed() {
+        return suppressed.sum();
+    }
+
+    private static final class Settings {
+        final long throttleSpec;
+        final float sampleRate;
+        final long emissionIntervalNanos;
+        final long burstToleranceNanos;
+
+        Settings(long throttleSpec) {
+            this.throttleSpec = throttleSpec;
+            this.sampleRate = Float.intBitsToFloat((int) (throttleSpec >>> 32));
+            float ratePerSecond = Float.intBitsToFloat((int) throttleSpec);
+            if (ratePerSecond > 0f) {
+                this.emissionIntervalNanos = Math.max(1L, (long) (1_000_000_000L / (double) ratePerSecond));
+                // A full second worth of events may pass at once, and at least one
+                this.burstToleranceNanos = Math.max(emissionIntervalNanos, 1_000_000_000L);
+            } else {
+                this.emissionIntervalNanos = 0L;
+                this.burstToleranceNanos = 0L;
+            }
+        }
+    }
+}
@@ -0,0 +1,146 @@
+package com.asm.mja.metrics;
+
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The counters of a method for a reporting interval. {@link MethodMetrics} keeps two of them
+ * and swaps them at the end of each interval: instrumented code records into the current one
+ * while {@link MetricsReporter} drains the retired one, so recording never waits for reporting.
+ *
+ * @author ashut
+ * @since 16-10-2026
+ */
+
+public class IntervalMetrics {
+    // Created on the first PROFILE measurement, so that methods without one don't carry a histogram
+    private final AtomicReference<LatencyHistogram> latency = new AtomicReference<>();
+    // Invocations measured by PROFILE rules that ended with an exception
+    private final LongAdder errors = new LongAdder();
+    // Invocations above the threshold of a PROFILE rule
+    private final LongAdder slowCalls = new LongAdder();
+    // Invocations measured by CPU and ALLOC rules, and their summed CPU nanoseconds and allocated bytes
+    private final LongAdder cpuCalls = new LongAdder();
+    private final LongAdder cpuNanos = new LongAdder();
+    private final LongAdder allocCalls = new LongAdder();
+    private final LongAdder allocBytes = new LongAdder();
+
+    void recordLatency(long nanos) {
+        LatencyHistogram histogram = latency.get();
+        if (histogram == null) {
+            latency.compareAndSet(null, new LatencyHistogram());
+            histogram = latency.get();
+        }
+        histogram.record(nanos);
+    }
+
+    void recordError() {
+        errors.increment();
+    }
+
+    void recordSlowCall() {
+        slowCalls.increment();
+    }
+
+    void recordCpuTime(long nanos) {
+        cpuCalls.increment();
+        cpuNanos.add(nanos);
+    }
+
+    void recordAllocatedBytes(long bytes) {
+        allocCalls.increment();
+        allocBytes.add(bytes);
+    }
+
+    /**
+     * Moves the counts into a snapshot. Counts are subtracted rather than reset, so that those
+     * recorded concurrently by a thread that still holds this instance are kept for its next drain.
+     *
+     * @return The counts recorded since the previous drain.
+     */
+    Snapshot drain() {
+        LatencyHistogram histogram = latency.get();
+        return new Snapshot(histogram == null ? null : histogram.drain(),
+                take(errors), take(slowCalls),
+                take(cpuCalls), take(cpuNanos),
+                take(allocCalls), take(allocBytes));
+    }
+
+    /**
+     * Adds the counts recorded since the previous drain to the given totals, without draining them.
+     */
+    void addTo(MetricsTotals totals) {
+        LatencyHistogram histogram = latency.get();
+        if (histogram != null && histogram.getCount() != 0) {
+            totals.add(histogram);
+        }
+        totals.add(errors.sum(), slowCalls.sum(), cpuCalls.sum(), cpuNanos.sum(), allocCalls.sum(), allocBytes.sum());
+    }
+
+    private static long take(LongAdder adder) {
+        long value = adder.sum();
+        if (value != 0) {
+            adder.add(-value);
+        }
+        return value;
+    }
+
+    /**
+     * The counts of a method over one reporting interval.
+     */
+    public static final class Snapshot {
+        private final LatencyHistogram.Snapshot latency;
+        private final long errors;
+        private final long slowCalls;
+        private final long cpuCalls;
+        private final long cpuNanos;
+        private final long allocCalls;
+        private final long allocBytes;
+
+        Snapshot(LatencyHistogram.Snapshot latency, long errors, long slowCalls,
+                 long cpuCalls, long cpuNanos, long allocCalls, long allocBytes) {
+            this.latency = latency;
+            this.errors = errors;
+            this.slowCalls = slowCalls;
+            this.cpuCalls = cpuCalls;
+            this.cpuNanos = cpuNanos;
+            this.allocCalls = allocCalls;
+            this.allocBytes = allocBytes;
+        }
+
+        /**
+         * @return The latency histogram of PROFILE rules, or null if the method has none.
+         */
+        public LatencyHistogram.Snapshot getLatency() {
+            return latency;
+        }
+
+        public long getCalls() {
+            return latency == null ? 0L : latency.getCount();
+        }
+
+        public long getErrors() {
+            return errors;
+        }
+
+        public long getSlowCalls() {
+            return slowCalls;
+        }
+
+        public long getCpuCalls() {
+            return cpuCalls;
+        }
+
+        public long getCpuNanos() {
+            return cpuNanos;
+        }
+
+        public long getAllocCalls() {
+            return allocCalls;
+        }
+
+        public long getAllocBytes() {
+            return allocBytes;
+        }
+    }
+}
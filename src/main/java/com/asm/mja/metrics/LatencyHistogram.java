@@ -0,0 +1,213 @@
+package com.asm.mja.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A lock-free log-linear histogram of nanosecond durations.
+ *
+ * Values below 32ns get a bucket each. Above that, every power of two is split
+ * into 32 linear sub-buckets, which bounds the relative error of a recorded
+ * value to about 3%. Values above {@link #MAX_TRACKABLE_NANOS} (~4.9 hours)
+ * are clamped into the last bucket.
+ *
+ * @author ashut
+ * @since 16-10-2026
+ */
+
+public class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    private static final int MAX_EXPONENT = 44;
+    static final long MAX_TRACKABLE_NANOS = (1L << MAX_EXPONENT) - 1;
+    static final int BUCKET_COUNT = SUB_BUCKET_COUNT + (MAX_EXPONENT - SUB_BUCKET_BITS) * SUB_BUCKET_COUNT;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+    private final AtomicLong totalCount = new AtomicLong();
+    private final AtomicLong totalNanos = new AtomicLong();
+    private final AtomicLong min = new AtomicLong(Long.MAX_VALUE);
+    private final AtomicLong max = new AtomicLong(0);
+
+    /**
+     * Records a single duration.
+     *
+     * @param nanos The duration in nanoseconds. Negative values are recorded as zero.
+     */
+    public void record(long nanos) {
+        if (nanos < 0) {
+            nanos = 0;
+        }
+        counts.incrementAndGet(bucketIndex(nanos));
+        totalCount.incrementAndGet();
+        totalNanos.addAndGet(nanos);
+        long currentMin = min.get();
+        while (nanos < currentMin && !min.compareAndSet(currentMin, nanos)) {
+            currentMin = min.get();
+        }
+        long currentMax = max.get();
+        while (nanos > currentMax && !max.compareAndSet(currentMax, nanos)) {
+            currentMax = max.get();
+        }
+    }
+
+    public long getCount() {
+        return totalCount.get();
+    }
+
+    /**
+     * Adds the counts of the histogram to coarser buckets, without copying it.
+     *
+     * @param bucketMap    The index of the coarse bucket of each bucket of this histogram.
+     * @param coarseCounts The counts of the coarse buckets.
+     * @return The sum of the recorded durations in nanoseconds.
+     */
+    long addTo(int[] bucketMap, long[] coarseCounts) {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            long count = counts.get(i);
+            if (count != 0) {
+                coarseCounts[bucketMap[i]] += count;
+            }
+        }
+        return totalNanos.get();
+    }
+
+    /**
+     * Copies the current state of the histogram. Recording may continue concurrently,
+     * so the copy is consistent per bucket but not across buckets.
+     *
+     * @return A snapshot of the histogram.
+     */
+    public Snapshot snapshot() {
+        long[] bucketCounts = new long[BUCKET_COUNT];
+        long count = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            bucketCounts[i] = counts.get(i);
+            count += bucketCounts[i];
+        }
+        return new Snapshot(bucketCounts, count, totalNanos.get(), min.get(), max.get());
+    }
+
+    /**
+     * Copies the current state of the histogram and resets it. Values recorded concurrently
+     * are either part of the snapshot or remain in the histogram, none are lost; only the
+     * snapshot's min and max may miss a value that is counted in it.
+     *
+     * @return A snapshot of the values recorded since the previous drain.
+     */
+    public Snapshot drain() {
+        long[] bucketCounts = new long[BUCKET_COUNT];
+        long count = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            if (counts.get(i) != 0) {
+                bucketCounts[i] = counts.getAndSet(i, 0);
+                count += bucketCounts[i];
+            }
+        }
+        totalCount.addAndGet(-count);
+        long nanos = totalNanos.getAndSet(0);
+        long drainedMin = min.getAndSet(Long.MAX_VALUE);
+        long drainedMax = max.getAndSet(0);
+        // A value recorded during the drain may have been counted before its min reached the histogram
+        return new Snapshot(bucketCounts, count, nanos, Math.min(drainedMin, drainedMax), drainedMax);
+    }
+
+    static int bucketIndex(long nanos) {
+        if (nanos < SUB_BUCKET_COUNT) {
+            return (int) nanos;
+        }
+        if (nanos > MAX_TRACKABLE_NANOS) {
+            return BUCKET_COUNT - 1;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(nanos);
+        int shift = exponent - SUB_BUCKET_BITS;
+        int subBucket = (int) (nanos >>> shift) - SUB_BUCKET_COUNT;
+        return SUB_BUCKET_COUNT + shift * SUB_BUCKET_COUNT + subBucket;
+    }
+
+    /**
+     * Returns the highest value that falls into the given bucket.
+     *
+     * @param index The bucket index.
+     * @return The bucket's upper bound in nanoseconds.
+     */
+    static long bucketUpperBound(int index) {
+        if (index < SUB_BUCKET_COUNT) {
+            return index;
+        }
+        int shift = (index - SUB_BUCKET_COUNT) / SUB_BUCKET_COUNT;
+        int subBucket = (index - SUB_BUCKET_COUNT) % SUB_BUCKET_COUNT;
+        long lowerBound = (long) (SUB_BUCKET_COUNT + subBucket) << shift;
+        return lowerBound + (1L << shift) - 1;
+    }
+
+    /**
+     * An immutable copy of a histogram.
+     */
+    public static class Snapshot {
+        private final long[] counts;
+        private final long count;
+        private final long totalNanos;
+        private final long min;
+        private final long max;
+
+        Snapshot(long[] counts, long count, long totalNanos, long min, long max) {
+            this.counts = counts;
+            this.count = count;
+            this.totalNanos = totalNanos;
+            this.min = count == 0 ? 0 : min;
+            this.max = max;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public long getMin() {
+            return min;
+        }
+
+        public long getMax() {
+            return max;
+        }
+
+        public double getMean() {
+            return count == 0 ? 0 : (double) totalNanos / count;
+        }
+
+        /**
+         * @see LatencyHistogram#addTo(int[], long[])
+         */
+        long addTo(int[] bucketMap, long[] coarseCounts) {
+            for (int i = 0; i < counts.length; i++) {
+                if (counts[i] != 0) {
+                    coarseCounts[bucketMap[i]] += counts[i];
+                }
+            }
+            return totalNanos;
+        }
+
+        /**
+         * Returns the value below which the given percentage of recorded values fall.
+         *
+         * @param percentile The percentile, between 0 and 100.
+         * @return The value in nanoseconds, never above the recorded maximum.
+         */
+        public long getValueAtPercentile(double percentile) {
+            if (count == 0) {
+                return 0;
+            }
+            long target = (long) Math.ceil(percentile / 100.0 * count);
+            if (target < 1) {
+                target = 1;
+            }
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= target) {
+                    return Math.min(bucketUpperBound(i), max);
+                }
+            }
+            return max;
+        }
+    }
+}
@@ -0,0 +1,214 @@
+package com.asm.mja.metrics;
+
+import com.asm.mja.rule.RuleOptions;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Metrics aggregated for a single instrumented method.
+ *
+ * @author ashut
+ * @since 16-10-2026
+ */
+
+public class MethodMetrics {
+    private final int id;
+    private final String methodName;
+    private final String descriptor;
+    private final String signature;
+    // Instrumented code records into the current interval, the reporter swaps in the spare one to drain it
+    private volatile IntervalMetrics current = new IntervalMetrics();
+    private IntervalMetrics spare = new IntervalMetrics();
+    // The drained intervals, for the Prometheus endpoint
+    private final MetricsTotals totals = new MetricsTotals();
+    // Indexed by EventThrottle.slot(), created when a sampled or rate limited rule of the method first fires
+    private volatile EventThrottle[] throttles;
+
+    // Settings of the method's PROFILE rule, set at transform time and read by the advice on every exit
+    private volatile RuleOptions profileOptions;
+    private volatile boolean traceCalls;
+    private volatile long slowThresholdNanos;
+    private volatile boolean slowCallArgs;
+    private volatile boolean slowCallStack;
+    private volatile int slowCallStackDepth;
+
+    MethodMetrics(int id, String methodName, String descriptor) {
+        this.id = id;
+        this.methodName = methodName;
+        this.descriptor = descriptor;
+        this.signature = methodName + descriptor;
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    /**
+     * @return The fully qualified method name, shared by overloads, e.g. com.acme.Order.submit.
+     */
+    public String getMethodName() {
+        return methodName;
+    }
+
+    /**
+     * @return The method descriptor, e.g. (Lcom/acme/Item;I)V.
+     */
+    public String getDescriptor() {
+        return descriptor;
+    }
+
+    /**
+     * @return The method name followed by its descriptor, which tells overloads apart.
+     */
+    public String getSignature() {
+        return signature;
+    }
+
+    /**
+     * Sets how invocations of the method are traced by its PROFILE rule.
+     *
+     * @param traceCalls true to trace every invocation.
+     * @param options    The options of the PROFILE rule.
+     */
+    public void configureProfile(boolean traceCalls, RuleOptions options) {
+        this.slowThresholdNanos = options.getThresholdNanos();
+        this.slowCallArgs = options.isCaptureArgs();
+        this.slowCallStack = options.isCaptureStack();
+        this.slowCallStackDepth = options.getStackDepth();
+        this.traceCalls = traceCalls;
+        this.profileOptions = options;
+    }
+
+    /**
+     * @return The options of the method's PROFILE rule, or null if it has none.
+     */
+    public RuleOptions getProfileOptions() {
+        return profileOptions;
+    }
+
+    public boolean isTraceCalls() {
+        return traceCalls;
+    }
+
+    /**
+     * @return The duration above which an invocation is traced as a slow call, 0 if none is.
+     */
+    public long getSlowThresholdNanos() {
+        return slowThresholdNanos;
+    }
+
+    /**
+     * @return true if the arguments of slow calls are traced, in which case the injected code passes them.
+     */
+    public boolean isSlowCallArgs() {
+        return slowCallArgs;
+    }
+
+    public boolean isSlowCallStack() {
+        return slowCallStack;
+    }
+
+    public int getSlowCallStackDepth() {
+        return slowCallStackDepth;
+    }
+
+    public void recordLatency(long nanos) {
+        current.recordLatency(nanos);
+    }
+
+    /**
+     * Records an invocation measured by a PROFILE rule that ended with an exception.
+     */
+    public void recordError(long nanos) {
+        IntervalMetrics interval = current;
+        interval.recordLatency(nanos);
+        interval.recordError();
+    }
+
+    public void recordSlowCall() {
+        current.recordSlowCall();
+    }
+
+    public void recordCpuTime(long nanos) {
+        current.recordCpuTime(nanos);
+    }
+
+    public void recordAllocatedBytes(long bytes) {
+        current.recordAllocatedBytes(bytes);
+    }
+
+    /**
+     * Ends the current reporting interval. The spare counters become current and the retired
+     * ones are drained; a thread that read the retired counters just before the swap may still
+     * record into them, which is then reported with the interval after next.
+     *
+     * @return The counts recorded in the interval that ended.
+     */
+    public synchronized IntervalMetrics.Snapshot rollInterval() {
+        IntervalMetrics retired = current;
+        current = spare;
+        spare = retired;
+        IntervalMetrics.Snapshot interval = retired.drain();
+        totals.add(interval);
+        return interval;
+    }
+
+    /**
+     * Adds the counts since the agent started, including those not reported yet, to the given totals.
+     */
+    public synchronized void addTotalsTo(MetricsTotals into) {
+        into.add(totals);
+        current.addTo(into);
+        spare.addTo(into);
+    }
+
+    /**
+     * Returns the throttle in a slot, creating or reconfiguring it to match the given settings.
+     *
+     * @param slot         The slot, see {@link EventThrottle#slot}.
+     * @param throttleSpec The packed throttle settings.
+     * @return The throttle.
+     */
+    EventThrottle throttle(int slot, long throttleSpec) {
+        EventThrottle[] current = throttles;
+        EventThrottle throttle = current == null ? null : current[slot];
+        if (throttle != null && throttle.getThrottleSpec() == throttleSpec) {
+            return throttle;
+        }
+        return installThrottle(slot, throttleSpec);
+    }
+
+    private synchronized EventThrottle installThrottle(int slot, long throttleSpec) {
+        EventThrottle[] current = throttles;
+        if (current == null) {
+            current = new EventThrottle[EventThrottle.SLOT_COUNT];
+        }
+        EventThrottle throttle = current[slot];
+        if (throttle == null) {
+            throttle = new EventThrottle(slot, throttleSpec);
+            current[slot] = throttle;
+            // Publish through the volatile field so that the new slot is visible to other threads
+            throttles = current;
+        } else if (throttle.getThrottleSpec() != throttleSpec) {
+            throttle.reconfigure(throttleSpec);
+        }
+        return throttle;
+    }
+
+    /**
+     * @return The throttles of the method's sampled or rate limited rules.
+     */
+    public List<EventThrottle> getThrottles() {
+        List<EventThrottle> result = new ArrayList<>();
+        EventThrottle[] current = throttles;
+        if (current != null) {
+            for (EventThrottle throttle : current) {
+                if (throttle != null) {
+                    result.add(throttle);
+                }
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,152 @@
+package com.asm.mja.metrics;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Assigns every instrumented method a dense int id at transform time.
+ *
+ * The id is baked into the injected bytecode as a constant, so the instrumented
+ * method reaches its metrics with an array load instead of a map lookup keyed by
+ * its name. Methods are told apart by name and descriptor, so overloads get ids,
+ * settings and histograms of their own. Registering the same method again returns
+ * the id it already has, which keeps ids stable across re-transformations and rule reloads.
+ *
+ * @author ashut
+ * @since 16-10-2026
+ */
+
+public class MethodRegistry {
+    private static final int INITIAL_CAPACITY = 64;
+
+    private static final Map<String, Integer> ids = new HashMap<>();
+    private static volatile MethodMetrics[] metrics = new MethodMetrics[INITIAL_CAPACITY];
+    private static int size = 0;
+    // Ids handed out on a thread between startRecording() and stopRecording(); not a lambda, as injected code references this class
+    private static final ThreadLocal<List<Integer>> recordedIds = new ThreadLocal<>();
+
+    /**
+     * Registers a method, or returns its existing id.
+     *
+     * @param methodName The fully qualified method name, e.g. com.acme.Order.submit.
+     * @param descriptor The method descriptor, e.g. (Lcom/acme/Item;I)V.
+     * @return The id of the method.
+     */
+    public static synchronized int register(String methodName, String descriptor) {
+        int id = assign(methodName, descriptor);
+        List<Integer> recording = recordedIds.get();
+        if (recording != null) {
+            recording.add(id);
+        }
+        return id;
+    }
+
+    /**
+     * Registers a method by its signature, see {@link MethodMetrics#getSignature()}, or returns its existing id.
+     *
+     * @param signature The method name followed by its descriptor, e.g. com.acme.Order.submit(Lcom/acme/Item;I)V.
+     * @return The id of the method.
+     */
+    public static int registerSignature(String signature) {
+        // A descriptor has a single '(', at its start
+        int descriptorStart = signature.lastIndexOf('(');
+        if (descriptorStart < 0) {
+            return register(signature, "");
+        }
+        return register(signature.substring(0, descriptorStart), signature.substring(descriptorStart));
+    }
+
+    private static int assign(String methodName, String descriptor) {
+        String signature = methodName + descriptor;
+        Integer existing = ids.get(signature);
+        if (existing != null) {
+            return existing;
+        }
+        int id = size;
+        MethodMetrics[] current = metrics;
+        if (id == current.length) {
+            current = Arrays.copyOf(current, current.length * 2);
+        }
+        current[id] = new MethodMetrics(id, methodName, descriptor);
+        // Publish through the volatile field so that the new slot is visible to recording threads
+        metrics = current;
+        ids.put(signature, id);
+        size = id + 1;
+        return id;
+    }
+
+    /**
+     * Starts recording the ids registered on the current thread, e.g. while a class is
+     * transformed, to find out which ids ended up in its bytecode.
+     */
+    public static void startRecording() {
+        recordedIds.set(new ArrayList<Integer>());
+    }
+
+    /**
+     * Stops recording on the current thread.
+     *
+     * @return The ids registered since {@link #startRecording()}, in registration order and possibly repeated.
+     */
+    public static List<Integer> stopRecording() {
+        List<Integer> recording = recordedIds.get();
+        recordedIds.remove();
+        return recording != null ? recording : Collections.<Integer>emptyList();
+    }
+
+    /**
+     * Returns the number of registered methods; ids range from 0 to size - 1.
+     *
+     * @return The number of registered methods.
+     */
+    public static synchronized int size() {
+        return size;
+    }
+
+    /**
+     * Returns the metrics of a registered method.
+     *
+     * @param id The id returned by {@link #register(String, String)}.
+     * @return The metrics of the method.
+     */
+    public static MethodMetrics get(int id) {
+        return metrics[id];
+    }
+
+    public static String getName(int id) {
+        return metrics[id].getMethodName();
+    }
+
+    /**
+     * Returns the metrics of all registered methods, in id order.
+     *
+     * @return An unmodifiable list of method metrics.
+     */
+    public static List<MethodMetrics> getAll() {
+        MethodMetrics[] current;
+        int count;
+        synchronized (MethodRegistry.class) {
+            current = metrics;
+            count = size;
+        }
+        List<MethodMetrics> all = new ArrayList<>(count);
+        all.addAll(Arrays.asList(current).subList(0, count));
+        return Collections.unmodifiableList(all);
+    }
+
+    /**
+     * Entry point for injected code of sampled or rate limited rules, called before anything is traced.
+     *
+     * @param id           The id of the instrumented method.
+     * @param slot         The throttle slot of the rule, see {@link EventThrottle#slot}.
+     * @param throttleSpec The packed throttle settings of the rule, see {@link com.asm.mja.rule.RuleOptions#getThrottleSpec()}.
+     * @return true if the invocation should be traced.
+     */
+    public static boolean allow(int id, int slot, long throttleSpec) {
+        return metrics[id].throttle(slot, throttleSpec).tryAcquire();
+    }
+}
@@ -0,0 +1,269 @@
+package com.asm.mja.metrics;
+
+import com.asm.mja.logging.TraceFileLogger;
+import com.asm.mja.utils.TimestampFormatter;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Periodically writes one summary block of what the agent recorded during the interval:
+ * the number of records and bytes written to the trace and dropped by the asynchronous
+ * writer, and per method the invocation count, error count and latency histogram of PROFILE
+ * rules, the CPU time and allocated bytes of CPU and ALLOC rules, the number of invocations
+ * sampled or rate limited rules didn't trace and the number of occurrences of each
+ * deduplicated STACK trace (see {@link StackTable}). Only methods with activity in the
+ * interval are listed.
+ *
+ * Per method counters are double-buffered (see {@link MethodMetrics#rollInterval()}), so
+ * reporting never blocks instrumented code.
+ *
+ * @author ashut
+ * @since 16-10-2026
+ */
+
+public class MetricsReporter implements Runnable {
+
+    private static final String FILE_NAME = "metrics.log";
+    private static final String LINE_SEPARATOR = System.lineSeparator();
+
+    private TraceFileLogger logger;
+    private Thread thread = null;
+    private long reportIntervalMillis = 60 * 1000L;
+    private MetricsTarget target = MetricsTarget.TRACE;
+    private Writer fileWriter;
+
+    // Trace output counters and time at the previous report
+    private long reportedRecords;
+    private long reportedBytes;
+    private long reportedDropped;
+    private long lastReportNanos = System.nanoTime();
+    // Suppressed count per throttle at the time of the previous report
+    private final Map<EventThrottle, Long> reportedSuppressed = new HashMap<>();
+    // Occurrence count per interned stack at the time of the previous report
+    private final Map<StackTable.Entry, Long> reportedStacks = new HashMap<>();
+    private final StringBuilder block = new StringBuilder(4096);
+
+    private static MetricsReporter instance = null;
+
+    private MetricsReporter() {
+
+    }
+
+    public static MetricsReporter getInstance() {
+        if(instance == null) {
+            instance = new MetricsReporter();
+        }
+        return instance;
+    }
+
+    public void setLogger(TraceFileLogger logger) {
+        this.logger = logger;
+    }
+
+    public void setReportInterval(long reportIntervalSeconds) {
+        this.reportIntervalMillis = reportIntervalSeconds * 1000L;
+    }
+
+    public void setTarget(MetricsTarget target) {
+        this.target = target;
+    }
+
+    @Override
+    public void run() {
+        while(true) {
+            try {
+                Thread.sleep(reportIntervalMillis);
+                report();
+            } catch (InterruptedException e) {
+                break;
+            }
+        }
+    }
+
+    /**
+     * Ends the current interval and writes its summary block.
+     */
+    public synchronized void report() {
+        long now = System.nanoTime();
+        block.setLength(0);
+        appendHeader(now - lastReportNanos);
+        lastReportNanos = now;
+        for (MethodMetrics methodMetrics : MethodRegistry.getAll()) {
+            IntervalMetrics.Snapshot interval = methodMetrics.rollInterval();
+            appendLatency(methodMetrics, interval);
+            appendCpuTime(methodMetrics, interval);
+            appendAllocatedBytes(methodMetrics, interval);
+            for (EventThrottle throttle : methodMetrics.getThrottles()) {
+                appendSuppressed(methodMetrics, throttle);
+            }
+        }
+        for (StackTable.Entry entry : StackTable.getAll()) {
+            appendStack(entry);
+        }
+        write();
+    }
+
+    private void appendHeader(long intervalNanos) {
+        long records = logger.getRecordsWritten();
+        long bytes = logger.getBytesWritten();
+        long dropped = logger.getDroppedCount();
+        block.append("METRICS | interval=").append(formatNanos(intervalNanos))
+                .append(" | trace records=").append(records - reportedRecords)
+                .append(" bytes=").append(formatBytes(bytes - reportedBytes))
+                .append(" dropped=").append(dropped - reportedDropped);
+        reportedRecords = records;
+        reportedBytes = bytes;
+        reportedDropped = dropped;
+    }
+
+    private StringBuilder startLine(MethodMetrics methodMetrics) {
+        return block.append(LINE_SEPARATOR).append('{').append(methodMetrics.getSignature()).append('}');
+    }
+
+    private void appendLatency(MethodMetrics methodMetrics, IntervalMetrics.Snapshot interval) {
+        LatencyHistogram.Snapshot latency = interval.getLatency();
+        if (latency == null || latency.getCount() == 0) {
+            return;
+        }
+        startLine(methodMetrics).append(" | PROFILE | count=").append(latency.getCount())
+                .append(" errors=").append(interval.getErrors())
+                .append(" min=").append(formatNanos(latency.getMin()))
+                .append(" mean=").append(formatNanos((long) latency.getMean()))
+                .append(" p50=").append(formatNanos(latency.getValueAtPercentile(50)))
+                .append(" p90=").append(formatNanos(latency.getValueAtPercentile(90)))
+                .append(" p99=").append(formatNanos(latency.getValueAtPercentile(99)))
+                .append(" p99.9=").append(formatNanos(latency.getValueAtPercentile(99.9)))
+                .append(" max=").append(formatNanos(latency.getMax()));
+        if (interval.getSlowCalls() > 0) {
+            block.append(" slow=").append(interval.getSlowCalls());
+        }
+    }
+
+    private void appendCpuTime(MethodMetrics methodMetrics, IntervalMetrics.Snapshot interval) {
+        long calls = interval.getCpuCalls();
+        if (calls == 0) {
+            return;
+        }
+        long nanos = interval.getCpuNanos();
+        startLine(methodMetrics).append(" | CPU | count=").append(calls)
+                .append(" total=").append(formatNanos(nanos))
+                .append(" mean=").append(formatNanos(nanos / calls));
+    }
+
+    private void appendAllocatedBytes(MethodMetrics methodMetrics, IntervalMetrics.Snapshot interval) {
+        long calls = interval.getAllocCalls();
+        if (calls == 0) {
+            return;
+        }
+        long bytes = interval.getAllocBytes();
+        startLine(methodMetrics).append(" | ALLOC | count=").append(calls)
+                .append(" total=").append(formatBytes(bytes))
+                .append(" mean=").append(formatBytes(bytes / calls));
+    }
+
+    /**
+     * Appends how many invocations of a sampled or rate limited rule were not traced in the interval.
+     */
+    private void appendSuppressed(MethodMetrics methodMetrics, EventThrottle throttle) {
+        long suppressed = throttle.getSuppressed();
+        Long previous = reportedSuppressed.get(throttle);
+        long delta = suppressed - (previous == null ? 0L : previous);
+        if (delta == 0) {
+            return;
+        }
+        reportedSuppressed.put(throttle, suppressed);
+        startLine(methodMetrics).append(" | ").append(throttle.getEvent()).append(" | ").append(throttle.getAction())
+                .append(" | suppressed=").append(delta).append(" total=").append(suppressed);
+    }
+
+    /**
+     * Appends how often an interned stack occurred in the interval; the stack itself
+     * was written with its id on its first occurrence.
+     */
+    private void appendStack(StackTable.Entry entry) {
+        long count = entry.getCount();
+        Long previous = reportedStacks.get(entry);
+        long delta = count - (previous == null ? 0L : previous);
+        if (delta == 0) {
+            return;
+        }
+        reportedStacks.put(entry, count);
+        startLine(MethodRegistry.get(entry.getMethodId())).append(" | ").append(entry.getEvent())
+                .append(" | STACK | stack=").append(entry.getId())
+                .append(" count=").append(delta).append(" total=").append(count);
+    }
+
+    private void write() {
+        if (target == MetricsTarget.TRACE) {
+            logger.trace(block.toString());
+            return;
+        }
+        try {
+            if (fileWriter == null) {
+                fileWriter = Files.newBufferedWriter(Paths.get(logger.getTraceDir(), FILE_NAME), StandardCharsets.UTF_8,
+                        StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+            }
+            fileWriter.append(TimestampFormatter.format(System.currentTimeMillis())).append(' ')
+                    .append(block).append(LINE_SEPARATOR);
+            fileWriter.flush();
+        } catch (IOException e) {
+            logger.error("Error writing " + FILE_NAME + ": " + e.getMessage());
+        }
+    }
+
+    public static String formatNanos(long nanos) {
+        if (nanos < 1000L) {
+            return nanos + "ns";
+        } else if (nanos < 1000_000L) {
+            return String.format("%.1fus", nanos / 1000.0);
+        } else if (nanos < 1000_000_000L) {
+            return String.format("%.2fms", nanos / 1000_000.0);
+        }
+        return String.format("%.3fs", nanos / 1000_000_000.0);
+    }
+
+    public static String formatBytes(long bytes) {
+        if (bytes < 1024L) {
+            return bytes + "B";
+        } else if (bytes < 1024L * 1024L) {
+            return String.format("%.1fKB", bytes / 1024.0);
+        } else if (bytes < 1024L * 1024L * 1024L) {
+            return String.format("%.2fMB", bytes / (1024.0 * 1024.0));
+        }
+        return String.format("%.3fGB", bytes / (1024.0 * 1024.0 * 1024.0));
+    }
+
+    public void execute() {
+        logger.trace("Starting metrics reporter, writing to " + (target == MetricsTarget.FILE ? FILE_NAME : "the trace"));
+        thread = new Thread(this, "monarch-metrics-reporter");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Stops the reporter after writing a final report.
+     */
+    public synchronized void shutdown() {
+        if(thread != null) {
+            logger.trace("Shutting down metrics reporter");
+            thread.interrupt();
+            thread = null;
+            report();
+            if (fileWriter != null) {
+                try {
+                    fileWriter.close();
+                } catch (IOException e) {
+                    // nothing left to write
+                }
+                fileWriter = null;
+            }
+        }
+    }
+}
@@ -0,0 +1,16 @@
+package com.asm.mja.metrics;
+
+/**
+ * Where {@link MetricsReporter} writes its summary blocks.
+ *
+ * TRACE: Into the trace file, as one record per interval.
+ * FILE: Appended to metrics.log in the trace directory, keeping the trace file free of summaries.
+ *
+ * @author ashut
+ * @since 16-10-2026
+ */
+
+public enum MetricsTarget {
+    TRACE,
+    FILE
+}
@@ -0,0 +1,134 @@
+package com.asm.mja.metrics;
+
+/**
+ * The counters of a method since the agent started, with its latency histogram reduced to
+ * the few buckets exposed to Prometheus, see {@link PrometheusEndpoint}. Instances are
+ * mutable and meant to be reused.
+ *
+ * @author ashut
+ * @since 16-10-2026
+ */
+
+public class MetricsTotals {
+
+    // Upper bounds of the exposed latency buckets, from 1us to 10s; a last bucket takes longer durations
+    static final long[] LATENCY_BOUNDS_NANOS = {
+            1_000L, 10_000L, 100_000L, 1_000_000L, 10_000_000L, 100_000_000L, 1_000_000_000L, 10_000_000_000L
+    };
+    // The exposed bucket of each bucket of a LatencyHistogram, the first whose bound is not below its upper bound
+    private static final int[] BUCKET_MAP = bucketMap();
+
+    private final long[] latencyBuckets = new long[LATENCY_BOUNDS_NANOS.length + 1];
+    private long latencyNanos;
+    private long errors;
+    private long slowCalls;
+    private long cpuCalls;
+    private long cpuNanos;
+    private long allocCalls;
+    private long allocBytes;
+
+    private static int[] bucketMap() {
+        int[] bucketMap = new int[LatencyHistogram.BUCKET_COUNT];
+        int bound = 0;
+        for (int i = 0; i < bucketMap.length; i++) {
+            while (bound < LATENCY_BOUNDS_NANOS.length && LatencyHistogram.bucketUpperBound(i) > LATENCY_BOUNDS_NANOS[bound]) {
+                bound++;
+            }
+            bucketMap[i] = bound;
+        }
+        return bucketMap;
+    }
+
+    public void reset() {
+        for (int i = 0; i < latencyBuckets.length; i++) {
+            latencyBuckets[i] = 0;
+        }
+        latencyNanos = 0;
+        errors = 0;
+        slowCalls = 0;
+        cpuCalls = 0;
+        cpuNanos = 0;
+        allocCalls = 0;
+        allocBytes = 0;
+    }
+
+    void add(MetricsTotals other) {
+        for (int i = 0; i < latencyBuckets.length; i++) {
+            latencyBuckets[i] += other.latencyBuckets[i];
+        }
+        latencyNanos += other.latencyNanos;
+        add(other.errors, other.slowCalls, other.cpuCalls, other.cpuNanos, other.allocCalls, other.allocBytes);
+    }
+
+    void add(IntervalMetrics.Snapshot interval) {
+        if (interval.getLatency() != null) {
+            latencyNanos += interval.getLatency().addTo(BUCKET_MAP, latencyBuckets);
+        }
+        add(interval.getErrors(), interval.getSlowCalls(), interval.getCpuCalls(), interval.getCpuNanos(),
+                interval.getAllocCalls(), interval.getAllocBytes());
+    }
+
+    void add(LatencyHistogram latency) {
+        latencyNanos += latency.addTo(BUCKET_MAP, latencyBuckets);
+    }
+
+    void add(long errors, long slowCalls, long cpuCalls, long cpuNanos, long allocCalls, long allocBytes) {
+        this.errors += errors;
+        this.slowCalls += slowCalls;
+        this.cpuCalls += cpuCalls;
+        this.cpuNanos += cpuNanos;
+        this.allocCalls += allocCalls;
+        this.allocBytes += allocBytes;
+    }
+
+    /**
+     * @return The number of bounds of the exposed latency buckets, not counting the unbounded last bucket.
+     */
+    public static int getLatencyBoundCount() {
+        return LATENCY_BOUNDS_NANOS.length;
+    }
+
+    /**
+     * @param bucket The bucket, up to {@link #getLatencyBoundCount()} for the unbounded last bucket.
+     * @return The number of durations in the bucket, not including lower buckets.
+     */
+    public long getLatencyBucket(int bucket) {
+        return latencyBuckets[bucket];
+    }
+
+    public long getCalls() {
+        long calls = 0;
+        for (long count : latencyBuckets) {
+            calls += count;
+        }
+        return calls;
+    }
+
+    public long getLatencyNanos() {
+        return latencyNanos;
+    }
+
+    public long getErrors() {
+        return errors;
+    }
+
+    public long getSlowCalls() {
+        return slowCalls;
+    }
+
+    public long getCpuCalls() {
+        return cpuCalls;
+    }
+
+    public long getCpuNanos() {
+        return cpuNanos;
+    }
+
+    public long getAllocCalls() {
+        return allocCalls;
+    }
+
+    public long getAllocBytes() {
+        return allocBytes;
+    }
+}
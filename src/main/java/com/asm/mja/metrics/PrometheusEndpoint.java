@@ -0,0 +1,288 @@
+package com.asm.mja.metrics;
+
+import com.asm.mja.logging.TraceFileLogger;
+import com.asm.mja.monitor.JVMMemoryMonitor;
+import com.asm.mja.transformer.GlobalTransformer;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.ToLongFunction;
+
+/**
+ * Serves the agent's metrics at http://localhost:&lt;port&gt;/metrics in the Prometheus text
+ * exposition format: per method the counters and latency histogram buckets of its PROFILE,
+ * CPU and ALLOC rules and the events its sampled or rate limited rules suppressed, the last
+ * heap sample of {@link JVMMemoryMonitor}, and the agent's own overhead.
+ *
+ * Counters are totals since the agent started, including the interval {@link MetricsReporter}
+ * hasn't reported yet. Scrapes are served one at a time on the server's dispatcher thread,
+ * rendering into buffers that are reused from scrape to scrape.
+ *
+ * @author ashut
+ * @since 16-10-2026
+ */
+
+public class PrometheusEndpoint implements HttpHandler {
+
+    private static final String PATH = "/metrics";
+    private static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+    // The le labels of MetricsTotals.LATENCY_BOUNDS_NANOS in seconds
+    private static final String[] LATENCY_BOUNDS = {"0.000001", "0.00001", "0.0001", "0.001", "0.01", "0.1", "1", "10"};
+
+    private final TraceFileLogger logger;
+    private final GlobalTransformer transformer;
+    private final int port;
+    private HttpServer server;
+
+    private final StringBuilder out = new StringBuilder(16 * 1024);
+    private final CharsetEncoder charsetEncoder = StandardCharsets.UTF_8.newEncoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    private ByteBuffer bytes = ByteBuffer.allocate(16 * 1024);
+    // Totals per method, in the order of the methods of the current scrape
+    private final List<MetricsTotals> totals = new ArrayList<>();
+
+    public PrometheusEndpoint(TraceFileLogger logger, GlobalTransformer transformer, int port) {
+        this.logger = logger;
+        this.transformer = transformer;
+        this.port = port;
+    }
+
+    /**
+     * Starts serving on the loopback interface.
+     *
+     * @throws IOException If the port can't be bound.
+     */
+    public void execute() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        server.createContext(PATH, this);
+        // The dispatcher thread inherits the daemon flag of the thread starting the server
+        Thread starter = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                server.start();
+            }
+        }, "monarch-prometheus");
+        starter.setDaemon(true);
+        starter.start();
+        try {
+            starter.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        logger.trace("Serving Prometheus metrics at http://" + server.getAddress().getHostString() + ":" +
+                server.getAddress().getPort() + PATH);
+    }
+
+    public void shutdown() {
+        if (server != null) {
+            logger.trace("Shutting down Prometheus endpoint");
+            server.stop(0);
+            server = null;
+        }
+    }
+
+    @Override
+    public synchronized void handle(HttpExchange exchange) throws IOException {
+        try {
+            if (!"GET".equals(exchange.getRequestMethod())) {
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+            out.setLength(0);
+            render();
+            encode();
+            exchange.getResponseHeaders().set("Content-Type", CONTENT_TYPE);
+            exchange.sendResponseHeaders(200, bytes.remaining());
+            OutputStream body = exchange.getResponseBody();
+            body.write(bytes.array(), 0, bytes.remaining());
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void render() {
+        List<MethodMetrics> methods = MethodRegistry.getAll();
+        while (totals.size() < methods.size()) {
+            totals.add(new MetricsTotals());
+        }
+        for (int i = 0; i < methods.size(); i++) {
+            totals.get(i).reset();
+            methods.get(i).addTotalsTo(totals.get(i));
+        }
+        renderLatency(methods);
+        renderCounter(methods, "monarch_method_errors_total", "Invocations measured by PROFILE rules that ended with an exception.",
+                MetricsTotals::getCalls, MetricsTotals::getErrors, false);
+        renderCounter(methods, "monarch_method_slow_calls_total", "Invocations above the threshold of PROFILE rules.",
+                MetricsTotals::getCalls, MetricsTotals::getSlowCalls, false);
+        renderCounter(methods, "monarch_method_cpu_calls_total", "Invocations measured by CPU rules.",
+                MetricsTotals::getCpuCalls, MetricsTotals::getCpuCalls, false);
+        renderCounter(methods, "monarch_method_cpu_seconds_total", "CPU time of the invocations measured by CPU rules.",
+                MetricsTotals::getCpuCalls, MetricsTotals::getCpuNanos, true);
+        renderCounter(methods, "monarch_method_alloc_calls_total", "Invocations measured by ALLOC rules.",
+                MetricsTotals::getAllocCalls, MetricsTotals::getAllocCalls, false);
+        renderCounter(methods, "monarch_method_allocated_bytes_total", "Heap allocated by the invocations measured by ALLOC rules.",
+                MetricsTotals::getAllocCalls, MetricsTotals::getAllocBytes, false);
+        renderSuppressed(methods);
+        renderHeap();
+        renderOverhead();
+    }
+
+    private void renderLatency(List<MethodMetrics> methods) {
+        String name = "monarch_method_duration_seconds";
+        header(name, "histogram", "Duration of the invocations measured by PROFILE rules.");
+        for (int i = 0; i < methods.size(); i++) {
+            MetricsTotals methodTotals = totals.get(i);
+            long calls = methodTotals.getCalls();
+            if (calls == 0) {
+                continue;
+            }
+            long cumulative = 0;
+            for (int bucket = 0; bucket < MetricsTotals.getLatencyBoundCount(); bucket++) {
+                cumulative += methodTotals.getLatencyBucket(bucket);
+                sample(name, "_bucket", methods.get(i)).append(",le=\"").append(LATENCY_BOUNDS[bucket]).append("\"} ")
+                        .append(cumulative).append('\n');
+            }
+            sample(name, "_bucket", methods.get(i)).append(",le=\"+Inf\"} ").append(calls).append('\n');
+            sample(name, "_sum", methods.get(i)).append("} ").append(seconds(methodTotals.getLatencyNanos())).append('\n');
+            sample(name, "_count", methods.get(i)).append("} ").append(calls).append('\n');
+        }
+    }
+
+    /**
+     * Renders a per method counter, leaving out methods without invocations of the rule it belongs to.
+     *
+     * @param calls The invocations of the rule the counter belongs to.
+     * @param value The value of the counter.
+     * @param nanos true if the value is in nanoseconds, which is exposed in seconds.
+     */
+    private void renderCounter(List<MethodMetrics> methods, String name, String help, ToLongFunction<MetricsTotals> calls,
+                               ToLongFunction<MetricsTotals> value, boolean nanos) {
+        header(name, "counter", help);
+        for (int i = 0; i < methods.size(); i++) {
+            MetricsTotals methodTotals = totals.get(i);
+            if (calls.applyAsLong(methodTotals) == 0) {
+                continue;
+            }
+            sample(name, "", methods.get(i)).append("} ");
+            if (nanos) {
+                out.append(seconds(value.applyAsLong(methodTotals)));
+            } else {
+                out.append(value.applyAsLong(methodTotals));
+            }
+            out.append('\n');
+        }
+    }
+
+    private void renderSuppressed(List<MethodMetrics> methods) {
+        String name = "monarch_suppressed_events_total";
+        header(name, "counter", "Invocations sampled or rate limited rules didn't trace.");
+        for (MethodMetrics method : methods) {
+            for (EventThrottle throttle : method.getThrottles()) {
+                sample(name, "", method).append(",event=\"").append(throttle.getEvent())
+                        .append("\",action=\"").append(throttle.getAction()).append("\"} ")
+                        .append(throttle.getSuppressed()).append('\n');
+            }
+        }
+    }
+
+    private void renderHeap() {
+        JVMMemoryMonitor monitor = JVMMemoryMonitor.getInstance();
+        if (!monitor.isSampled()) {
+            return;
+        }
+        gauge("monarch_jvm_heap_used_bytes", "Used heap at the last sample of the JVM memory monitor.", monitor.getLastUsed());
+        gauge("monarch_jvm_heap_committed_bytes", "Committed heap at the last sample of the JVM memory monitor.", monitor.getLastCommitted());
+        if (monitor.getLastMax() >= 0) {
+            gauge("monarch_jvm_heap_max_bytes", "Maximum heap at the last sample of the JVM memory monitor.", monitor.getLastMax());
+        }
+    }
+
+    private void renderOverhead() {
+        counter("monarch_trace_records_total", "Records written to the trace file.", logger.getRecordsWritten());
+        counter("monarch_trace_bytes_total", "Bytes written to the trace file.", logger.getBytesWritten());
+        counter("monarch_trace_dropped_total", "Records the asynchronous trace writer dropped because its buffer was full.",
+                logger.getDroppedCount());
+        counter("monarch_transforms_total", "Classes instrumented, including re-transformations.", transformer.getTransformCount());
+        header("monarch_transform_seconds_total", "counter", "Time spent instrumenting classes.");
+        out.append("monarch_transform_seconds_total ").append(seconds(transformer.getTransformNanos())).append('\n');
+        gauge("monarch_instrumented_methods", "Methods instrumented by rules.", MethodRegistry.size());
+        gauge("monarch_interned_stacks", "Stacks interned by STACK rules.", StackTable.size());
+    }
+
+    private void header(String name, String type, String help) {
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+
+    private void counter(String name, String help, long value) {
+        header(name, "counter", help);
+        out.append(name).append(' ').append(value).append('\n');
+    }
+
+    private void gauge(String name, String help, long value) {
+        header(name, "gauge", help);
+        out.append(name).append(' ').append(value).append('\n');
+    }
+
+    /**
+     * Starts a sample line up to its method and descriptor labels, leaving the label set open for further labels.
+     */
+    private StringBuilder sample(String name, String suffix, MethodMetrics method) {
+        out.append(name).append(suffix).append("{method=\"");
+        appendLabelValue(method.getMethodName());
+        out.append("\",descriptor=\"");
+        appendLabelValue(method.getDescriptor());
+        return out.append('"');
+    }
+
+    private void appendLabelValue(String value) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '\\' || c == '"') {
+                out.append('\\').append(c);
+            } else if (c == '\n') {
+                out.append("\\n");
+            } else {
+                out.append(c);
+            }
+        }
+    }
+
+    private static double seconds(long nanos) {
+        return nanos / 1e9;
+    }
+
+    private void encode() {
+        CharBuffer chars = CharBuffer.wrap(out);
+        while (true) {
+            // Called through Buffer, as the covariant ByteBuffer overrides of newer JDKs don't exist on Java 8
+            ((Buffer) bytes).clear();
+            charsetEncoder.reset();
+            CoderResult result = charsetEncoder.encode(chars, bytes, true);
+            if (!result.isOverflow()) {
+                result = charsetEncoder.flush(bytes);
+            }
+            if (!result.isOverflow()) {
+                ((Buffer) bytes).flip();
+                return;
+            }
+            bytes = ByteBuffer.allocate(bytes.capacity() * 2);
+            ((Buffer) chars).rewind();
+        }
+    }
+}
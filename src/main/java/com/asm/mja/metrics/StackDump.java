@@ -0,0 +1,87 @@
+package com.asm.mja.metrics;
+
+import com.asm.mja.logging.AgentLogger;
+import com.asm.mja.logging.TraceFileLogger;
+import com.asm.mja.utils.DateUtils;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Dumps the stacks of the {@link StackTable} in folded stack format, which flame graph
+ * tools such as flamegraph.pl or speedscope read directly. A dump is written to
+ * stacks.folded in the trace directory at shutdown, and on demand through JMX.
+ *
+ * @author ashut
+ * @since 16-10-2026
+ */
+
+public class StackDump implements StackDumpMBean {
+    private static final String OBJECT_NAME = "com.asm.mja:type=StackDump";
+
+    private final TraceFileLogger logger;
+    private final Path dir;
+
+    /**
+     * @param logger The trace logger, which records the dumps.
+     * @param dir    The trace directory, which the dumps are written to.
+     */
+    public StackDump(TraceFileLogger logger, String dir) {
+        this.logger = logger;
+        this.dir = Paths.get(dir);
+    }
+
+    /**
+     * Registers the dump with the platform MBean server, so that it can be triggered with JMX clients such as jconsole.
+     */
+    public void register() {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, new ObjectName(OBJECT_NAME));
+        } catch (JMException e) {
+            AgentLogger.error("Error registering " + OBJECT_NAME + ", folded stacks can't be dumped on demand: " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public String dumpFoldedStacks() throws IOException {
+        Path file = dir.resolve("stacks-" + DateUtils.getFormattedTimestampForFileName() + ".folded");
+        write(file);
+        return file.toString();
+    }
+
+    @Override
+    public int getStackCount() {
+        return StackTable.size();
+    }
+
+    /**
+     * Writes stacks.folded, if any stacks were captured. Called before the trace file is closed.
+     */
+    public void dumpAtShutdown() {
+        if (StackTable.size() == 0) {
+            return;
+        }
+        try {
+            write(dir.resolve("stacks.folded"));
+        } catch (IOException e) {
+            logger.trace("Error writing folded stacks: " + e.getMessage());
+        }
+    }
+
+    private void write(Path file) throws IOException {
+        int lines;
+        try (Writer out = new BufferedWriter(new OutputStreamWriter(Files.newOutputStream(file), StandardCharsets.UTF_8))) {
+            lines = StackTable.writeFolded(out);
+        }
+        logger.trace("Wrote " + lines + " folded stacks to " + file);
+    }
+}
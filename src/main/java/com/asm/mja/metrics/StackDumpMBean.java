@@ -0,0 +1,23 @@
+package com.asm.mja.metrics;
+
+/**
+ * JMX interface of {@link StackDump}, registered as {@code com.asm.mja:type=StackDump}.
+ *
+ * @author ashut
+ * @since 16-10-2026
+ */
+
+public interface StackDumpMBean {
+
+    /**
+     * Writes the stacks captured so far to a new folded stack file in the trace directory.
+     *
+     * @return The path of the file written.
+     */
+    String dumpFoldedStacks() throws java.io.IOException;
+
+    /**
+     * @return The number of distinct stacks captured so far.
+     */
+    int getStackCount();
+}
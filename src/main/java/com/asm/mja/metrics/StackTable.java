@@ -0,0 +1,221 @@
+package com.asm.mja.metrics;
+
+import com.asm.mja.transformer.Event;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Interns the stack traces captured by STACK rules, so that a stack is written to the
+ * trace once, tagged with an id, and later occurrences are only counted. The counts are
+ * written by {@link MetricsReporter} and can be dumped in folded stack format, see
+ * {@link #writeFolded(Writer)}.
+ *
+ * Stacks are keyed by method, event and frames. Once the table holds its maximum number
+ * of stacks, further new stacks are not interned and are written in full every time.
+ *
+ * @author ashut
+ * @since 16-10-2026
+ */
+
+public class StackTable {
+
+    private static final Event[] EVENTS = Event.values();
+
+    private static final ConcurrentHashMap<StackKey, Entry> stacks = new ConcurrentHashMap<>();
+    private static final AtomicInteger nextId = new AtomicInteger(1);
+    private static volatile boolean enabled = true;
+    private static volatile int maxStacks = 10000;
+
+    private StackTable() {
+
+    }
+
+    /**
+     * @param dedup    false to write every captured stack in full, as without the table.
+     * @param capacity The maximum number of stacks interned.
+     */
+    public static void configure(boolean dedup, int capacity) {
+        enabled = dedup;
+        maxStacks = capacity;
+    }
+
+    /**
+     * Counts an occurrence of a stack, interning it on its first occurrence.
+     *
+     * @param methodId   The id of the instrumented method.
+     * @param event      The ordinal of the event the stack was captured at.
+     * @param stackTrace The captured stack trace.
+     * @param skip       The number of frames on top of the stack trace that don't belong to it.
+     * @return The entry of the stack, or null if stacks aren't deduplicated or the table is full.
+     */
+    public static Entry record(int methodId, int event, StackTraceElement[] stackTrace, int skip) {
+        if (!enabled) {
+            return null;
+        }
+        StackKey key = new StackKey(methodId, event, stackTrace, skip);
+        Entry entry = stacks.get(key);
+        if (entry == null) {
+            if (stacks.size() >= maxStacks) {
+                return null;
+            }
+            // The id is taken before publishing, so a thread losing the race leaves a gap in the ids
+            Entry created = new Entry(nextId.getAndIncrement(), methodId, EVENTS[event],
+                    Arrays.copyOfRange(stackTrace, skip, stackTrace.length));
+            entry = stacks.putIfAbsent(created.key, created);
+            if (entry == null) {
+                entry = created;
+            }
+        }
+        entry.count.increment();
+        return entry;
+    }
+
+    public static Collection<Entry> getAll() {
+        return stacks.values();
+    }
+
+    public static int size() {
+        return stacks.size();
+    }
+
+    /**
+     * Writes the interned stacks in folded format, one line per distinct call path from the
+     * outermost frame to the instrumented method, with frames separated by ';' and followed
+     * by the number of occurrences, e.g. {@code java.lang.Thread.run;com.acme.Worker.loop;com.acme.Order.submit 1234}.
+     * Paths that only differ in line numbers or event are merged.
+     *
+     * @param out The writer to write to.
+     * @return The number of lines written.
+     */
+    public static int writeFolded(Writer out) throws IOException {
+        Map<String, Long> folded = new TreeMap<>();
+        StringBuilder line = new StringBuilder(256);
+        for (Entry entry : stacks.values()) {
+            long count = entry.getCount();
+            if (count == 0) {
+                continue;
+            }
+            line.setLength(0);
+            StackTraceElement[] frames = entry.frames;
+            for (int i = frames.length - 1; i >= 0; i--) {
+                line.append(frames[i].getClassName()).append('.').append(frames[i].getMethodName());
+                if (i > 0) {
+                    line.append(';');
+                }
+            }
+            String path = line.toString();
+            Long previous = folded.get(path);
+            folded.put(path, previous == null ? count : previous + count);
+        }
+        for (Map.Entry<String, Long> path : folded.entrySet()) {
+            out.write(path.getKey());
+            out.write(' ');
+            out.write(Long.toString(path.getValue()));
+            out.write('\n');
+        }
+        return folded.size();
+    }
+
+    /**
+     * An interned stack.
+     */
+    public static final class Entry {
+        private final StackKey key;
+        private final int methodId;
+        private final Event event;
+        private final StackTraceElement[] frames;
+        private final LongAdder count = new LongAdder();
+        private final AtomicBoolean written = new AtomicBoolean();
+        private final int id;
+
+        Entry(int id, int methodId, Event event, StackTraceElement[] frames) {
+            this.id = id;
+            this.methodId = methodId;
+            this.event = event;
+            this.frames = frames;
+            this.key = new StackKey(methodId, event.ordinal(), frames, 0);
+        }
+
+        /**
+         * @return true for exactly one caller, which writes the stack to the trace.
+         */
+        public boolean claimWrite() {
+            return !written.get() && written.compareAndSet(false, true);
+        }
+
+        public int getId() {
+            return id;
+        }
+
+        public int getMethodId() {
+            return methodId;
+        }
+
+        public Event getEvent() {
+            return event;
+        }
+
+        public StackTraceElement[] getFrames() {
+            return frames;
+        }
+
+        public long getCount() {
+            return count.sum();
+        }
+    }
+
+    /**
+     * Compares frames in place, so that looking up a captured stack trace doesn't copy it.
+     */
+    private static final class StackKey {
+        private final int methodId;
+        private final int event;
+        private final StackTraceElement[] frames;
+        private final int offset;
+        private final int hash;
+
+        StackKey(int methodId, int event, StackTraceElement[] frames, int offset) {
+            this.methodId = methodId;
+            this.event = event;
+            this.frames = frames;
+            this.offset = offset;
+            int h = 31 * methodId + event;
+            for (int i = offset; i < frames.length; i++) {
+                h = 31 * h + frames[i].hashCode();
+            }
+            this.hash = h;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof StackKey)) return false;
+            StackKey that = (StackKey) o;
+            if (hash != that.hash || methodId != that.methodId || event != that.event ||
+                    frames.length - offset != that.frames.length - that.offset) {
+                return false;
+            }
+            for (int i = offset, j = that.offset; i < frames.length; i++, j++) {
+                if (!frames[i].equals(that.frames[j])) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+}
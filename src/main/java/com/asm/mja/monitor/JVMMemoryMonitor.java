@@ -4,6 +4,7 @@ import com.asm.mja.logging.TraceFileLogger;
 
 import java.lang.management.ManagementFactory;
 import java.lang.management.MemoryMXBean;
+import java.lang.management.MemoryUsage;
 
 /**
  * @author ashut
@@ -17,6 +18,12 @@ public class JVMMemoryMonitor implements Runnable {
 
     private static final double MEMORY_THRESHOLD_PERCENT = 0.9;
 
+    // The last sample in bytes, for the Prometheus endpoint; the max is -1 if the heap has none
+    private volatile long lastUsed;
+    private volatile long lastCommitted;
+    private volatile long lastMax;
+    private volatile boolean sampled;
+
     private static JVMMemoryMonitor instance = null;
 
     private JVMMemoryMonitor() {
@@ -39,9 +46,14 @@ public class JVMMemoryMonitor implements Runnable {
         while(true) {
             try {
                 MemoryMXBean memoryMXBean = ManagementFactory.getMemoryMXBean();
-                long used = memoryMXBean.getHeapMemoryUsage().getUsed() / (1024 * 1024);
-                long max = memoryMXBean.getHeapMemoryUsage().getMax() / (1024 * 1024);
-                long committed = memoryMXBean.getHeapMemoryUsage().getCommitted() / (1024 * 1024);
+                MemoryUsage heapUsage = memoryMXBean.getHeapMemoryUsage();
+                lastUsed = heapUsage.getUsed();
+                lastCommitted = heapUsage.getCommitted();
+                lastMax = heapUsage.getMax();
+                sampled = true;
+                long used = heapUsage.getUsed() / (1024 * 1024);
+                long max = heapUsage.getMax() / (1024 * 1024);
+                long committed = heapUsage.getCommitted() / (1024 * 1024);
                 String memoryString = "{USED: " + used + "MB | COMMITTED: " + committed + "MB | MAX: " + max + "MB}";
                 logger.trace(memoryString);
                 long threshold = (long) (max * MEMORY_THRESHOLD_PERCENT);
@@ -72,4 +84,23 @@ public class JVMMemoryMonitor implements Runnable {
     public boolean isDown() {
         return thread == null;
     }
+
+    /**
+     * @return true once the heap was sampled, i.e. the last sample's figures are set.
+     */
+    public boolean isSampled() {
+        return sampled;
+    }
+
+    public long getLastUsed() {
+        return lastUsed;
+    }
+
+    public long getLastCommitted() {
+        return lastCommitted;
+    }
+
+    public long getLastMax() {
+        return lastMax;
+    }
 }
@@ -0,0 +1,90 @@
+package com.asm.mja.rule;
+
+/**
+ * A compiled glob where '*' matches any run of characters and '?' matches a single character.
+ * Patterns without wildcards match by plain string comparison.
+ *
+ * @author ashut
+ * @since 16-10-2026
+ */
+
+public final class GlobPattern {
+
+    private final String pattern;
+    private final boolean literal;
+
+    private GlobPattern(String pattern) {
+        this.pattern = pattern;
+        this.literal = !hasWildcard(pattern);
+    }
+
+    public static GlobPattern compile(String pattern) {
+        return new GlobPattern(pattern);
+    }
+
+    public static boolean hasWildcard(String pattern) {
+        return pattern.indexOf('*') >= 0 || pattern.indexOf('?') >= 0;
+    }
+
+    public boolean isLiteral() {
+        return literal;
+    }
+
+    public String getPattern() {
+        return pattern;
+    }
+
+    public boolean matches(String text) {
+        return matches(text, 0, text.length());
+    }
+
+    /**
+     * Matches a region of the given text, so that callers can match parts of a name without copying them.
+     *
+     * @param text  The text.
+     * @param start The start of the region, inclusive.
+     * @param end   The end of the region, exclusive.
+     * @return true if the whole region matches the pattern.
+     */
+    public boolean matches(CharSequence text, int start, int end) {
+        if (literal) {
+            if (end - start != pattern.length()) {
+                return false;
+            }
+            for (int i = 0; i < pattern.length(); i++) {
+                if (text.charAt(start + i) != pattern.charAt(i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        // Greedy matching which only backtracks to the last '*', linear for the usual patterns
+        int p = 0;
+        int t = start;
+        int starP = -1;
+        int starT = -1;
+        while (t < end) {
+            if (p < pattern.length() && (pattern.charAt(p) == '?' || pattern.charAt(p) == text.charAt(t))) {
+                p++;
+                t++;
+            } else if (p < pattern.length() && pattern.charAt(p) == '*') {
+                starP = p++;
+                starT = t;
+            } else if (starP >= 0) {
+                p = starP + 1;
+                t = ++starT;
+            } else {
+                return false;
+            }
+        }
+        while (p < pattern.length() && pattern.charAt(p) == '*') {
+            p++;
+        }
+        return p == pattern.length();
+    }
+
+    @Override
+    public String toString() {
+        return pattern;
+    }
+}
@@ -3,6 +3,8 @@ package com.asm.mja.rule;
 import com.asm.mja.transformer.Action;
 import com.asm.mja.transformer.Event;
 
+import java.util.Objects;
+
 /**
  * @author ashut
  * @since 20-04-2024
@@ -16,6 +18,10 @@ public class Rule {
 
     private String customCode;
     private int lineNumber;
+    private RuleOptions options = RuleOptions.NONE;
+
+    // Compiled from methodName on first use
+    private GlobPattern methodPattern;
 
     public Rule(String className, String methodName, Event event, Action action, int lineNumber) {
         this(className, methodName, event, action, null, lineNumber);
@@ -44,6 +50,21 @@ public class Rule {
 
     public void setMethodName(String methodName) {
         this.methodName = methodName;
+        this.methodPattern = null;
+    }
+
+    /**
+     * Returns the method name of the rule as a pattern, which may contain '*' and '?' wildcards.
+     *
+     * @return The compiled method name pattern.
+     */
+    public GlobPattern getMethodPattern() {
+        GlobPattern pattern = methodPattern;
+        if (pattern == null) {
+            pattern = GlobPattern.compile(methodName);
+            methodPattern = pattern;
+        }
+        return pattern;
     }
 
     public Event getEvent() {
@@ -70,6 +91,14 @@ public class Rule {
         this.lineNumber = lineNumber;
     }
 
+    public RuleOptions getOptions() {
+        return options;
+    }
+
+    public void setOptions(RuleOptions options) {
+        this.options = options;
+    }
+
     public String getCustomCode() {
         return customCode;
     }
@@ -77,4 +106,23 @@ public class Rule {
     public void setCustomCode(String customCode) {
         this.customCode = customCode;
     }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        Rule rule = (Rule) o;
+        return lineNumber == rule.lineNumber &&
+                Objects.equals(className, rule.className) &&
+                Objects.equals(methodName, rule.methodName) &&
+                event == rule.event &&
+                action == rule.action &&
+                Objects.equals(customCode, rule.customCode) &&
+                Objects.equals(options, rule.options);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(className, methodName, event, action, customCode, lineNumber, options);
+    }
 }
@@ -0,0 +1,251 @@
+package com.asm.mja.rule;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An immutable index of rules keyed by the internal (slash separated) class name,
+ * which is the form the JVM hands to a ClassFileTransformer.
+ *
+ * Rules with an exact class name are kept in a hash map. Rules with a class pattern
+ * are compiled into a trie with one level per package segment, where a segment is
+ * either a literal, a glob ('*', '?') within the segment, or '**' for any number of
+ * segments. Matching a class walks its name once, so the cost depends on the length
+ * of the name and not on the number of rules.
+ *
+ * Lookups for classes without rules return a shared empty list, so the common
+ * "no rule for this class" case neither scans the rules nor allocates a result.
+ *
+ * @author ashut
+ * @since 16-10-2026
+ */
+
+public final class RuleIndex {
+
+    public static final RuleIndex EMPTY = new RuleIndex(Collections.<String, List<Rule>>emptyMap(), null,
+            Collections.<Rule, Integer>emptyMap());
+
+    private static final String ANY_SEGMENTS = "**";
+    // Patterns never match the agent itself, instrumenting it would recurse into the advice
+    private static final String AGENT_PACKAGE = "com/asm/mja/";
+
+    private final Map<String, List<Rule>> rulesByClass;
+    private final Node patternRoot;
+    // Definition order of the rules, to merge exact and pattern matches back into that order
+    private final Map<Rule, Integer> ruleOrder;
+
+    private RuleIndex(Map<String, List<Rule>> rulesByClass, Node patternRoot, Map<Rule, Integer> ruleOrder) {
+        this.rulesByClass = rulesByClass;
+        this.patternRoot = patternRoot;
+        this.ruleOrder = ruleOrder;
+    }
+
+    /**
+     * Builds an index from the given rules, preserving the order in which the rules of a class were defined.
+     *
+     * @param rules The rules to index.
+     * @return The rule index.
+     */
+    public static RuleIndex build(List<Rule> rules) {
+        if (rules == null || rules.isEmpty()) {
+            return EMPTY;
+        }
+        Map<String, List<Rule>> grouped = new HashMap<>();
+        Map<Rule, Integer> ruleOrder = new IdentityHashMap<>();
+        Node patternRoot = null;
+        for (Rule rule : rules) {
+            ruleOrder.put(rule, ruleOrder.size());
+            String className = rule.getClassName();
+            if (GlobPattern.hasWildcard(className)) {
+                if (patternRoot == null) {
+                    patternRoot = new Node(false);
+                }
+                patternRoot.insert(className.split("\\."), 0, rule);
+            } else {
+                grouped.computeIfAbsent(className.replace('.', '/'), k -> new ArrayList<>()).add(rule);
+            }
+        }
+        Map<String, List<Rule>> rulesByClass = new HashMap<>(grouped.size() * 2);
+        for (Map.Entry<String, List<Rule>> entry : grouped.entrySet()) {
+            rulesByClass.put(entry.getKey(), Collections.unmodifiableList(entry.getValue()));
+        }
+        return new RuleIndex(rulesByClass, patternRoot, ruleOrder);
+    }
+
+    /**
+     * Returns the rules for a class.
+     *
+     * @param internalClassName The class name in internal form, e.g. com/acme/Order, or null for
+     *                          hidden classes and lambda proxies, which no rule applies to.
+     * @return The rules for the class in definition order, or an empty list if there are none.
+     */
+    public List<Rule> getRules(String internalClassName) {
+        if (internalClassName == null) {
+            return Collections.emptyList();
+        }
+        List<Rule> exact = rulesByClass.get(internalClassName);
+        if (patternRoot == null || internalClassName.startsWith(AGENT_PACKAGE)) {
+            return exact == null ? Collections.<Rule>emptyList() : exact;
+        }
+        List<Rule> matched = matchPatterns(internalClassName);
+        if (matched.isEmpty()) {
+            return exact == null ? Collections.<Rule>emptyList() : exact;
+        }
+        if (exact != null) {
+            matched.addAll(exact);
+        }
+        if (matched.size() > 1) {
+            matched.sort((a, b) -> Integer.compare(ruleOrder.get(a), ruleOrder.get(b)));
+        }
+        return Collections.unmodifiableList(matched);
+    }
+
+    public boolean isEmpty() {
+        return rulesByClass.isEmpty() && patternRoot == null;
+    }
+
+    /**
+     * Selects the rules that apply to a method.
+     *
+     * @param rules      The rules of the method's class.
+     * @param methodName The name of the method.
+     * @param synthetic  Whether the method is synthetic or a bridge; those are only matched by exact method names.
+     * @return The matching rules in definition order, or an empty list.
+     */
+    public static List<Rule> rulesForMethod(List<Rule> rules, String methodName, boolean synthetic) {
+        List<Rule> methodRules = null;
+        for (Rule rule : rules) {
+            GlobPattern methodPattern = rule.getMethodPattern();
+            if ((synthetic && !methodPattern.isLiteral()) || !methodPattern.matches(methodName)) {
+                continue;
+            }
+            if (methodRules == null) {
+                methodRules = new ArrayList<>();
+            }
+            methodRules.add(rule);
+        }
+        return methodRules == null ? Collections.<Rule>emptyList() : methodRules;
+    }
+
+    private List<Rule> matchPatterns(String internalClassName) {
+        List<Node> active = new ArrayList<>(4);
+        patternRoot.addWithClosure(active);
+        List<Node> next = new ArrayList<>(4);
+        int start = 0;
+        int length = internalClassName.length();
+        while (start <= length && !active.isEmpty()) {
+            int end = internalClassName.indexOf('/', start);
+            if (end < 0) {
+                end = length;
+            }
+            next.clear();
+            for (Node node : active) {
+                node.step(internalClassName, start, end, next);
+            }
+            List<Node> swap = active;
+            active = next;
+            next = swap;
+            start = end + 1;
+        }
+        List<Rule> matched = new ArrayList<>();
+        for (Node node : active) {
+            matched.addAll(node.rules);
+        }
+        return matched;
+    }
+
+    /**
+     * A trie node. The path from the root spells the package segments of a class pattern.
+     */
+    private static final class Node {
+        private final boolean anySegments;
+        private final Map<String, Node> literalChildren = new HashMap<>();
+        private final List<GlobPattern> globSegments = new ArrayList<>();
+        private final List<Node> globChildren = new ArrayList<>();
+        private Node anySegmentsChild;
+        private final List<Rule> rules = new ArrayList<>();
+
+        Node(boolean anySegments) {
+            this.anySegments = anySegments;
+        }
+
+        void insert(String[] segments, int index, Rule rule) {
+            if (index == segments.length) {
+                rules.add(rule);
+                return;
+            }
+            String segment = segments[index];
+            Node child;
+            if (segment.equals(ANY_SEGMENTS)) {
+                if (anySegmentsChild == null) {
+                    anySegmentsChild = new Node(true);
+                }
+                child = anySegmentsChild;
+            } else if (GlobPattern.hasWildcard(segment)) {
+                int position = indexOfGlob(segment);
+                if (position < 0) {
+                    globSegments.add(GlobPattern.compile(segment));
+                    globChildren.add(new Node(false));
+                    position = globChildren.size() - 1;
+                }
+                child = globChildren.get(position);
+            } else {
+                child = literalChildren.computeIfAbsent(segment, k -> new Node(false));
+            }
+            child.insert(segments, index + 1, rule);
+        }
+
+        private int indexOfGlob(String segment) {
+            for (int i = 0; i < globSegments.size(); i++) {
+                if (globSegments.get(i).getPattern().equals(segment)) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        /**
+         * Adds the nodes reachable by consuming the segment [start, end) of the name.
+         */
+        void step(String name, int start, int end, List<Node> next) {
+            if (anySegments) {
+                // '**' also consumes this segment and stays active
+                addUnique(next, this);
+            }
+            if (!literalChildren.isEmpty()) {
+                Node child = literalChildren.get(name.substring(start, end));
+                if (child != null) {
+                    child.addWithClosure(next);
+                }
+            }
+            for (int i = 0; i < globSegments.size(); i++) {
+                if (globSegments.get(i).matches(name, start, end)) {
+                    globChildren.get(i).addWithClosure(next);
+                }
+            }
+        }
+
+        /**
+         * Adds this node and, as '**' also matches no segment at all, the '**' child that follows it.
+         */
+        void addWithClosure(List<Node> nodes) {
+            addUnique(nodes, this);
+            if (anySegmentsChild != null) {
+                anySegmentsChild.addWithClosure(nodes);
+            }
+        }
+
+        private static void addUnique(List<Node> nodes, Node node) {
+            for (Node existing : nodes) {
+                if (existing == node) {
+                    return;
+                }
+            }
+            nodes.add(node);
+        }
+    }
+}
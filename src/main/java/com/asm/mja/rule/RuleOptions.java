@@ -0,0 +1,286 @@
+package com.asm.mja.rule;
+
+import com.asm.mja.transformer.Action;
+import com.asm.mja.transformer.Event;
+
+import java.util.Objects;
+
+/**
+ * Options of a rule, given in square brackets after its action or PROFILE event, e.g.
+ * {@code ENTRY::STACK[sample=0.01]}, {@code EXIT::RET[rate=100/s]} or {@code PROFILE[threshold=25ms,args]}.
+ *
+ * Actions take:
+ * <ul>
+ *     <li>sample: Probability in (0, 1] that an invocation is traced.</li>
+ *     <li>rate: Maximum number of traced invocations per second (/s) or minute (/m).</li>
+ * </ul>
+ * Both may be combined, in which case sampled invocations are also rate limited.
+ * STACK actions also take depth, the maximum number of frames captured, e.g. {@code STACK[depth=20]}.
+ *
+ * PROFILE takes:
+ * <ul>
+ *     <li>threshold: Duration (ns, us, ms or s) above which an invocation is traced as a slow call.</li>
+ *     <li>args, stack: Flags to add the arguments or the stack trace to slow call records.</li>
+ *     <li>depth: The maximum number of frames of the stack trace.</li>
+ * </ul>
+ *
+ * @author ashut
+ * @since 16-10-2026
+ */
+
+public class RuleOptions {
+
+    public static final RuleOptions NONE = new RuleOptions(1.0f, 0f, 0L, false, false, 0, "");
+
+    private final float sampleRate;
+    private final float ratePerSecond;
+    private final long thresholdNanos;
+    private final boolean captureArgs;
+    private final boolean captureStack;
+    private final int stackDepth;
+    private final String text;
+
+    private RuleOptions(float sampleRate, float ratePerSecond, long thresholdNanos, boolean captureArgs, boolean captureStack,
+                        int stackDepth, String text) {
+        this.sampleRate = sampleRate;
+        this.ratePerSecond = ratePerSecond;
+        this.thresholdNanos = thresholdNanos;
+        this.captureArgs = captureArgs;
+        this.captureStack = captureStack;
+        this.stackDepth = stackDepth;
+        this.text = text;
+    }
+
+    /**
+     * Parses the comma separated options between the square brackets.
+     *
+     * @param options The options, e.g. "sample=0.01,rate=100/s".
+     * @return The parsed options.
+     * @throws IllegalArgumentException If an option is unknown or has an invalid value.
+     */
+    public static RuleOptions parse(String options) {
+        float sampleRate = 1.0f;
+        float ratePerSecond = 0f;
+        long thresholdNanos = 0L;
+        boolean captureArgs = false;
+        boolean captureStack = false;
+        int stackDepth = 0;
+        for (String option : options.split(",")) {
+            String[] keyValue = option.trim().split("=", 2);
+            String key = keyValue[0].trim();
+            if (keyValue.length == 1 && key.equals("args")) {
+                captureArgs = true;
+                continue;
+            } else if (keyValue.length == 1 && key.equals("stack")) {
+                captureStack = true;
+                continue;
+            } else if (keyValue.length != 2) {
+                throw new IllegalArgumentException("Rule option '" + option.trim() + "' must be of the form key=value");
+            }
+            String value = keyValue[1].trim();
+            switch (key) {
+                case "sample":
+                    sampleRate = parseSampleRate(value);
+                    break;
+                case "rate":
+                    ratePerSecond = parseRate(value);
+                    break;
+                case "threshold":
+                    thresholdNanos = parseDuration(value);
+                    break;
+                case "depth":
+                    stackDepth = parseDepth(value);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown rule option '" + key + "'");
+            }
+        }
+        if ((captureArgs || captureStack) && thresholdNanos == 0L) {
+            throw new IllegalArgumentException("Rule options args and stack require a threshold");
+        }
+        return new RuleOptions(sampleRate, ratePerSecond, thresholdNanos, captureArgs, captureStack, stackDepth, "[" + options.trim() + "]");
+    }
+
+    /**
+     * Parses options as returned by {@link #toString()}, e.g. to restore them from a cache.
+     *
+     * @param text The options including the brackets, or an empty string for none.
+     * @return The parsed options.
+     * @throws IllegalArgumentException If the options are malformed.
+     */
+    public static RuleOptions fromString(String text) {
+        if (text.isEmpty()) {
+            return NONE;
+        }
+        if (text.length() < 2 || text.charAt(0) != '[' || text.charAt(text.length() - 1) != ']') {
+            throw new IllegalArgumentException("Rule options '" + text + "' must be enclosed in square brackets");
+        }
+        return parse(text.substring(1, text.length() - 1));
+    }
+
+    /**
+     * Checks that the options apply to rules of an event and action.
+     *
+     * @param event  The event of the rule.
+     * @param action The action of the rule, null for PROFILE, CPU and ALLOC.
+     * @throws IllegalArgumentException If the options don't apply to the event or action.
+     */
+    public void checkApplicableTo(Event event, Action action) {
+        if ((event == Event.CPU || event == Event.ALLOC) && !text.isEmpty()) {
+            throw new IllegalArgumentException("Rule options are not supported by " + event + " " + text);
+        } else if (event == Event.PROFILE && isThrottled()) {
+            throw new IllegalArgumentException("Rule options sample and rate are not supported by PROFILE " + text);
+        } else if (event != Event.PROFILE && thresholdNanos > 0L) {
+            throw new IllegalArgumentException("Rule options threshold, args and stack are only supported by PROFILE " + text);
+        } else if (event == Event.PROFILE && stackDepth > 0 && !captureStack) {
+            throw new IllegalArgumentException("Rule option depth requires stack for PROFILE " + text);
+        } else if (event != Event.PROFILE && stackDepth > 0 && action != Action.STACK) {
+            throw new IllegalArgumentException("Rule option depth is only supported by STACK and PROFILE " + text);
+        }
+    }
+
+    private static float parseSampleRate(String value) {
+        float sampleRate = Float.parseFloat(value);
+        if (!(sampleRate > 0f && sampleRate <= 1f)) {
+            throw new IllegalArgumentException("Rule option sample=" + value + " must be in (0, 1]");
+        }
+        return sampleRate;
+    }
+
+    private static int parseDepth(String value) {
+        int depth = Integer.parseInt(value);
+        if (depth < 1) {
+            throw new IllegalArgumentException("Rule option depth=" + value + " must be at least 1");
+        }
+        return depth;
+    }
+
+    private static float parseRate(String value) {
+        int slash = value.indexOf('/');
+        if (slash < 0) {
+            throw new IllegalArgumentException("Rule option rate=" + value + " must have a unit, e.g. rate=100/s");
+        }
+        float rate = Float.parseFloat(value.substring(0, slash).trim());
+        String unit = value.substring(slash + 1).trim();
+        if (!(rate > 0f)) {
+            throw new IllegalArgumentException("Rule option rate=" + value + " must be positive");
+        }
+        if (unit.equals("s")) {
+            return rate;
+        } else if (unit.equals("m")) {
+            return rate / 60f;
+        }
+        throw new IllegalArgumentException("Rule option rate=" + value + " must be per second (/s) or per minute (/m)");
+    }
+
+    private static long parseDuration(String value) {
+        int unitStart = 0;
+        while (unitStart < value.length() && (Character.isDigit(value.charAt(unitStart)) || value.charAt(unitStart) == '.')) {
+            unitStart++;
+        }
+        if (unitStart == 0) {
+            throw new IllegalArgumentException("Rule option threshold=" + value + " must be a duration, e.g. threshold=25ms");
+        }
+        double amount = Double.parseDouble(value.substring(0, unitStart));
+        double nanos;
+        switch (value.substring(unitStart).trim()) {
+            case "ns":
+                nanos = amount;
+                break;
+            case "us":
+                nanos = amount * 1_000d;
+                break;
+            case "ms":
+                nanos = amount * 1_000_000d;
+                break;
+            case "s":
+                nanos = amount * 1_000_000_000d;
+                break;
+            default:
+                throw new IllegalArgumentException("Rule option threshold=" + value + " must have a unit of ns, us, ms or s");
+        }
+        if (nanos < 1d) {
+            throw new IllegalArgumentException("Rule option threshold=" + value + " must be positive");
+        }
+        return (long) nanos;
+    }
+
+    public float getSampleRate() {
+        return sampleRate;
+    }
+
+    /**
+     * @return The maximum number of traced invocations per second, 0 if unlimited.
+     */
+    public float getRatePerSecond() {
+        return ratePerSecond;
+    }
+
+    /**
+     * @return The PROFILE slow call threshold in nanoseconds, 0 if every invocation is only recorded.
+     */
+    public long getThresholdNanos() {
+        return thresholdNanos;
+    }
+
+    public boolean isCaptureArgs() {
+        return captureArgs;
+    }
+
+    public boolean isCaptureStack() {
+        return captureStack;
+    }
+
+    /**
+     * @return The maximum number of frames of captured stack traces, 0 if unlimited.
+     */
+    public int getStackDepth() {
+        return stackDepth;
+    }
+
+    /**
+     * @return true if not every invocation is traced.
+     */
+    public boolean isThrottled() {
+        return sampleRate < 1f || ratePerSecond > 0f;
+    }
+
+    /**
+     * Packs sample rate and rate limit into a single constant that can be baked into instrumented bytecode,
+     * see {@link com.asm.mja.metrics.EventThrottle}.
+     *
+     * @return The packed throttle, 0 if the rule isn't throttled.
+     */
+    public long getThrottleSpec() {
+        if (!isThrottled()) {
+            return 0L;
+        }
+        return ((long) Float.floatToIntBits(sampleRate) << 32) | (Float.floatToIntBits(ratePerSecond) & 0xffffffffL);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        RuleOptions that = (RuleOptions) o;
+        return Float.compare(that.sampleRate, sampleRate) == 0 &&
+                Float.compare(that.ratePerSecond, ratePerSecond) == 0 &&
+                thresholdNanos == that.thresholdNanos &&
+                captureArgs == that.captureArgs &&
+                captureStack == that.captureStack &&
+                stackDepth == that.stackDepth;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(sampleRate, ratePerSecond, thresholdNanos, captureArgs, captureStack, stackDepth);
+    }
+
+    /**
+     * @return The options as written in the rule, including the brackets, or an empty string if there are none.
+     */
+    @Override
+    public String toString() {
+        return text;
+    }
+}
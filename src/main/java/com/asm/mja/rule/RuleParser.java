@@ -33,13 +33,19 @@ public class RuleParser {
                         if (matcher.find()) {
                             lineNumber = Integer.parseInt(matcher.group(1));
                         }
-                    } else if(eventString.startsWith("PROFILE")) {
-                        event = Event.PROFILE;
-                        return new Rule(className, methodName, event, null, lineNumber);
+                    } else if(eventString.startsWith("PROFILE") || eventString.startsWith("CPU") || eventString.startsWith("ALLOC")) {
+                        int optionsStart = eventString.indexOf('[');
+                        event = Event.valueOf(optionsStart > 0 ? eventString.substring(0, optionsStart) : eventString);
+                        Rule measurementRule = new Rule(className, methodName, event, null, lineNumber);
+                        measurementRule.setOptions(parseOptions(eventString, event, null));
+                        return measurementRule;
                     } else {
                         event = Event.valueOf(eventString);
                     }
-                    Action action = Action.valueOf(parts[3]);
+                    String actionString = parts[3];
+                    int optionsStart = actionString.indexOf('[');
+                    Action action = Action.valueOf(optionsStart > 0 ? actionString.substring(0, optionsStart) : actionString);
+                    RuleOptions options = parseOptions(actionString, event, action);
 
                     String customCode = null;
                     if (action == Action.ADD && parts.length > 4) {
@@ -49,9 +55,24 @@ public class RuleParser {
                         }
                     }
 
-                    return new Rule(className, methodName, event, action, customCode, lineNumber);
+                    Rule parsedRule = new Rule(className, methodName, event, action, customCode, lineNumber);
+                    parsedRule.setOptions(options);
+                    return parsedRule;
                 })
                 .collect(Collectors.toList());
     }
 
+    /**
+     * Parses the options in square brackets at the end of an action or a PROFILE, CPU or ALLOC event, e.g. STACK[sample=0.01].
+     */
+    private static RuleOptions parseOptions(String token, Event event, Action action) {
+        int optionsStart = token.indexOf('[');
+        if (optionsStart <= 0 || !token.endsWith("]")) {
+            return RuleOptions.NONE;
+        }
+        RuleOptions options = RuleOptions.parse(token.substring(optionsStart + 1, token.length() - 1));
+        options.checkApplicableTo(event, action);
+        return options;
+    }
+
 }
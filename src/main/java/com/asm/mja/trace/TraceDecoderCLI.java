@@ -0,0 +1,200 @@
+package com.asm.mja.trace;
+
+import com.asm.mja.logging.BinaryTraceReader;
+import com.asm.mja.rule.GlobPattern;
+import com.asm.mja.utils.TimestampFormatter;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import org.apache.commons.cli.*;
+
+import java.io.BufferedWriter;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * A command-line interface (CLI) tool for decoding binary trace files (agent.mtrace), or
+ * binary trace segments (agent-00001.mtrace, ...), which may be gzip compressed.
+ *
+ * Files are streamed record by record, so they can be larger than the heap. Events are
+ * written to standard output either in the agent.trace text format or as JSON, one object
+ * per line, optionally filtered by method, thread and time range.
+ *
+ * @author ashut
+ * @since 16-10-2026
+ */
+public class TraceDecoderCLI {
+    private static final String[] TIME_PATTERNS = {"yyyy-MM-dd HH:mm:ss.SSS", "yyyy-MM-dd HH:mm:ss"};
+
+    public static void main(String[] args) {
+        Options options = new Options();
+        options.addOption("file", true, "Path to the binary trace file (agent.mtrace); further files, e.g. segments, may follow the options");
+        options.addOption("format", true, "Output format, text (default) or json");
+        options.addOption("method", true, "Only events of methods matching this pattern, e.g. com.acme.*Dao.find*");
+        options.addOption("thread", true, "Only events of threads whose name matches this pattern, e.g. http-nio-*");
+        options.addOption("from", true, "Only events at or after this time, as yyyy-MM-dd HH:mm:ss[.SSS] or epoch millis");
+        options.addOption("to", true, "Only events at or before this time, as yyyy-MM-dd HH:mm:ss[.SSS] or epoch millis");
+
+        CommandLineParser parser = new DefaultParser();
+        try {
+            CommandLine cmd = parser.parse(options, args);
+            List<String> files = new ArrayList<>();
+            if (cmd.hasOption("file")) {
+                files.addAll(Arrays.asList(cmd.getOptionValues("file")));
+            }
+            files.addAll(cmd.getArgList());
+            if (files.isEmpty()) {
+                throw new org.apache.commons.cli.ParseException("Missing required option: file");
+            }
+            String format = cmd.getOptionValue("format", "text");
+            if (!format.equals("text") && !format.equals("json")) {
+                throw new org.apache.commons.cli.ParseException("Unknown format " + format + ", expected text or json");
+            }
+            String method = cmd.getOptionValue("method");
+            String thread = cmd.getOptionValue("thread");
+            long from = cmd.hasOption("from") ? parseTime(cmd.getOptionValue("from")) : Long.MIN_VALUE;
+            long to = cmd.hasOption("to") ? parseTime(cmd.getOptionValue("to")) : Long.MAX_VALUE;
+            decode(files, format.equals("json"),
+                    method == null ? null : GlobPattern.compile(method),
+                    thread == null ? null : GlobPattern.compile(thread), from, to);
+        } catch (org.apache.commons.cli.ParseException e) {
+            System.err.println("Error parsing command-line arguments: " + e.getMessage());
+            HelpFormatter formatter = new HelpFormatter();
+            formatter.printHelp("java -cp monarch-java-agent.jar " + TraceDecoderCLI.class.getName(), options);
+            System.exit(2);
+        } catch (Exception e) {
+            System.err.println("Error while decoding trace file: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    private static long parseTime(String value) throws org.apache.commons.cli.ParseException {
+        String time = value.trim();
+        if (!time.isEmpty() && time.chars().allMatch(Character::isDigit)) {
+            return Long.parseLong(time);
+        }
+        for (String pattern : TIME_PATTERNS) {
+            SimpleDateFormat dateFormat = new SimpleDateFormat(pattern);
+            dateFormat.setLenient(false);
+            try {
+                if (time.length() == pattern.length()) {
+                    return dateFormat.parse(time).getTime();
+                }
+            } catch (ParseException e) {
+                // try the next pattern
+            }
+        }
+        throw new org.apache.commons.cli.ParseException("Invalid time " + value + ", expected yyyy-MM-dd HH:mm:ss[.SSS] or epoch millis");
+    }
+
+    /**
+     * Streams the events of binary trace files to standard output, one file after the other.
+     *
+     * @param files  The binary trace files, gzip compressed if their name ends with .gz.
+     * @param json   true to write JSON lines, false to write agent.trace lines.
+     * @param method The method pattern, or null for all events.
+     * @param thread The thread name pattern, or null for all threads.
+     * @param from   The earliest timestamp in epoch millis.
+     * @param to     The latest timestamp in epoch millis.
+     * @throws IOException If the file can't be read or is malformed.
+     */
+    private static void decode(List<String> files, boolean json, GlobPattern method, GlobPattern thread, long from, long to) throws IOException {
+        Writer out = new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8), 64 * 1024);
+        JsonGenerator generator = null;
+        if (json) {
+            generator = new JsonFactory().setRootValueSeparator(null).createGenerator(out);
+            generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        }
+        StringBuilder line = new StringBuilder(256);
+        try {
+            for (String file : files) {
+                decode(file, out, generator, line, method, thread, from, to);
+            }
+        } finally {
+            if (generator != null) {
+                generator.close();
+            }
+            out.flush();
+        }
+    }
+
+    private static void decode(String file, Writer out, JsonGenerator generator, StringBuilder line,
+                               GlobPattern method, GlobPattern thread, long from, long to) throws IOException {
+        InputStream in = new FileInputStream(file);
+        if (file.endsWith(".gz")) {
+            in = new GZIPInputStream(in, 64 * 1024);
+        }
+        try (BinaryTraceReader reader = new BinaryTraceReader(in)) {
+            while (reader.next()) {
+                if (reader.getTimestamp() < from || reader.getTimestamp() > to) {
+                    continue;
+                }
+                if (method != null && (reader.getMethod() == null || !method.matches(reader.getMethod()))) {
+                    continue;
+                }
+                if (thread != null && !thread.matches(reader.getThreadName())) {
+                    continue;
+                }
+                if (generator != null) {
+                    writeJson(generator, reader);
+                    generator.flush();
+                    out.write('\n');
+                } else {
+                    line.setLength(0);
+                    writeText(line, reader);
+                    out.append(line).append('\n');
+                }
+            }
+            if (reader.isTruncated()) {
+                System.err.println("Warning: " + file + " ends with an incomplete record, which was skipped");
+            }
+        } catch (IOException e) {
+            throw new IOException(file + ": " + e.getMessage(), e);
+        }
+    }
+
+    private static void writeText(StringBuilder line, BinaryTraceReader reader) throws IOException {
+        TimestampFormatter.appendTo(line, reader.getTimestamp()).append(' ');
+        line.append('[').append(reader.getLevel()).append("] ");
+        line.append('[').append(reader.getThreadName()).append("] ");
+        line.append(reader.getMessage());
+        List<String> stackTrace = reader.getStackTrace();
+        if (stackTrace != null) {
+            // The caller ends the record, so the last frame gets no newline of its own
+            for (String frame : stackTrace) {
+                line.append("\n\tat ").append(frame);
+            }
+        }
+    }
+
+    private static void writeJson(JsonGenerator generator, BinaryTraceReader reader) throws IOException {
+        generator.writeStartObject();
+        generator.writeNumberField("timestamp", reader.getTimestamp());
+        generator.writeStringField("time", TimestampFormatter.format(reader.getTimestamp()));
+        generator.writeStringField("level", reader.getLevel());
+        generator.writeNumberField("threadId", reader.getThreadId());
+        generator.writeStringField("thread", reader.getThreadName());
+        if (reader.getMethod() != null) {
+            generator.writeStringField("method", reader.getMethod());
+        }
+        generator.writeStringField("message", reader.getMessage());
+        List<String> stackTrace = reader.getStackTrace();
+        if (stackTrace != null) {
+            generator.writeArrayFieldStart("stackTrace");
+            for (String frame : stackTrace) {
+                generator.writeString(frame);
+            }
+            generator.writeEndArray();
+        }
+        generator.writeEndObject();
+    }
+}
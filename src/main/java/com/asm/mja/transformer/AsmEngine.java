@@ -0,0 +1,404 @@
+package com.asm.mja.transformer;
+
+import com.asm.mja.config.Config;
+import com.asm.mja.exception.TransformException;
+import com.asm.mja.logging.TraceFileLogger;
+import com.asm.mja.metrics.MethodRegistry;
+import com.asm.mja.rule.Rule;
+import com.asm.mja.rule.RuleIndex;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Handle;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+import org.objectweb.asm.commons.AdviceAdapter;
+import org.objectweb.asm.commons.Method;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Instruments classes with an ASM visitor which emits plain calls to the static
+ * {@link com.asm.mja.advice.MonarchAdvice} dispatcher, passing the method id from
+ * {@link MethodRegistry}, primitive values and the packed sampling/rate limit settings
+ * of the rule. Nothing is compiled at transform time.
+ *
+ * Custom code (ADD) rules need a source compiler, and slow call argument capture
+ * (PROFILE[threshold=..,args]) a branch, so classes with such rules are handed to
+ * the fallback engine.
+ *
+ * @author ashut
+ * @since 16-10-2026
+ */
+public class AsmEngine implements InstrumentationEngine {
+
+    private static final Type ADVICE = Type.getObjectType("com/asm/mja/advice/MonarchAdvice");
+    private static final Type OBJECT_ARRAY = Type.getType(Object[].class);
+    private static final Method ON_ENTER = new Method("onEnter", Type.LONG_TYPE, new Type[]{Type.INT_TYPE});
+    private static final Method ON_EXIT = new Method("onExit", Type.LONG_TYPE, new Type[]{Type.INT_TYPE, Type.LONG_TYPE});
+    private static final Method ON_ERROR = new Method("onError", Type.VOID_TYPE, new Type[]{Type.INT_TYPE, Type.LONG_TYPE});
+    private static final Method ON_CPU_ENTER = new Method("onCpuEnter", Type.LONG_TYPE, new Type[]{Type.INT_TYPE});
+    private static final Method ON_CPU_EXIT = new Method("onCpuExit", Type.VOID_TYPE, new Type[]{Type.INT_TYPE, Type.LONG_TYPE});
+    private static final Method ON_ALLOC_ENTER = new Method("onAllocEnter", Type.LONG_TYPE, new Type[]{Type.INT_TYPE});
+    private static final Method ON_ALLOC_EXIT = new Method("onAllocExit", Type.VOID_TYPE, new Type[]{Type.INT_TYPE, Type.LONG_TYPE});
+    private static final Method ON_STACK = new Method("onStack", Type.VOID_TYPE, new Type[]{Type.INT_TYPE, Type.INT_TYPE, Type.LONG_TYPE, Type.INT_TYPE});
+    private static final Method ON_HEAP = new Method("onHeap", Type.VOID_TYPE, new Type[]{Type.INT_TYPE, Type.INT_TYPE, Type.LONG_TYPE});
+    private static final Method ON_ARGS = new Method("onArgs", Type.VOID_TYPE, new Type[]{Type.INT_TYPE, OBJECT_ARRAY, Type.LONG_TYPE});
+    private static final Method ON_RETURN_VOID = new Method("onReturnVoid", Type.VOID_TYPE, new Type[]{Type.INT_TYPE, Type.LONG_TYPE});
+
+    private final Config config;
+    private final TraceFileLogger logger;
+    private final InstrumentationEngine fallback;
+
+    public AsmEngine(Config config, TraceFileLogger logger, InstrumentationEngine fallback) {
+        this.config = config;
+        this.logger = logger;
+        this.fallback = fallback;
+    }
+
+    @Override
+    public byte[] instrument(ClassLoader loader, String formattedClassName, byte[] classfileBuffer, List<Rule> rules) throws TransformException {
+        for (Rule rule : rules) {
+            if (rule.getAction() == Action.ADD) {
+                logger.trace("Class " + formattedClassName + " has custom code rules, instrumenting it with the fallback engine");
+                return fallback.instrument(loader, formattedClassName, classfileBuffer, rules);
+            }
+            if (rule.getOptions().isCaptureArgs()) {
+                // Copying the arguments only for slow calls needs a branch, and this engine computes no frames for the code it adds
+                logger.trace("Class " + formattedClassName + " has PROFILE rules capturing arguments, instrumenting it with the fallback engine");
+                return fallback.instrument(loader, formattedClassName, classfileBuffer, rules);
+            }
+        }
+        try {
+            ClassReader reader = new ClassReader(classfileBuffer);
+            ClassWriter writer = new ClassWriter(reader, ClassWriter.COMPUTE_MAXS);
+            reader.accept(new RuleClassVisitor(writer, formattedClassName, rules), ClassReader.EXPAND_FRAMES);
+            return writer.toByteArray();
+        } catch (RuntimeException e) {
+            logger.error(e.getMessage(), e);
+            throw new TransformException(e);
+        }
+    }
+
+    private static Type adviceValueType(Type type) {
+        switch (type.getSort()) {
+            case Type.BOOLEAN:
+            case Type.CHAR:
+            case Type.INT:
+            case Type.FLOAT:
+            case Type.LONG:
+            case Type.DOUBLE:
+                return type;
+            case Type.BYTE:
+            case Type.SHORT:
+                return Type.INT_TYPE;
+            default:
+                return Type.getType(Object.class);
+        }
+    }
+
+    private class RuleClassVisitor extends ClassVisitor {
+        private final String formattedClassName;
+        private final List<Rule> rules;
+        private int version;
+
+        RuleClassVisitor(ClassVisitor classVisitor, String formattedClassName, List<Rule> rules) {
+            super(Opcodes.ASM9, classVisitor);
+            this.formattedClassName = formattedClassName;
+            this.rules = rules;
+        }
+
+        @Override
+        public void visit(int version, int access, String name, String signature, String superName, String[] interfaces) {
+            super.visit(version, access, name, signature, superName, interfaces);
+            this.version = version;
+        }
+
+        @Override
+        public MethodVisitor visitMethod(int access, String name, String descriptor, String signature, String[] exceptions) {
+            MethodVisitor methodVisitor = super.visitMethod(access, name, descriptor, signature, exceptions);
+            // Constructors and static initializers are not instrumented, as with Javassist's getDeclaredMethods()
+            if (methodVisitor == null || name.startsWith("<") || (access & (Opcodes.ACC_ABSTRACT | Opcodes.ACC_NATIVE)) != 0) {
+                return methodVisitor;
+            }
+            boolean synthetic = (access & (Opcodes.ACC_SYNTHETIC | Opcodes.ACC_BRIDGE)) != 0;
+            List<Rule> methodRules = RuleIndex.rulesForMethod(rules, name, synthetic);
+            if (methodRules.isEmpty()) {
+                return methodVisitor;
+            }
+            int methodId = MethodRegistry.register(formattedClassName + '.' + name, descriptor);
+            for (Rule rule : methodRules) {
+                if (rule.getEvent() == Event.PROFILE) {
+                    MethodRegistry.get(methodId).configureProfile(config.isProfileTraceCalls(), rule.getOptions());
+                }
+            }
+            // Classes from Java 6 on have stack map frames, and the error handler of PROFILE rules needs one
+            boolean frames = (version & 0xFFFF) >= Opcodes.V1_6;
+            return new RuleMethodVisitor(methodVisitor, access, name, descriptor, methodId, methodRules, frames);
+        }
+    }
+
+    private class RuleMethodVisitor extends AdviceAdapter {
+        private final int methodId;
+        private final List<Rule> rules;
+        private final Type returnType;
+        private final List<Rule> pendingAtRules = new ArrayList<>();
+        // AT rules of the line just visited, emitted before its first instruction
+        private final List<Rule> lineAtRules = new ArrayList<>();
+        // Whether the class has stack map frames
+        private final boolean frames;
+        private int startTimeLocal = -1;
+        private int startCpuLocal = -1;
+        private int startAllocLocal = -1;
+        // Start of the code covered by the error handler of a PROFILE rule
+        private Label errorHandlerStart;
+
+        RuleMethodVisitor(MethodVisitor methodVisitor, int access, String name, String descriptor, int methodId, List<Rule> rules,
+                          boolean frames) {
+            super(Opcodes.ASM9, methodVisitor, access, name, descriptor);
+            this.methodId = methodId;
+            this.rules = rules;
+            this.returnType = Type.getReturnType(descriptor);
+            this.frames = frames;
+            for (Rule rule : rules) {
+                if (rule.getEvent() == Event.AT) {
+                    pendingAtRules.add(rule);
+                }
+            }
+        }
+
+        @Override
+        protected void onMethodEnter() {
+            for (Rule rule : rules) {
+                if (rule.getEvent() == Event.PROFILE && startTimeLocal < 0) {
+                    startTimeLocal = newLocal(Type.LONG_TYPE);
+                    push(methodId);
+                    invokeStatic(ADVICE, ON_ENTER);
+                    storeLocal(startTimeLocal);
+                } else if (rule.getEvent() == Event.CPU && startCpuLocal < 0) {
+                    startCpuLocal = newLocal(Type.LONG_TYPE);
+                    push(methodId);
+                    invokeStatic(ADVICE, ON_CPU_ENTER);
+                    storeLocal(startCpuLocal);
+                } else if (rule.getEvent() == Event.ALLOC && startAllocLocal < 0) {
+                    startAllocLocal = newLocal(Type.LONG_TYPE);
+                    push(methodId);
+                    invokeStatic(ADVICE, ON_ALLOC_ENTER);
+                    storeLocal(startAllocLocal);
+                } else if (rule.getEvent() == Event.ENTRY) {
+                    if (rule.getAction() == Action.ARGS) {
+                        push(methodId);
+                        loadArgArray();
+                        push(rule.getOptions().getThrottleSpec());
+                        invokeStatic(ADVICE, ON_ARGS);
+                    } else {
+                        emitStackOrHeap(rule, Event.ENTRY);
+                    }
+                }
+            }
+            if (startTimeLocal >= 0) {
+                // Covers the method body once all locals of the advice are set
+                errorHandlerStart = mark();
+            }
+        }
+
+        @Override
+        protected void onMethodExit(int opcode) {
+            // Like Javassist's insertAfter(), advice only runs when the method returns normally
+            if (opcode == ATHROW) {
+                return;
+            }
+            for (Rule rule : rules) {
+                if (rule.getEvent() == Event.PROFILE) {
+                    push(methodId);
+                    loadLocal(startTimeLocal);
+                    invokeStatic(ADVICE, ON_EXIT);
+                    // The duration is only used by Javassist code capturing the arguments of slow calls
+                    pop2();
+                } else if (rule.getEvent() == Event.CPU) {
+                    push(methodId);
+                    loadLocal(startCpuLocal);
+                    invokeStatic(ADVICE, ON_CPU_EXIT);
+                } else if (rule.getEvent() == Event.ALLOC) {
+                    push(methodId);
+                    loadLocal(startAllocLocal);
+                    invokeStatic(ADVICE, ON_ALLOC_EXIT);
+                } else if (rule.getEvent() == Event.EXIT) {
+                    if (rule.getAction() == Action.RET) {
+                        emitReturnValue(opcode, rule.getOptions().getThrottleSpec());
+                    } else {
+                        emitStackOrHeap(rule, Event.EXIT);
+                    }
+                }
+            }
+        }
+
+        /**
+         * Appends a handler for exceptions thrown out of the method body, which records the
+         * invocation as an error of the PROFILE rule and rethrows the exception.
+         */
+        @Override
+        public void visitMaxs(int maxStack, int maxLocals) {
+            if (errorHandlerStart != null) {
+                Label handler = new Label();
+                // Visited after the method's own handlers, so that those take precedence
+                visitTryCatchBlock(errorHandlerStart, handler, handler, "java/lang/Throwable");
+                visitLabel(handler);
+                if (frames) {
+                    // The handler only uses the locals of the advice, which LocalVariablesSorter adds to the frame
+                    visitFrame(Opcodes.F_NEW, 0, new Object[0], 1, new Object[]{"java/lang/Throwable"});
+                }
+                push(methodId);
+                loadLocal(startTimeLocal);
+                invokeStatic(ADVICE, ON_ERROR);
+                throwException();
+            }
+            super.visitMaxs(maxStack, maxLocals);
+        }
+
+        @Override
+        public void visitLineNumber(int line, Label start) {
+            super.visitLineNumber(line, start);
+            if (pendingAtRules.isEmpty()) {
+                return;
+            }
+            for (Rule rule : pendingAtRules) {
+                if (rule.getLineNumber() == line) {
+                    lineAtRules.add(rule);
+                }
+            }
+            pendingAtRules.removeAll(lineAtRules);
+        }
+
+        /**
+         * Emits the AT rules of the current line. The reader visits a line number before the frame
+         * at the same offset, so the code is only emitted with the first instruction of the line,
+         * after the frame a branch to the line needs.
+         */
+        private void emitLineAtRules() {
+            if (lineAtRules.isEmpty()) {
+                return;
+            }
+            for (Rule rule : lineAtRules) {
+                emitStackOrHeap(rule, Event.AT);
+            }
+            lineAtRules.clear();
+        }
+
+        @Override
+        public void visitInsn(int opcode) {
+            emitLineAtRules();
+            super.visitInsn(opcode);
+        }
+
+        @Override
+        public void visitIntInsn(int opcode, int operand) {
+            emitLineAtRules();
+            super.visitIntInsn(opcode, operand);
+        }
+
+        @Override
+        public void visitVarInsn(int opcode, int var) {
+            emitLineAtRules();
+            super.visitVarInsn(opcode, var);
+        }
+
+        @Override
+        public void visitTypeInsn(int opcode, String type) {
+            emitLineAtRules();
+            super.visitTypeInsn(opcode, type);
+        }
+
+        @Override
+        public void visitFieldInsn(int opcode, String owner, String name, String descriptor) {
+            emitLineAtRules();
+            super.visitFieldInsn(opcode, owner, name, descriptor);
+        }
+
+        @Override
+        public void visitMethodInsn(int opcode, String owner, String name, String descriptor, boolean isInterface) {
+            emitLineAtRules();
+            super.visitMethodInsn(opcode, owner, name, descriptor, isInterface);
+        }
+
+        @Override
+        public void visitInvokeDynamicInsn(String name, String descriptor, Handle bootstrapMethodHandle, Object... bootstrapMethodArguments) {
+            emitLineAtRules();
+            super.visitInvokeDynamicInsn(name, descriptor, bootstrapMethodHandle, bootstrapMethodArguments);
+        }
+
+        @Override
+        public void visitJumpInsn(int opcode, Label label) {
+            emitLineAtRules();
+            super.visitJumpInsn(opcode, label);
+        }
+
+        @Override
+        public void visitLdcInsn(Object value) {
+            emitLineAtRules();
+            super.visitLdcInsn(value);
+        }
+
+        @Override
+        public void visitIincInsn(int var, int increment) {
+            emitLineAtRules();
+            super.visitIincInsn(var, increment);
+        }
+
+        @Override
+        public void visitTableSwitchInsn(int min, int max, Label dflt, Label... labels) {
+            emitLineAtRules();
+            super.visitTableSwitchInsn(min, max, dflt, labels);
+        }
+
+        @Override
+        public void visitLookupSwitchInsn(Label dflt, int[] keys, Label[] labels) {
+            emitLineAtRules();
+            super.visitLookupSwitchInsn(dflt, keys, labels);
+        }
+
+        @Override
+        public void visitMultiANewArrayInsn(String descriptor, int numDimensions) {
+            emitLineAtRules();
+            super.visitMultiANewArrayInsn(descriptor, numDimensions);
+        }
+
+        private void emitStackOrHeap(Rule rule, Event event) {
+            Action action = rule.getAction();
+            if (action != Action.STACK && action != Action.HEAP) {
+                return;
+            }
+            push(methodId);
+            push(event.ordinal());
+            push(rule.getOptions().getThrottleSpec());
+            if (action == Action.STACK) {
+                push(rule.getOptions().getStackDepth());
+                invokeStatic(ADVICE, ON_STACK);
+            } else {
+                invokeStatic(ADVICE, ON_HEAP);
+            }
+        }
+
+        private void emitReturnValue(int opcode, long throttleSpec) {
+            if (opcode == RETURN) {
+                push(methodId);
+                push(throttleSpec);
+                invokeStatic(ADVICE, ON_RETURN_VOID);
+                return;
+            }
+            // Copy the return value and move the method id below the copy: value, id, value
+            if (returnType.getSize() == 2) {
+                dup2();
+            } else {
+                dup();
+            }
+            push(methodId);
+            swap(returnType, Type.INT_TYPE);
+            push(throttleSpec);
+            invokeStatic(ADVICE, new Method("onReturn", Type.VOID_TYPE, new Type[]{Type.INT_TYPE, adviceValueType(returnType), Type.LONG_TYPE}));
+        }
+    }
+}
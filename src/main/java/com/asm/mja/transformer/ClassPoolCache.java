@@ -0,0 +1,120 @@
+package com.asm.mja.transformer;
+
+import javassist.ClassClassPath;
+import javassist.ClassPool;
+import javassist.LoaderClassPath;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * One Javassist ClassPool per classloader, so that the types referenced by a class
+ * resolve through the loader that defines it (app servers, OSGi) rather than only
+ * the system classpath.
+ *
+ * Loaders are held weakly and a pool is dropped as soon as its loader is collected,
+ * e.g. after a webapp redeploy. At most {@code maxPools} pools are kept; the least
+ * recently used one is dropped beyond that and is simply rebuilt when needed again.
+ * Dropping a pool releases every CtClass it has cached.
+ *
+ * @author ashut
+ * @since 16-10-2026
+ */
+
+final class ClassPoolCache {
+
+    private final int maxPools;
+    private final ReferenceQueue<ClassLoader> collectedLoaders = new ReferenceQueue<>();
+    private final Map<LoaderKey, ClassPool> pools;
+    // Classes of the bootstrap loader, which has no ClassLoader object
+    private ClassPool bootstrapPool;
+
+    ClassPoolCache(int maxPools) {
+        this.maxPools = maxPools;
+        this.pools = new LinkedHashMap<LoaderKey, ClassPool>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<LoaderKey, ClassPool> eldest) {
+                return size() > ClassPoolCache.this.maxPools;
+            }
+        };
+    }
+
+    /**
+     * Returns the pool for a classloader, creating it on first use.
+     *
+     * @param loader The classloader, null for the bootstrap loader.
+     * @return The pool.
+     */
+    synchronized ClassPool get(ClassLoader loader) {
+        expungeCollectedLoaders();
+        if (loader == null) {
+            if (bootstrapPool == null) {
+                bootstrapPool = newPool(null);
+            }
+            return bootstrapPool;
+        }
+        LoaderKey lookup = new LoaderKey(loader, null);
+        ClassPool pool = pools.get(lookup);
+        if (pool == null) {
+            pool = newPool(loader);
+            pools.put(new LoaderKey(loader, collectedLoaders), pool);
+        }
+        return pool;
+    }
+
+    synchronized int size() {
+        expungeCollectedLoaders();
+        return pools.size();
+    }
+
+    private static ClassPool newPool(ClassLoader loader) {
+        ClassPool pool = new ClassPool(true);
+        // The snippets call into the agent, which on Java 9+ isn't visible through the system path
+        pool.appendClassPath(new ClassClassPath(ClassPoolCache.class));
+        if (loader != null) {
+            // LoaderClassPath only keeps a weak reference, so the pool doesn't keep the loader alive
+            pool.insertClassPath(new LoaderClassPath(loader));
+        }
+        return pool;
+    }
+
+    private void expungeCollectedLoaders() {
+        Reference<? extends ClassLoader> collected;
+        while ((collected = collectedLoaders.poll()) != null) {
+            pools.remove(collected);
+        }
+    }
+
+    /**
+     * A weak reference to a loader which compares by the loader's identity.
+     * The hash is kept so that the key can still be removed once the loader is gone.
+     */
+    private static final class LoaderKey extends WeakReference<ClassLoader> {
+        private final int hash;
+
+        LoaderKey(ClassLoader loader, ReferenceQueue<ClassLoader> queue) {
+            super(loader, queue);
+            this.hash = System.identityHashCode(loader);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof LoaderKey)) {
+                return false;
+            }
+            ClassLoader loader = get();
+            return loader != null && loader == ((LoaderKey) o).get();
+        }
+    }
+}
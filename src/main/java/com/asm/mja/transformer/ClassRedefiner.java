@@ -0,0 +1,195 @@
+package com.asm.mja.transformer;
+
+import com.asm.mja.logging.TraceFileLogger;
+import com.asm.mja.utils.ByteCodeUtils;
+
+import java.io.IOException;
+import java.lang.instrument.ClassDefinition;
+import java.lang.instrument.Instrumentation;
+import java.lang.instrument.UnmodifiableClassException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Brings loaded classes in line with the current rules of a {@link GlobalTransformer}
+ * by redefining them from their original bytecode in one batch.
+ *
+ * With a parallelism above one, the new bytecode of every class is computed up front
+ * on a bounded ForkJoin pool and then installed as is. Otherwise the transformer
+ * transforms the classes one after another while the JVM redefines them.
+ *
+ * @author ashut
+ * @since 16-10-2026
+ */
+
+public class ClassRedefiner {
+
+    // Progress is reported in steps of a tenth of the classes, but only for batches at least this large
+    private static final int PROGRESS_REPORT_MIN_CLASSES = 100;
+
+    private final Instrumentation instrumentation;
+    private final GlobalTransformer transformer;
+    private final TraceFileLogger logger;
+
+    public ClassRedefiner(Instrumentation instrumentation, GlobalTransformer transformer, TraceFileLogger logger) {
+        this.instrumentation = instrumentation;
+        this.transformer = transformer;
+        this.logger = logger;
+    }
+
+    /**
+     * Redefines the given classes.
+     *
+     * @param classes     The loaded classes to redefine.
+     * @param parallelism The number of threads to transform the classes on, 1 to let the JVM drive the transformer.
+     * @return The number of classes redefined.
+     */
+    public int redefine(List<Class<?>> classes, int parallelism) {
+        if (classes.isEmpty()) {
+            return 0;
+        }
+        long start = System.nanoTime();
+        boolean pretransformed = parallelism > 1;
+        List<ClassDefinition> definitions = pretransformed ? pretransform(classes, parallelism) : originalDefinitions(classes);
+        try {
+            int redefined = redefine(definitions, pretransformed);
+            logger.trace("Redefined " + redefined + " of " + classes.size() + " classes in " +
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + "ms");
+            return redefined;
+        } finally {
+            transformer.clearPretransformed();
+        }
+    }
+
+    private List<ClassDefinition> originalDefinitions(List<Class<?>> classes) {
+        List<ClassDefinition> definitions = new ArrayList<>(classes.size());
+        for (Class<?> classz : classes) {
+            try {
+                definitions.add(new ClassDefinition(classz, getOriginalByteCode(classz)));
+            } catch (IOException e) {
+                logger.error("Failed to read original bytecode for class " + classz.getName() + "; Exception: " + e.getMessage(), e);
+            }
+        }
+        return definitions;
+    }
+
+    private List<ClassDefinition> pretransform(List<Class<?>> classes, int parallelism) {
+        long start = System.nanoTime();
+        int progressStep = classes.size() >= PROGRESS_REPORT_MIN_CLASSES ? classes.size() / 10 : Integer.MAX_VALUE;
+        AtomicInteger completed = new AtomicInteger();
+        List<Callable<ClassDefinition>> tasks = new ArrayList<>(classes.size());
+        for (Class<?> classz : classes) {
+            tasks.add(() -> {
+                try {
+                    byte[] originalByteCode;
+                    try {
+                        originalByteCode = getOriginalByteCode(classz);
+                    } catch (IOException e) {
+                        logger.error("Failed to read original bytecode for class " + classz.getName() + "; Exception: " + e.getMessage(), e);
+                        return null;
+                    }
+                    try {
+                        return new ClassDefinition(classz, transformer.pretransform(classz, originalByteCode));
+                    } catch (RuntimeException | LinkageError e) {
+                        // Left uninstrumented, as it would be if the transformer failed during the JVM's redefinition
+                        logger.error("Failed to pre-transform class " + classz.getName() + "; Exception: " + e);
+                        return new ClassDefinition(classz, originalByteCode);
+                    }
+                } finally {
+                    int done = completed.incrementAndGet();
+                    if (done % progressStep == 0) {
+                        logger.trace("Pre-transformed " + done + "/" + classes.size() + " classes");
+                    }
+                }
+            });
+        }
+
+        List<ClassDefinition> definitions = new ArrayList<>(classes.size());
+        ForkJoinPool pool = new ForkJoinPool(parallelism, ClassRedefiner::newWorkerThread, null, false);
+        try {
+            List<Future<ClassDefinition>> futures = pool.invokeAll(tasks);
+            for (int i = 0; i < futures.size(); i++) {
+                ClassDefinition definition;
+                try {
+                    definition = futures.get(i).get();
+                } catch (ExecutionException e) {
+                    logger.error("Failed to pre-transform class " + classes.get(i).getName() + "; Exception: " + e.getCause(), e);
+                    continue;
+                }
+                if (definition != null) {
+                    transformer.markPretransformed(definition.getDefinitionClass());
+                    definitions.add(definition);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            logger.warn("Interrupted while pre-transforming classes, redefining the " + definitions.size() + " done so far");
+        } finally {
+            pool.shutdownNow();
+        }
+        logger.trace("Pre-transformed " + definitions.size() + " classes in " +
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + "ms on " + parallelism + " threads");
+        return definitions;
+    }
+
+    /**
+     * @param pretransformed true if the definitions hold bytecode from {@link GlobalTransformer#pretransform}, which
+     *                       the transformer must pass through rather than instrument a second time.
+     */
+    private int redefine(List<ClassDefinition> definitions, boolean pretransformed) {
+        if (definitions.isEmpty()) {
+            return 0;
+        }
+        /*
+         Using redefine here because re-transform will take the modified byte code as its source and would then result in changes which aren't intended
+         whereas I can pass the source for redefine myself
+         */
+        try {
+            instrumentation.redefineClasses(definitions.toArray(new ClassDefinition[0]));
+            return definitions.size();
+        } catch (UnmodifiableClassException | ClassNotFoundException | RuntimeException | LinkageError e) {
+            // A batch is applied all or nothing, so retry class by class to keep the others from being held back by one failure
+            logger.warn("Batched redefinition of " + definitions.size() + " classes failed (" + e + "), redefining them one at a time");
+        }
+        int redefined = 0;
+        for (ClassDefinition definition : definitions) {
+            if (pretransformed) {
+                // The failed batch may already have used up the mark of the class in the transformer
+                transformer.markPretransformed(definition.getDefinitionClass());
+            }
+            try {
+                instrumentation.redefineClasses(definition);
+                redefined++;
+            } catch (UnmodifiableClassException | ClassNotFoundException | RuntimeException | LinkageError e) {
+                if (pretransformed) {
+                    transformer.unmarkPretransformed(definition.getDefinitionClass());
+                }
+                logger.error("Failed to redefine class " + definition.getDefinitionClass().getName() + "; Exception: " + e);
+            }
+        }
+        return redefined;
+    }
+
+    /**
+     * Returns the uninstrumented bytecode of a class: the copy kept by the transformer
+     * if it was instrumented before, otherwise the class file from its classloader.
+     */
+    private byte[] getOriginalByteCode(Class<?> classz) throws IOException {
+        byte[] originalByteCode = transformer.getOriginalByteCode(classz.getClassLoader(), classz.getName());
+        return originalByteCode != null ? originalByteCode : ByteCodeUtils.getClassBytecode(classz);
+    }
+
+    private static ForkJoinWorkerThread newWorkerThread(ForkJoinPool pool) {
+        ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+        thread.setName("monarch-transform-" + thread.getPoolIndex());
+        thread.setDaemon(true);
+        return thread;
+    }
+}
@@ -0,0 +1,16 @@
+package com.asm.mja.transformer;
+
+/**
+ * The bytecode engines available to apply rules.
+ *
+ * JAVASSIST: Compiles Java source snippets into the target methods.
+ * ASM:       Emits calls to a static advice dispatcher with an ASM visitor.
+ *
+ * @author ashut
+ * @since 16-10-2026
+ */
+
+public enum EngineType {
+    JAVASSIST,
+    ASM
+}
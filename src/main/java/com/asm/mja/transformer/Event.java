@@ -9,5 +9,7 @@ public enum Event {
     ENTRY,
     EXIT,
     AT,
-    PROFILE
+    PROFILE,
+    CPU,
+    ALLOC
 }
@@ -1,24 +1,23 @@
 package com.asm.mja.transformer;
 
+import com.asm.mja.bytecode.OriginalByteCodeStore;
+import com.asm.mja.bytecode.TransformCache;
 import com.asm.mja.config.Config;
-import com.asm.mja.exception.BackupCreationException;
 import com.asm.mja.exception.TransformException;
-import com.asm.mja.exception.UnsupportedActionException;
+import com.asm.mja.metrics.MethodRegistry;
 import com.asm.mja.rule.Rule;
+import com.asm.mja.rule.RuleIndex;
 import com.asm.mja.logging.TraceFileLogger;
 import com.asm.mja.utils.ClassLoaderTracer;
-import javassist.*;
 
-import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.lang.instrument.ClassFileTransformer;
 import java.lang.instrument.IllegalClassFormatException;
 import java.security.ProtectionDomain;
-import java.util.ArrayList;
 import java.util.List;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * The GlobalTransformer class implements the ClassFileTransformer interface
@@ -31,13 +30,26 @@ import java.util.concurrent.ConcurrentHashMap;
 public class GlobalTransformer implements ClassFileTransformer {
 
     private Config config;
-    private List<Rule> rules;
+    // Swapped as a whole when rules are reloaded, so transform() always sees a consistent rule set
+    private volatile RuleIndex ruleIndex;
     private final TraceFileLogger logger;
     private Set<String> classesTransformed = ConcurrentHashMap.newKeySet();
-    private Set<String> backupSet = ConcurrentHashMap.newKeySet();
+    private final OriginalByteCodeStore byteCodeStore;
+    // Classes being redefined with bytecode produced by pretransform(), which must be installed as is
+    private final Set<Class<?>> pretransformed = ConcurrentHashMap.newKeySet();
+    private volatile InstrumentationEngine engine;
+    // Instrumentations of classes and the time they took, the agent's own overhead
+    private final LongAdder transformCount = new LongAdder();
+    private final LongAdder transformNanos = new LongAdder();
+    private TransformCache transformCache;
+
+    public Config getConfig() {
+        return config;
+    }
 
     public void resetConfig(Config config) {
         this.config = config;
+        this.engine = createEngine(config);
     }
 
     /**
@@ -48,7 +60,18 @@ public class GlobalTransformer implements ClassFileTransformer {
     public GlobalTransformer(Config config, TraceFileLogger logger, List<Rule> rules) {
         this.config = config;
         this.logger = logger;
-        this.rules = rules;
+        this.ruleIndex = RuleIndex.build(rules);
+        this.engine = createEngine(config);
+        this.byteCodeStore = new OriginalByteCodeStore(logger, logger.getTraceDir(),
+                config.getByteCodeStoreMemoryBudgetMB() * 1024L * 1024L, config.isByteCodeStoreCompression());
+    }
+
+    private InstrumentationEngine createEngine(Config config) {
+        InstrumentationEngine javassistEngine = new JavassistEngine(config, logger);
+        if (config.getInstrumentationEngine() == EngineType.ASM) {
+            return new AsmEngine(config, logger, javassistEngine);
+        }
+        return javassistEngine;
     }
 
     /**
@@ -67,361 +90,163 @@ public class GlobalTransformer implements ClassFileTransformer {
         if(config.isPrintClassLoaderTrace()) {
             logger.trace(ClassLoaderTracer.printClassInfo(className, loader, protectionDomain));
         }
-        if(rules.isEmpty())
+        if(classBeingRedefined != null && pretransformed.remove(classBeingRedefined))
+            return classfileBuffer;
+        List<Rule> appropriateRules = ruleIndex.getRules(className);
+        if(appropriateRules.isEmpty())
             return classfileBuffer;
-        String formattedClassName = className.replace("/", ".");
-        List<Rule> appropriateRules = getAppropriateRules(formattedClassName);
-        boolean needsInstrumentation =  !appropriateRules.isEmpty();
+        String formattedClassName = className.replace('/', '.');
         try {
-            if(needsInstrumentation) {
-                if(!backupSet.contains(formattedClassName))
-                    backupByteCode(formattedClassName, classfileBuffer, logger.getTraceDir());
-                return transformClass(loader, formattedClassName, classBeingRedefined, classfileBuffer, appropriateRules);
-            }
+            byteCodeStore.putIfAbsent(loader, formattedClassName, classfileBuffer);
+            return transformClass(loader, formattedClassName, classfileBuffer, appropriateRules);
         } catch (TransformException e) {
             logger.error("Failed to transform class " + formattedClassName, e);
-        } catch (BackupCreationException e) {
-            logger.error("Failed to back up bytecode for class " + formattedClassName + ", won't go ahead with the transformation", e);
         }
         return classfileBuffer;
     }
 
-    private List<Rule> getAppropriateRules(String formattedClassName) {
-        List<Rule> ruleList = new ArrayList<>();
-        for(Rule rule: rules) {
-            if(rule.getClassName().equalsIgnoreCase(formattedClassName)) {
-                ruleList.add(rule);
-            }
+    /**
+     * Computes the bytecode a loaded class should have under the current rules, without redefining it.
+     * This lets many classes be transformed in parallel ahead of one batched redefineClasses() call.
+     * The class must be passed to {@link #markPretransformed(Class)} before it is redefined with the result.
+     *
+     * @param classz           The loaded class.
+     * @param originalByteCode The original bytecode of the class.
+     * @return The transformed bytecode, or the original bytecode if the class has no rules or can't be transformed.
+     */
+    public byte[] pretransform(Class<?> classz, byte[] originalByteCode) {
+        String formattedClassName = classz.getName();
+        List<Rule> appropriateRules = ruleIndex.getRules(formattedClassName.replace('.', '/'));
+        if(appropriateRules.isEmpty())
+            return originalByteCode;
+        try {
+            byteCodeStore.putIfAbsent(classz.getClassLoader(), formattedClassName, originalByteCode);
+            return transformClass(classz.getClassLoader(), formattedClassName, originalByteCode, appropriateRules);
+        } catch (TransformException e) {
+            logger.error("Failed to transform class " + formattedClassName, e);
         }
-        return ruleList;
+        return originalByteCode;
     }
 
-    public void resetClassesTransformed() {
-        this.classesTransformed.clear();
+    /**
+     * Makes the next transform() of the class, triggered by its redefinition, pass the bytecode through untouched.
+     *
+     * @param classz The class about to be redefined with pretransformed bytecode.
+     */
+    public void markPretransformed(Class<?> classz) {
+        pretransformed.add(classz);
     }
 
-    public void resetRules() {
-        this.rules.clear();
+    /**
+     * Forgets the mark of a class whose redefinition with pretransformed bytecode failed.
+     *
+     * @param classz The class passed to {@link #markPretransformed(Class)}.
+     */
+    public void unmarkPretransformed(Class<?> classz) {
+        pretransformed.remove(classz);
     }
 
-    public void setRules(List<Rule> rules) {
-        this.rules = rules;
+    /**
+     * Forgets classes marked by {@link #markPretransformed(Class)} whose redefinition didn't happen.
+     */
+    public void clearPretransformed() {
+        pretransformed.clear();
     }
 
-    private void backupByteCode(String formattedClassName, byte[] classFileBuffer, String traceDir) throws BackupCreationException {
-        File backUpDir = new File(traceDir + File.separator + "backup");
-        backUpDir.mkdirs();
-
-        File classFile = new File(backUpDir, formattedClassName.substring(formattedClassName.lastIndexOf('.') + 1) + ".class");
-
-        try (FileOutputStream fos = new FileOutputStream(classFile)) {
-            fos.write(classFileBuffer);
-            backupSet.add(formattedClassName);
-        } catch (IOException e) {
-            throw new BackupCreationException(e.getMessage(), e);
-        }
+    /**
+     * Enables reuse of instrumented bytecode across JVM runs. Must be set before the transformer is registered.
+     *
+     * @param transformCache The on-disk cache of instrumented bytecode.
+     */
+    public void setTransformCache(TransformCache transformCache) {
+        this.transformCache = transformCache;
     }
 
-    private byte[] transformClass(ClassLoader loader, String formattedClassName,
-                                  Class<?> classBeingRedefined, byte[] classfileBuffer, List<Rule> rules) throws TransformException {
-        byte[] modifiedBytes = classfileBuffer;
-        if(classesTransformed.contains(formattedClassName)) {
-            logger.trace("Re-transforming class " + formattedClassName);
-        } else {
-            logger.trace("Going to transform class " + formattedClassName);
-            classesTransformed.add(formattedClassName);
-        }
-        for(Rule rule: rules) {
-            try {
-                switch (rule.getEvent()) {
-                    case ENTRY:
-                        modifiedBytes = performEntryAction(rule.getMethodName(), rule.getAction(), rule.getCustomCode(), loader, formattedClassName, classBeingRedefined, modifiedBytes);
-                        break;
-                    case EXIT:
-                        modifiedBytes = performExitAction(rule.getMethodName(), rule.getAction(), rule.getCustomCode(), loader, formattedClassName, classBeingRedefined, modifiedBytes);
-                        break;
-                    case AT:
-                        modifiedBytes = performAtAction(rule.getMethodName(), rule.getAction(), rule.getCustomCode(), loader, formattedClassName, classBeingRedefined, modifiedBytes, rule.getLineNumber());
-                        break;
-                    case PROFILE:
-                        modifiedBytes = performProfiling(rule.getMethodName(), rule.getAction(), loader, formattedClassName, classBeingRedefined, modifiedBytes, rule.getLineNumber());
-                }
-            } catch (IOException | CannotCompileException | UnsupportedActionException e) {
-                logger.error(e.getMessage(), e);
-                throw new TransformException(e);
-            }
-        }
-        return modifiedBytes;
+    public void resetClassesTransformed() {
+        this.classesTransformed.clear();
     }
 
-    private byte[] performProfiling(String methodName, Action action, ClassLoader loader,
-                                    String formattedClassName, Class<?> classBeingRedefined, byte[] modifiedBytes, int lineNumber) throws IOException, CannotCompileException {
-        ClassPool pool = ClassPool.getDefault();
-        CtClass ctClass = pool.makeClass(new java.io.ByteArrayInputStream(modifiedBytes));
-        //addLoggerField(ctClass);
-        for(CtMethod method : ctClass.getDeclaredMethods()) {
-            if(method.getName().equals(methodName)) {
-                // Declaring startTime as local variable to pass it to insertAfter (it won't work without this)
-                method.addLocalVariable("startTime", CtClass.longType);
-                method.insertBefore("try { startTime = System.nanoTime(); } catch(Exception e){}");
-
-                method.insertAfter("com.asm.mja.logging.TraceFileLogger logger = com.asm.mja.logging.TraceFileLogger.getInstance(); try {" +
-                        "    long endTime = System.nanoTime();" +
-                        "    final long executionTime = (endTime - startTime) / 1000000;" +
-                        "    logger.trace(\"{" + formattedClassName + '.' + methodName + "} | PROFILE | Execution time: \" + executionTime + \"ms\");" +
-                        "} catch (Exception e) { }");
-
-            }
-        }
-        // CtClass frozen - due to  writeFile()/toClass()/toBytecode()
-        modifiedBytes = ctClass.toBytecode();
-
-        // To remove from ClassPool
-        ctClass.detach();
-        return modifiedBytes;
+    public void resetRules() {
+        this.ruleIndex = RuleIndex.EMPTY;
     }
 
-    private byte[] performAtAction(String methodName, Action action, String customCode, ClassLoader loader,
-                                   String formattedClassName, Class<?> classBeingRedefined, byte[] modifiedBytes, int lineNumber) throws IOException, CannotCompileException {
-        switch (action) {
-            case STACK:
-                return getStack(methodName, Event.AT, loader, formattedClassName, classBeingRedefined, modifiedBytes, lineNumber);
-            case HEAP:
-                return getHeap(methodName, Event.AT, loader, formattedClassName, classBeingRedefined, modifiedBytes, lineNumber);
-            case ADD:
-                return addCustomCode(customCode, methodName, Event.AT, loader, formattedClassName, classBeingRedefined, modifiedBytes, lineNumber);
-        }
-        return modifiedBytes;
+    public void setRules(List<Rule> rules) {
+        this.ruleIndex = RuleIndex.build(rules);
     }
 
-    private byte[] performExitAction(String methodName, Action action, String customCode, ClassLoader loader,
-                                     String formattedClassName, Class<?> classBeingRedefined, byte[] modifiedBytes) throws IOException, CannotCompileException, UnsupportedActionException {
-        switch (action) {
-            case STACK:
-                return getStack(methodName, Event.EXIT, loader, formattedClassName, classBeingRedefined, modifiedBytes, 0);
-            case HEAP:
-                return getHeap(methodName, Event.EXIT, loader, formattedClassName, classBeingRedefined, modifiedBytes, 0);
-            case RET:
-                return getReturnValue(methodName, Event.EXIT, loader, formattedClassName, classBeingRedefined, modifiedBytes);
-            case ADD:
-                return addCustomCode(customCode, methodName, Event.EXIT, loader, formattedClassName, classBeingRedefined, modifiedBytes, 0);
-        }
-        return modifiedBytes;
+    /**
+     * Returns the bytecode a class had before it was first transformed.
+     *
+     * @param loader    The defining classloader of the class.
+     * @param className The fully qualified class name.
+     * @return The original bytecode, or null if the class was never transformed.
+     * @throws IOException If the bytecode can't be read back from the spill file.
+     */
+    public byte[] getOriginalByteCode(ClassLoader loader, String className) throws IOException {
+        return byteCodeStore.get(loader, className);
     }
 
-    private byte[] performEntryAction(String methodName, Action action, String customCode, ClassLoader loader,
-                                      String formattedClassName, Class<?> classBeingRedefined, byte[] modifiedBytes) throws IOException, CannotCompileException, UnsupportedActionException {
-        switch (action) {
-            case STACK:
-                return getStack(methodName, Event.ENTRY, loader, formattedClassName, classBeingRedefined, modifiedBytes, 0);
-            case HEAP:
-                return getHeap(methodName, Event.ENTRY, loader, formattedClassName, classBeingRedefined, modifiedBytes, 0);
-            case ARGS:
-                return getArgs(methodName, Event.ENTRY, loader, formattedClassName, classBeingRedefined, modifiedBytes);
-            case ADD:
-                return addCustomCode(customCode, methodName, Event.ENTRY, loader, formattedClassName, classBeingRedefined, modifiedBytes, 0);
-        }
-        return modifiedBytes;
+    /**
+     * @return The number of times a class was instrumented, including re-transformations and cache hits.
+     */
+    public long getTransformCount() {
+        return transformCount.sum();
     }
 
-    private byte[] getArgs(String methodName, Event event, ClassLoader loader, String formattedClassName,
-                           Class<?> classBeingRedefined, byte[] modifiedBytes) throws IOException, CannotCompileException, UnsupportedActionException {
-        ClassPool pool = ClassPool.getDefault();
-        CtClass ctClass = pool.makeClass(new java.io.ByteArrayInputStream(modifiedBytes));
-        //addLoggerField(ctClass);
-
-        for (CtMethod method : ctClass.getDeclaredMethods()) {
-            if (method.getName().equals(methodName)) {
-                StringBuilder code = new StringBuilder();
-                CtClass[] parameterTypes = new CtClass[0];
-                try {
-                    parameterTypes = method.getParameterTypes();
-                } catch (NotFoundException ignored) {
-                    //ignoring this
-                }
-
-                if (parameterTypes.length == 0) {
-                    code.append("com.asm.mja.logging.TraceFileLogger logger = com.asm.mja.logging.TraceFileLogger.getInstance();");
-                    code.append("try {");
-                    code.append("    logger.trace(\"{").append(formattedClassName).append('.').append(methodName).append("} | ").append(event).append(" | ").append("ARGS | NULL\");");
-                    code.append("} catch (Exception e) {}");
-                } else {
-                    code.append("com.asm.mja.logging.TraceFileLogger logger = com.asm.mja.logging.TraceFileLogger.getInstance();");
-                    code.append("try {");
-                    code.append("    StringBuilder args = new StringBuilder(\"\");");
-                    for (int i = 0; i < parameterTypes.length; i++) {
-                        code.append("    args.append(\" ").append(i).append("=\").append(");
-                        if (parameterTypes[i].isPrimitive()) {
-                            code.append('$').append(i + 1);
-                        } else {
-                            code.append('$').append(i + 1).append(".toString()");
-                        }
-                        code.append(");");
-                    }
-                    code.append("    logger.trace(\"{").append(formattedClassName).append('.').append(methodName).append("} | ").append(event).append(" | ARGS | \" + args.toString());");
-                    code.append("} catch (Exception e) {}");
-                }
-
-                if (event.equals(Event.ENTRY)) {
-                    method.insertBefore(code.toString());
-                } else if (event.equals(Event.EXIT)) {
-                    throw new UnsupportedActionException("Getting arguments for EXIT is not supported");
-                } else {
-                    throw new UnsupportedActionException("Getting arguments for AT is not supported");
-                }
-            }
-        }
-
-        // CtClass frozen - due to  writeFile()/toClass()/toBytecode()
-        modifiedBytes = ctClass.toBytecode();
-
-        // To remove from ClassPool
-        ctClass.detach();
-        return modifiedBytes;
+    /**
+     * @return The time spent instrumenting classes, in nanoseconds.
+     */
+    public long getTransformNanos() {
+        return transformNanos.sum();
     }
 
-
-    private byte[] getStack(String methodName, Event event, ClassLoader loader,
-                            String formattedClassName, Class<?> classBeingRedefined, byte[] modifiedBytes, int lineNumber) throws IOException, CannotCompileException {
-        ClassPool pool = ClassPool.getDefault();
-        CtClass ctClass = pool.makeClass(new java.io.ByteArrayInputStream(modifiedBytes));
-        //addLoggerField(ctClass);
-        for(CtMethod method : ctClass.getDeclaredMethods()) {
-            if(method.getName().equals(methodName)) {
-                String insertString = "com.asm.mja.logging.TraceFileLogger logger = com.asm.mja.logging.TraceFileLogger.getInstance(); try { " +
-                        "logger.stack(\"{" + formattedClassName + '.' + methodName + "} | " + event + " | " + "STACK\"" + ", new Throwable().getStackTrace()); " +
-                        "} catch (Exception e) {}";
-                if(event.equals(Event.ENTRY))
-                    method.insertBefore(insertString);
-                else if(event.equals(Event.EXIT))
-                    method.insertAfter(insertString);
-                else
-                    method.insertAt(lineNumber, insertString);
-            }
+    /**
+     * Releases the original bytecode store and the transform cache.
+     */
+    public void close() {
+        byteCodeStore.close();
+        if(transformCache != null) {
+            transformCache.close();
         }
-        // CtClass frozen - due to  writeFile()/toClass()/toBytecode()
-        modifiedBytes = ctClass.toBytecode();
-
-        // To remove from ClassPool
-        ctClass.detach();
-        return modifiedBytes;
     }
 
-    private byte[] getHeap(String methodName, Event event, ClassLoader loader,
-                           String formattedClassName, Class<?> classBeingRedefined, byte[] modifiedBytes, int lineNumber) throws IOException, CannotCompileException {
-        ClassPool pool = ClassPool.getDefault();
-        CtClass ctClass = pool.makeClass(new java.io.ByteArrayInputStream(modifiedBytes));
-        //addLoggerField(ctClass);
-        for (CtMethod method : ctClass.getDeclaredMethods()) {
-            if (method.getName().equals(methodName)) {
-                String insertString = "com.asm.mja.logging.TraceFileLogger logger = com.asm.mja.logging.TraceFileLogger.getInstance(); try { " +
-                        "com.asm.mja.utils.HeapDumpUtils.collectHeap();" +
-                        "logger.trace(\"{" + formattedClassName + '.' + methodName + "} | " + event + " | " + "HEAP\"" + "); " +
-                        "} catch (Exception e) {}";
-                if (event.equals(Event.ENTRY))
-                    method.insertBefore(insertString);
-                else if (event.equals(Event.EXIT))
-                    method.insertAfter(insertString);
-                else
-                    method.insertAt(lineNumber, insertString);
-            }
+    private byte[] transformClass(ClassLoader loader, String formattedClassName, byte[] classfileBuffer,
+                                  List<Rule> rules) throws TransformException {
+        long start = System.nanoTime();
+        try {
+            return instrument(loader, formattedClassName, classfileBuffer, rules);
+        } finally {
+            transformCount.increment();
+            transformNanos.add(System.nanoTime() - start);
         }
-        // CtClass frozen - due to  writeFile()/toClass()/toBytecode()
-        modifiedBytes = ctClass.toBytecode();
-
-        // To remove from ClassPool
-        ctClass.detach();
-        return modifiedBytes;
     }
 
-    /*
-      For ref:
-        $_ gives the return value
-        $r gives the return type
-     */
-    private byte[] getReturnValue(String methodName, Event event, ClassLoader loader,
-                                  String formattedClassName, Class<?> classBeingRedefined, byte[] modifiedBytes) throws IOException, CannotCompileException, UnsupportedActionException {
-        ClassPool pool = ClassPool.getDefault();
-        CtClass ctClass = pool.makeClass(new java.io.ByteArrayInputStream(modifiedBytes));
-        //addLoggerField(ctClass);
-
-        for (CtMethod method : ctClass.getDeclaredMethods()) {
-            if (method.getName().equals(methodName)) {
-                StringBuilder code = new StringBuilder();
-                CtClass returnType;
-                try {
-                    returnType = method.getReturnType();
-                } catch (NotFoundException e) {
-                    throw new UnsupportedActionException(e.getMessage());
-                }
-
-                if (event.equals(Event.EXIT)) {
-                    String returnVariableName;
-
-                    if (returnType.equals(CtClass.voidType)) {
-                        // For void methods, no return value to capture
-                        code.append("com.asm.mja.logging.TraceFileLogger logger = com.asm.mja.logging.TraceFileLogger.getInstance();");
-                        code.append("logger.trace(\"{").append(formattedClassName).append('.').append(methodName).append("} | ").append(event).append(" | RET | VOID\");");
-                    } else if (returnType.isPrimitive()) {
-                        // For primitive types, no need to call toString()
-                        returnVariableName = "$$_returnValue";
-                        code.append(returnType.getName()).append(' ').append(returnVariableName).append(" = ($r) $_;");
-                        code.append("com.asm.mja.logging.TraceFileLogger logger = com.asm.mja.logging.TraceFileLogger.getInstance();");
-                        code.append("try {");
-                        code.append("    logger.trace(\"{").append(formattedClassName).append('.').append(methodName).append("} | ").append(event).append(" | RET | \" + ").append(returnVariableName).append(");");
-                        code.append("} catch (Exception e) {}");
-                    } else {
-                        // For non-primitive types, check for null before calling toString()
-                        returnVariableName = "$$_returnValue";
-                        code.append(returnType.getName()).append(' ').append(returnVariableName).append(" = ($r) $_;");
-                        code.append("com.asm.mja.logging.TraceFileLogger logger = com.asm.mja.logging.TraceFileLogger.getInstance();");
-                        code.append("try {");
-                        code.append("    if (").append(returnVariableName).append(" != null) {");
-                        code.append("        logger.trace(\"{").append(formattedClassName).append('.').append(methodName).append("} | ").append(event).append(" | RET | \" + ").append(returnVariableName).append(".toString());");
-                        code.append("    } else {");
-                        code.append("        logger.trace(\"{").append(formattedClassName).append('.').append(methodName).append("} | ").append(event).append(" | RET | NULL\");");
-                        code.append("    }");
-                        code.append("} catch (Exception e) {}");
-                    }
-                } else {
-                    throw new UnsupportedActionException("Getting return value for " + event + " is not supported");
-                }
-
-                method.insertAfter(code.toString()); // Insert after to capture return value
-            }
+    private byte[] instrument(ClassLoader loader, String formattedClassName, byte[] classfileBuffer,
+                              List<Rule> rules) throws TransformException {
+        if(classesTransformed.contains(formattedClassName)) {
+            logger.trace("Re-transforming class " + formattedClassName);
+        } else {
+            logger.trace("Going to transform class " + formattedClassName);
+            classesTransformed.add(formattedClassName);
         }
-        // CtClass frozen - due to  writeFile()/toClass()/toBytecode()
-        modifiedBytes = ctClass.toBytecode();
-
-        // To remove from ClassPool
-        ctClass.detach();
-        return modifiedBytes;
-    }
-
-    private byte[] addCustomCode(String customCode, String methodName, Event event, ClassLoader loader,
-                                 String formattedClassName, Class<?> classBeingRedefined, byte[] modifiedBytes, int lineNumber) throws IOException, CannotCompileException {
-        ClassPool pool = ClassPool.getDefault();
-        CtClass ctClass = pool.makeClass(new java.io.ByteArrayInputStream(modifiedBytes));
-
-        for (CtMethod method : ctClass.getDeclaredMethods()) {
-            if (method.getName().equals(methodName)) {
-                String safeCustomCode = "try { " + customCode + " } catch (Exception e) { " +
-                        "com.asm.mja.logging.TraceFileLogger logger = com.asm.mja.logging.TraceFileLogger.getInstance();" +
-                        "logger.error(\"Custom code threw an exception in " + formattedClassName + '.' + methodName + ": \" + e.getMessage());" +
-                        "}";
-                if(event.equals(Event.ENTRY))
-                    method.insertBefore(safeCustomCode);
-                else if(event.equals(Event.AT))
-                    method.insertAt(lineNumber, safeCustomCode);
-                else
-                    method.insertAfter(safeCustomCode);
-            }
+        if(transformCache == null) {
+            return engine.instrument(loader, formattedClassName, classfileBuffer, rules);
         }
-        // CtClass frozen - due to  writeFile()/toClass()/toBytecode()
-        modifiedBytes = ctClass.toBytecode();
-
-        // To remove from ClassPool
-        ctClass.detach();
-        return modifiedBytes;
+        String key = transformCache.key(formattedClassName, classfileBuffer, rules, config);
+        byte[] cached = transformCache.get(key);
+        if(cached != null) {
+            logger.trace("Using cached instrumentation of class " + formattedClassName);
+            return cached;
+        }
+        MethodRegistry.startRecording();
+        byte[] instrumented;
+        List<Integer> methodIds;
+        try {
+            instrumented = engine.instrument(loader, formattedClassName, classfileBuffer, rules);
+        } finally {
+            methodIds = MethodRegistry.stopRecording();
+        }
+        transformCache.put(key, instrumented, methodIds);
+        return instrumented;
     }
 }
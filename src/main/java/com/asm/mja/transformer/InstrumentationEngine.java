@@ -0,0 +1,28 @@
+package com.asm.mja.transformer;
+
+import com.asm.mja.exception.TransformException;
+import com.asm.mja.rule.Rule;
+
+import java.util.List;
+
+/**
+ * A bytecode engine which applies rules to the bytecode of a single class.
+ *
+ * @author ashut
+ * @since 16-10-2026
+ */
+
+public interface InstrumentationEngine {
+
+    /**
+     * Applies the given rules to a class.
+     *
+     * @param loader             The classloader loading the class.
+     * @param formattedClassName The fully qualified (dot separated) name of the class.
+     * @param classfileBuffer    The bytecode of the class.
+     * @param rules              The rules applicable to the class.
+     * @return The instrumented bytecode.
+     * @throws TransformException If the class could not be instrumented.
+     */
+    byte[] instrument(ClassLoader loader, String formattedClassName, byte[] classfileBuffer, List<Rule> rules) throws TransformException;
+}
@@ -0,0 +1,344 @@
+package com.asm.mja.transformer;
+
+import com.asm.mja.config.Config;
+import com.asm.mja.exception.TransformException;
+import com.asm.mja.exception.UnsupportedActionException;
+import com.asm.mja.rule.Rule;
+import com.asm.mja.rule.RuleIndex;
+import com.asm.mja.rule.RuleOptions;
+import com.asm.mja.logging.TraceFileLogger;
+import com.asm.mja.metrics.EventThrottle;
+import com.asm.mja.metrics.MethodRegistry;
+import javassist.*;
+import javassist.bytecode.AccessFlag;
+import javassist.bytecode.BadBytecode;
+import javassist.bytecode.Bytecode;
+import javassist.bytecode.CodeAttribute;
+import javassist.bytecode.CodeIterator;
+import javassist.bytecode.ConstPool;
+import javassist.bytecode.LocalVariableAttribute;
+import javassist.bytecode.MethodInfo;
+import javassist.bytecode.Opcode;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Instruments classes by compiling Java source snippets into the target methods with Javassist.
+ * Supports every rule, including custom code (ADD) rules.
+ *
+ * @author ashut
+ * @since 11-04-2024
+ */
+public class JavassistEngine implements InstrumentationEngine {
+
+    private static final int MAX_CLASS_POOLS = 64;
+    // Shared by all engine instances, so that reloading the config doesn't throw away the pools
+    private static final ClassPoolCache CLASS_POOLS = new ClassPoolCache(MAX_CLASS_POOLS);
+
+    private final Config config;
+    private final TraceFileLogger logger;
+
+    public JavassistEngine(Config config, TraceFileLogger logger) {
+        this.config = config;
+        this.logger = logger;
+    }
+
+    @Override
+    public byte[] instrument(ClassLoader loader, String formattedClassName, byte[] classfileBuffer, List<Rule> rules) throws TransformException {
+        ClassPool pool = CLASS_POOLS.get(loader);
+        CtClass ctClass = null;
+        try {
+            // Parse the class once and apply every rule to the same CtClass
+            ctClass = pool.makeClass(new java.io.ByteArrayInputStream(classfileBuffer));
+            boolean modified = false;
+            for(CtMethod method : ctClass.getDeclaredMethods()) {
+                if(Modifier.isAbstract(method.getModifiers()) || Modifier.isNative(method.getModifiers()))
+                    continue;
+                boolean synthetic = (method.getMethodInfo().getAccessFlags() & (AccessFlag.SYNTHETIC | AccessFlag.BRIDGE)) != 0;
+                List<Rule> methodRules = RuleIndex.rulesForMethod(rules, method.getName(), synthetic);
+                for(Rule rule: methodRules) {
+                    applyRule(method, rule, formattedClassName);
+                    modified = true;
+                }
+            }
+            // CtClass frozen - due to  writeFile()/toClass()/toBytecode()
+            byte[] bytecode = ctClass.toBytecode();
+            // The stack maps Javassist rebuilds around inserted code are unreliable, e.g. they lack frames for unreachable code
+            // after a method's last athrow and merge branches of different types wrongly, so they are all recomputed
+            return modified ? PoolClassWriter.computeFrames(bytecode, pool) : bytecode;
+        } catch (IOException | CannotCompileException | UnsupportedActionException | RuntimeException e) {
+            // Runtime exceptions include class files Javassist can't parse, e.g. "invalid constant type: 18" for invokedynamic
+            logger.error(e.getMessage(), e);
+            throw new TransformException(e);
+        } finally {
+            // To remove from ClassPool
+            if(ctClass != null)
+                ctClass.detach();
+        }
+    }
+
+    private void applyRule(CtMethod method, Rule rule, String formattedClassName) throws CannotCompileException, UnsupportedActionException {
+        String condition = throttleCondition(method, rule, formattedClassName);
+        switch (rule.getEvent()) {
+            case ENTRY:
+                performEntryAction(method, rule.getAction(), rule.getCustomCode(), formattedClassName, condition, rule.getOptions().getStackDepth());
+                break;
+            case EXIT:
+                performExitAction(method, rule.getAction(), rule.getCustomCode(), formattedClassName, condition, rule.getOptions().getStackDepth());
+                break;
+            case AT:
+                performAtAction(method, rule.getAction(), rule.getCustomCode(), formattedClassName, rule.getLineNumber(), condition, rule.getOptions().getStackDepth());
+                break;
+            case PROFILE:
+                performProfiling(method, rule.getOptions(), formattedClassName);
+                break;
+            case CPU:
+                performMeasurement(method, "startCpuTime", "onCpuEnter", "onCpuExit", formattedClassName);
+                break;
+            case ALLOC:
+                performMeasurement(method, "startAllocatedBytes", "onAllocEnter", "onAllocExit", formattedClassName);
+        }
+    }
+
+    /**
+     * Returns the condition under which the injected code of a sampled or rate limited rule runs,
+     * evaluated before any message is built or stack captured.
+     *
+     * @return The condition, or null if the rule isn't throttled.
+     */
+    private String throttleCondition(CtMethod method, Rule rule, String formattedClassName) {
+        if (rule.getAction() == null || !rule.getOptions().isThrottled()) {
+            return null;
+        }
+        int methodId = MethodRegistry.register(formattedClassName + '.' + method.getName(), method.getSignature());
+        return "com.asm.mja.metrics.MethodRegistry.allow(" + methodId + ", " + EventThrottle.slot(rule.getEvent(), rule.getAction()) +
+                ", " + rule.getOptions().getThrottleSpec() + "L)";
+    }
+
+    private static String guarded(String condition, String code) {
+        return condition == null ? code : "if (" + condition + ") { " + code + " }";
+    }
+
+    private void performProfiling(CtMethod method, RuleOptions options, String formattedClassName) throws CannotCompileException {
+        int methodId = MethodRegistry.register(formattedClassName + '.' + method.getName(), method.getSignature());
+        MethodRegistry.get(methodId).configureProfile(config.isProfileTraceCalls(), options);
+        // Declaring startTime as local variable to pass it to insertAfter (it won't work without this)
+        method.addLocalVariable("startTime", CtClass.longType);
+        // No try/catch, as the advice doesn't throw and the catch variable could take the slot of the added local
+        int codeLength = method.getMethodInfo().getCodeAttribute().getCodeLength();
+        method.insertBefore("startTime = com.asm.mja.advice.MonarchAdvice.onEnter(" + methodId + ");");
+        // The method body starts after the inserted code, where startTime is set
+        int bodyStart = method.getMethodInfo().getCodeAttribute().getCodeLength() - codeLength;
+
+        StringBuilder code = new StringBuilder();
+        if (options.isCaptureArgs()) {
+            // Arguments are only copied into an array for calls above the threshold
+            code.append("long executionTime = com.asm.mja.advice.MonarchAdvice.onExit(").append(methodId).append(", startTime);");
+            code.append("if (executionTime > ").append(options.getThresholdNanos()).append("L) {");
+            code.append("    com.asm.mja.advice.MonarchAdvice.onSlowCall(").append(methodId).append(", executionTime, $args);");
+            code.append("}");
+        } else {
+            code.append("com.asm.mja.advice.MonarchAdvice.onExit(").append(methodId).append(", startTime);");
+        }
+        method.insertAfter(code.toString());
+        addErrorHandler(method, methodId, bodyStart);
+    }
+
+    /**
+     * Appends a handler to a profiled method which records invocations ending with an exception
+     * as errors and rethrows the exception. It is written as bytecode, as code compiled by
+     * addCatch() can't see the startTime local.
+     *
+     * @param bodyStart The offset of the method body, after the code setting startTime.
+     */
+    private void addErrorHandler(CtMethod method, int methodId, int bodyStart) throws CannotCompileException {
+        MethodInfo methodInfo = method.getMethodInfo();
+        CodeAttribute codeAttribute = methodInfo.getCodeAttribute();
+        ConstPool constPool = methodInfo.getConstPool();
+        Bytecode handler = new Bytecode(constPool);
+        handler.addIconst(methodId);
+        handler.addLload(startTimeSlot(codeAttribute));
+        handler.addInvokestatic("com.asm.mja.advice.MonarchAdvice", "onError", "(IJ)V");
+        handler.addOpcode(Opcode.ATHROW);
+        CodeIterator iterator = codeAttribute.iterator();
+        int bodyEnd = iterator.getCodeLength();
+        int handlerStart = iterator.append(handler.get());
+        // Added after the method's own handlers, so that those take precedence
+        codeAttribute.getExceptionTable().add(bodyStart, bodyEnd, handlerStart, constPool.addClassInfo("java.lang.Throwable"));
+        // The exception, the method id and the start time
+        codeAttribute.setMaxStack(Math.max(codeAttribute.getMaxStack(), 4));
+        try {
+            methodInfo.rebuildStackMapIf6(method.getDeclaringClass().getClassPool(), method.getDeclaringClass().getClassFile());
+        } catch (BadBytecode e) {
+            throw new CannotCompileException(e);
+        }
+    }
+
+    /**
+     * @return The slot of the startTime local added last, i.e. by the PROFILE rule being applied.
+     */
+    private static int startTimeSlot(CodeAttribute codeAttribute) throws CannotCompileException {
+        LocalVariableAttribute locals = (LocalVariableAttribute) codeAttribute.getAttribute(LocalVariableAttribute.tag);
+        if (locals != null) {
+            for (int i = locals.tableLength() - 1; i >= 0; i--) {
+                if (locals.variableName(i).equals("startTime")) {
+                    return locals.index(i);
+                }
+            }
+        }
+        throw new CannotCompileException("startTime local not found");
+    }
+
+    /**
+     * Reads a per-thread counter through the advice on entry and hands it back on exit, for CPU and ALLOC rules.
+     */
+    private void performMeasurement(CtMethod method, String variable, String enterMethod, String exitMethod,
+                                    String formattedClassName) throws CannotCompileException {
+        int methodId = MethodRegistry.register(formattedClassName + '.' + method.getName(), method.getSignature());
+        method.addLocalVariable(variable, CtClass.longType);
+        // No try/catch, as the advice doesn't throw and the catch variable could take the slot of the added local
+        method.insertBefore(variable + " = com.asm.mja.advice.MonarchAdvice." + enterMethod + "(" + methodId + ");");
+        method.insertAfter("com.asm.mja.advice.MonarchAdvice." + exitMethod + "(" + methodId + ", " + variable + ");");
+    }
+
+    private void performAtAction(CtMethod method, Action action, String customCode,
+                                 String formattedClassName, int lineNumber, String condition, int stackDepth) throws CannotCompileException {
+        switch (action) {
+            case STACK:
+                getStack(method, Event.AT, formattedClassName, lineNumber, condition, stackDepth);
+                break;
+            case HEAP:
+                getHeap(method, Event.AT, formattedClassName, lineNumber, condition);
+                break;
+            case ADD:
+                addCustomCode(method, customCode, Event.AT, formattedClassName, lineNumber, condition);
+                break;
+        }
+    }
+
+    private void performExitAction(CtMethod method, Action action, String customCode,
+                                   String formattedClassName, String condition, int stackDepth) throws CannotCompileException, UnsupportedActionException {
+        switch (action) {
+            case STACK:
+                getStack(method, Event.EXIT, formattedClassName, 0, condition, stackDepth);
+                break;
+            case HEAP:
+                getHeap(method, Event.EXIT, formattedClassName, 0, condition);
+                break;
+            case RET:
+                getReturnValue(method, Event.EXIT, formattedClassName, condition);
+                break;
+            case ADD:
+                addCustomCode(method, customCode, Event.EXIT, formattedClassName, 0, condition);
+                break;
+        }
+    }
+
+    private void performEntryAction(CtMethod method, Action action, String customCode,
+                                    String formattedClassName, String condition, int stackDepth) throws CannotCompileException, UnsupportedActionException {
+        switch (action) {
+            case STACK:
+                getStack(method, Event.ENTRY, formattedClassName, 0, condition, stackDepth);
+                break;
+            case HEAP:
+                getHeap(method, Event.ENTRY, formattedClassName, 0, condition);
+                break;
+            case ARGS:
+                getArgs(method, Event.ENTRY, formattedClassName, condition);
+                break;
+            case ADD:
+                addCustomCode(method, customCode, Event.ENTRY, formattedClassName, 0, condition);
+                break;
+        }
+    }
+
+    private void getArgs(CtMethod method, Event event, String formattedClassName, String condition) throws CannotCompileException, UnsupportedActionException {
+        int methodId = MethodRegistry.register(formattedClassName + '.' + method.getName(), method.getSignature());
+        // The throttle already is in the condition
+        String code = "try { com.asm.mja.advice.MonarchAdvice.onArgs(" + methodId + ", $args, 0L); } catch (Exception e) {}";
+
+        if (event.equals(Event.ENTRY)) {
+            method.insertBefore(guarded(condition, code));
+        } else if (event.equals(Event.EXIT)) {
+            throw new UnsupportedActionException("Getting arguments for EXIT is not supported");
+        } else {
+            throw new UnsupportedActionException("Getting arguments for AT is not supported");
+        }
+    }
+
+
+    private void getStack(CtMethod method, Event event, String formattedClassName, int lineNumber, String condition, int stackDepth) throws CannotCompileException {
+        int methodId = MethodRegistry.register(formattedClassName + '.' + method.getName(), method.getSignature());
+        // The throttle already is in the condition
+        String insertString = guarded(condition, "try { " +
+                "com.asm.mja.advice.MonarchAdvice.onStack(" + methodId + ", " + event.ordinal() + ", 0L, " + stackDepth + "); " +
+                "} catch (Exception e) {}");
+        if(event.equals(Event.ENTRY))
+            method.insertBefore(insertString);
+        else if(event.equals(Event.EXIT))
+            method.insertAfter(insertString);
+        else
+            method.insertAt(lineNumber, insertString);
+    }
+
+    private void getHeap(CtMethod method, Event event, String formattedClassName, int lineNumber, String condition) throws CannotCompileException {
+        int methodId = MethodRegistry.register(formattedClassName + '.' + method.getName(), method.getSignature());
+        String insertString = guarded(condition, "try { " +
+                "com.asm.mja.advice.MonarchAdvice.onHeap(" + methodId + ", " + event.ordinal() + ", 0L); " +
+                "} catch (Exception e) {}");
+        if (event.equals(Event.ENTRY))
+            method.insertBefore(insertString);
+        else if (event.equals(Event.EXIT))
+            method.insertAfter(insertString);
+        else
+            method.insertAt(lineNumber, insertString);
+    }
+
+    /*
+      For ref:
+        $_ gives the return value
+        $r gives the return type
+     */
+    private void getReturnValue(CtMethod method, Event event, String formattedClassName, String condition) throws CannotCompileException, UnsupportedActionException {
+        int methodId = MethodRegistry.register(formattedClassName + '.' + method.getName(), method.getSignature());
+        CtClass returnType;
+        try {
+            returnType = method.getReturnType();
+        } catch (NotFoundException e) {
+            throw new UnsupportedActionException(e.getMessage());
+        }
+
+        if (!event.equals(Event.EXIT)) {
+            throw new UnsupportedActionException("Getting return value for " + event + " is not supported");
+        }
+        // The throttle already is in the condition
+        String code;
+        if (returnType.equals(CtClass.voidType)) {
+            code = "try { com.asm.mja.advice.MonarchAdvice.onReturnVoid(" + methodId + ", 0L); } catch (Exception e) {}";
+        } else {
+            // Widened to the int overload for byte and short, as the advice has none for them
+            String valueType = returnType.equals(CtClass.byteType) || returnType.equals(CtClass.shortType) ?
+                    "int" : returnType.getName();
+            code = valueType + " $$_returnValue = ($r) $_;" +
+                    "try { com.asm.mja.advice.MonarchAdvice.onReturn(" + methodId + ", $$_returnValue, 0L); } catch (Exception e) {}";
+        }
+
+        method.insertAfter(guarded(condition, code)); // Insert after to capture return value
+    }
+
+    private void addCustomCode(CtMethod method, String customCode, Event event,
+                               String formattedClassName, int lineNumber, String condition) throws CannotCompileException {
+        String methodName = method.getName();
+        String safeCustomCode = guarded(condition, "try { " + customCode + " } catch (Exception e) { " +
+                "com.asm.mja.logging.TraceFileLogger logger = com.asm.mja.logging.TraceFileLogger.getInstance();" +
+                "logger.error(\"Custom code threw an exception in " + formattedClassName + '.' + methodName + ": \" + e.getMessage());" +
+                "}");
+        if(event.equals(Event.ENTRY))
+            method.insertBefore(safeCustomCode);
+        else if(event.equals(Event.AT))
+            method.insertAt(lineNumber, safeCustomCode);
+        else
+            method.insertAfter(safeCustomCode);
+    }
+}
@@ -0,0 +1,77 @@
+package com.asm.mja.transformer;
+
+import javassist.ClassPool;
+import javassist.CtClass;
+import javassist.NotFoundException;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Opcodes;
+
+/**
+ * An ASM ClassWriter which computes stack map frames, resolving the common superclass
+ * of two types through a Javassist ClassPool. ASM's default loads both types with
+ * Class.forName(), which from inside a transformer can load application classes early,
+ * from the wrong loader, or recursively into the transformer.
+ *
+ * Used on bytecode written by Javassist where its own stack map rebuild falls short,
+ * see {@link #computeFrames(byte[], ClassPool)}.
+ *
+ * @author ashut
+ * @since 16-10-2026
+ */
+
+final class PoolClassWriter extends ClassWriter {
+
+    private static final String OBJECT = "java/lang/Object";
+
+    private final ClassPool pool;
+
+    private PoolClassWriter(ClassPool pool) {
+        super(COMPUTE_FRAMES);
+        this.pool = pool;
+    }
+
+    /**
+     * Recomputes the stack map frames of every method of a class. Unreachable code, such as
+     * code Javassist appends after a method's last athrow, is replaced by nop...athrow and
+     * gets a frame too, which the verifier requires but Javassist 3.12 doesn't emit.
+     *
+     * @param bytecode The bytecode of the class.
+     * @param pool     The pool the types referenced by the class resolve through.
+     * @return The bytecode with recomputed frames, or the given bytecode for classes before Java 6, which have none.
+     */
+    static byte[] computeFrames(byte[] bytecode, ClassPool pool) {
+        ClassReader reader = new ClassReader(bytecode);
+        // The major version, at offset 6 of the class file
+        if (reader.readUnsignedShort(6) < Opcodes.V1_6) {
+            return bytecode;
+        }
+        ClassWriter writer = new PoolClassWriter(pool);
+        reader.accept(writer, ClassReader.SKIP_FRAMES);
+        return writer.toByteArray();
+    }
+
+    @Override
+    protected String getCommonSuperClass(String type1, String type2) {
+        try {
+            CtClass class1 = pool.get(type1.replace('/', '.'));
+            CtClass class2 = pool.get(type2.replace('/', '.'));
+            if (class2.subtypeOf(class1)) {
+                return type1;
+            }
+            if (class1.subtypeOf(class2)) {
+                return type2;
+            }
+            if (class1.isInterface() || class2.isInterface()) {
+                return OBJECT;
+            }
+            do {
+                class1 = class1.getSuperclass();
+            } while (class1 != null && !class2.subtypeOf(class1));
+            return class1 == null ? OBJECT : class1.getName().replace('.', '/');
+        } catch (NotFoundException e) {
+            // A guess would produce frames the verifier rejects, so leave the class uninstrumented instead
+            throw new IllegalStateException("Failed to resolve the common superclass of " + type1 + " and " + type2, e);
+        }
+    }
+}
@@ -1,11 +1,10 @@
 package com.asm.mja.utils;
 
 import com.asm.mja.rule.Rule;
+import com.asm.mja.rule.RuleIndex;
 
 import java.util.Arrays;
 import java.util.List;
-import java.util.Set;
-import java.util.stream.Collectors;
 
 /**
  * @author ashut
@@ -14,12 +13,22 @@ import java.util.stream.Collectors;
 
 public class ClassRuleUtils {
     public static Class<?>[] ruleClasses(Class<?>[] allLoadedClasses, List<Rule> rules) {
-        Set<String> classNamesToInstrument = rules.stream()
-                .map(Rule::getClassName)
-                .collect(Collectors.toSet());
+        return ruleClasses(allLoadedClasses, RuleIndex.build(rules));
+    }
 
+    /**
+     * Returns the classes which have rules, matching class patterns the same way the transformer does.
+     *
+     * @param allLoadedClasses The classes to filter.
+     * @param ruleIndex        The rules.
+     * @return The classes with at least one rule.
+     */
+    public static Class<?>[] ruleClasses(Class<?>[] allLoadedClasses, RuleIndex ruleIndex) {
+        if (ruleIndex.isEmpty()) {
+            return new Class<?>[0];
+        }
         return Arrays.stream(allLoadedClasses)
-                .filter(clazz -> classNamesToInstrument.contains(clazz.getName()))
+                .filter(clazz -> !ruleIndex.getRules(clazz.getName().replace('.', '/')).isEmpty())
                 .toArray(Class<?>[]::new);
     }
 }
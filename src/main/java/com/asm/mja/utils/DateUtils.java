@@ -11,8 +11,11 @@ import java.util.Date;
 public class DateUtils {
 
     public static String getFormattedTimestamp() {
-        SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS");
-        return dateFormat.format(new Date());
+        return getFormattedTimestamp(System.currentTimeMillis());
+    }
+
+    public static String getFormattedTimestamp(long timestamp) {
+        return TimestampFormatter.format(timestamp);
     }
 
     public static String getFormattedTimestampForFileName() {
@@ -0,0 +1,34 @@
+package com.asm.mja.utils;
+
+import java.util.Arrays;
+
+/**
+ * Captures the stack trace of the current thread for STACK actions and slow PROFILE calls.
+ *
+ * This is the Java 8 version, which has to fill in the whole stack trace before cutting it
+ * down to the requested depth. The agent jar is a multi-release jar; on Java 9 and later
+ * the version in src/main/java9 is loaded instead, which walks only the frames it returns.
+ *
+ * @author ashut
+ * @since 16-10-2026
+ */
+
+public class StackTraceUtils {
+
+    private StackTraceUtils() {
+
+    }
+
+    /**
+     * @param skip     The number of frames to skip above the caller, e.g. 1 to start at the caller's caller.
+     * @param maxDepth The maximum number of frames returned, 0 for all.
+     * @return The frames of the current thread's stack, innermost first, starting below the skipped frames.
+     */
+    public static StackTraceElement[] capture(int skip, int maxDepth) {
+        StackTraceElement[] stackTrace = new Throwable().getStackTrace();
+        // Also skip this method's own frame
+        int from = Math.min(skip + 1, stackTrace.length);
+        int to = maxDepth > 0 ? Math.min(stackTrace.length, from + maxDepth) : stackTrace.length;
+        return Arrays.copyOfRange(stackTrace, from, to);
+    }
+}
@@ -0,0 +1,84 @@
+package com.asm.mja.utils;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+/**
+ * Reads the CPU time and the allocated bytes of the current thread for CPU and ALLOC rules.
+ * Measurement is enabled on first use; where the JVM doesn't support it, or it can't be
+ * enabled, the readings are -1.
+ *
+ * @author ashut
+ * @since 16-10-2026
+ */
+
+public class ThreadResourceUtils {
+
+    private static final ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+    // Set if the JVM's ThreadMXBean has the HotSpot extension for allocated bytes
+    private static final com.sun.management.ThreadMXBean allocationMXBean = allocationMXBean();
+    private static final boolean cpuTimeSupported = enableCpuTime();
+    private static final boolean allocatedBytesSupported = enableAllocatedBytes();
+
+    private ThreadResourceUtils() {
+
+    }
+
+    private static com.sun.management.ThreadMXBean allocationMXBean() {
+        try {
+            return threadMXBean instanceof com.sun.management.ThreadMXBean ? (com.sun.management.ThreadMXBean) threadMXBean : null;
+        } catch (LinkageError e) {
+            return null;
+        }
+    }
+
+    private static boolean enableCpuTime() {
+        try {
+            if (!threadMXBean.isCurrentThreadCpuTimeSupported()) {
+                return false;
+            }
+            if (!threadMXBean.isThreadCpuTimeEnabled()) {
+                threadMXBean.setThreadCpuTimeEnabled(true);
+            }
+            return true;
+        } catch (RuntimeException e) {
+            return false;
+        }
+    }
+
+    private static boolean enableAllocatedBytes() {
+        try {
+            if (allocationMXBean == null || !allocationMXBean.isThreadAllocatedMemorySupported()) {
+                return false;
+            }
+            if (!allocationMXBean.isThreadAllocatedMemoryEnabled()) {
+                allocationMXBean.setThreadAllocatedMemoryEnabled(true);
+            }
+            return true;
+        } catch (RuntimeException e) {
+            return false;
+        }
+    }
+
+    /**
+     * @return The CPU time of the current thread in nanoseconds, user and system, or -1 if not supported.
+     */
+    public static long currentThreadCpuTime() {
+        return cpuTimeSupported ? threadMXBean.getCurrentThreadCpuTime() : -1L;
+    }
+
+    /**
+     * @return The number of bytes the current thread allocated on the heap so far, or -1 if not supported.
+     */
+    public static long currentThreadAllocatedBytes() {
+        return allocatedBytesSupported ? allocationMXBean.getThreadAllocatedBytes(Thread.currentThread().getId()) : -1L;
+    }
+
+    public static boolean isCpuTimeSupported() {
+        return cpuTimeSupported;
+    }
+
+    public static boolean isAllocatedBytesSupported() {
+        return allocatedBytesSupported;
+    }
+}
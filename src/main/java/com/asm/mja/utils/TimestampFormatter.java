@@ -0,0 +1,68 @@
+package com.asm.mja.utils;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+
+/**
+ * Formats epoch millis as "yyyy-MM-dd HH:mm:ss.SSS" without allocating per call.
+ *
+ * Each thread keeps a char buffer holding the last formatted timestamp. The date and
+ * time up to the second only change once a second, so in the common case only the
+ * three millisecond digits are rewritten. State is thread confined, so no locks are needed.
+ *
+ * @author ashut
+ * @since 16-10-2026
+ */
+
+public final class TimestampFormatter {
+
+    private static final String SECOND_PATTERN = "yyyy-MM-dd HH:mm:ss";
+    // Index of the first millisecond digit, after "yyyy-MM-dd HH:mm:ss."
+    private static final int MILLIS_OFFSET = SECOND_PATTERN.length() + 1;
+    private static final int LENGTH = MILLIS_OFFSET + 3;
+
+    private static final ThreadLocal<TimestampFormatter> FORMATTERS = ThreadLocal.withInitial(TimestampFormatter::new);
+
+    private final SimpleDateFormat secondFormat = new SimpleDateFormat(SECOND_PATTERN);
+    private final char[] buffer = new char[LENGTH];
+    private long cachedSecond = Long.MIN_VALUE;
+
+    private TimestampFormatter() {
+        buffer[SECOND_PATTERN.length()] = '.';
+    }
+
+    /**
+     * Appends the formatted timestamp to the given builder.
+     *
+     * @param out       The builder to append to.
+     * @param timestamp The time in milliseconds since the epoch.
+     * @return The builder, for chaining.
+     */
+    public static StringBuilder appendTo(StringBuilder out, long timestamp) {
+        return out.append(FORMATTERS.get().render(timestamp), 0, LENGTH);
+    }
+
+    /**
+     * Formats the given timestamp as a new String.
+     *
+     * @param timestamp The time in milliseconds since the epoch.
+     * @return The formatted timestamp.
+     */
+    public static String format(long timestamp) {
+        return new String(FORMATTERS.get().render(timestamp), 0, LENGTH);
+    }
+
+    private char[] render(long timestamp) {
+        long second = Math.floorDiv(timestamp, 1000L);
+        if (second != cachedSecond) {
+            // Once per second and thread: the timezone rules (and DST) stay with SimpleDateFormat
+            secondFormat.format(new Date(second * 1000L)).getChars(0, SECOND_PATTERN.length(), buffer, 0);
+            cachedSecond = second;
+        }
+        int millis = (int) Math.floorMod(timestamp, 1000L);
+        buffer[MILLIS_OFFSET] = (char) ('0' + millis / 100);
+        buffer[MILLIS_OFFSET + 1] = (char) ('0' + millis / 10 % 10);
+        buffer[MILLIS_OFFSET + 2] = (char) ('0' + millis % 10);
+        return buffer;
+    }
+}
@@ -0,0 +1,40 @@
+package com.asm.mja.utils;
+
+import java.util.stream.Stream;
+
+/**
+ * Captures the stack trace of the current thread for STACK actions and slow PROFILE calls.
+ *
+ * This is the Java 9+ version of the multi-release jar. {@link StackWalker} walks the stack
+ * lazily, so only the frames returned are visited and turned into {@link StackTraceElement}s,
+ * which makes shallow captures of deep stacks cheap.
+ *
+ * @author ashut
+ * @since 16-10-2026
+ */
+
+public class StackTraceUtils {
+
+    // Reflection frames are kept, as they are in Throwable stack traces
+    private static final StackWalker WALKER = StackWalker.getInstance(StackWalker.Option.SHOW_REFLECT_FRAMES);
+
+    private StackTraceUtils() {
+
+    }
+
+    /**
+     * @param skip     The number of frames to skip above the caller, e.g. 1 to start at the caller's caller.
+     * @param maxDepth The maximum number of frames returned, 0 for all.
+     * @return The frames of the current thread's stack, innermost first, starting below the skipped frames.
+     */
+    public static StackTraceElement[] capture(int skip, int maxDepth) {
+        return WALKER.walk(frames -> {
+            // Also skip this method's own frame
+            Stream<StackWalker.StackFrame> walked = frames.skip(skip + 1);
+            if (maxDepth > 0) {
+                walked = walked.limit(maxDepth);
+            }
+            return walked.map(StackWalker.StackFrame::toStackTraceElement).toArray(StackTraceElement[]::new);
+        });
+    }
+}
@@ -0,0 +1,51 @@
+package com.asm.mja;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Reads the bytecode of test classes and loads instrumented copies of them.
+ *
+ * @author ashut
+ * @since 16-10-2026
+ */
+
+public final class TestClasses {
+
+    private TestClasses() {
+    }
+
+    /**
+     * @return The bytecode of a class, read from the class file it was loaded from.
+     */
+    public static byte[] readClass(Class<?> classz) throws IOException {
+        String resource = classz.getName().substring(classz.getName().lastIndexOf('.') + 1) + ".class";
+        try (InputStream in = classz.getResourceAsStream(resource)) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            for (int read; (read = in.read(buffer)) > 0; ) {
+                out.write(buffer, 0, read);
+            }
+            return out.toByteArray();
+        }
+    }
+
+    /**
+     * Defines a class from the given bytecode in a loader of its own, next to the original class.
+     * Defining a class verifies it.
+     */
+    public static Class<?> defineClass(final String className, final byte[] bytecode) throws ClassNotFoundException {
+        ClassLoader loader = new ClassLoader(TestClasses.class.getClassLoader()) {
+            @Override
+            protected synchronized Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+                if (!name.equals(className)) {
+                    return super.loadClass(name, resolve);
+                }
+                Class<?> loaded = findLoadedClass(name);
+                return loaded != null ? loaded : defineClass(name, bytecode, 0, bytecode.length);
+            }
+        };
+        return loader.loadClass(className);
+    }
+}
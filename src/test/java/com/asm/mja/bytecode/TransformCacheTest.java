@@ -0,0 +1,79 @@
+package com.asm.mja.bytecode;
+
+import com.asm.mja.TestClasses;
+import com.asm.mja.config.Config;
+import com.asm.mja.logging.TraceFileLogger;
+import com.asm.mja.metrics.MethodMetrics;
+import com.asm.mja.metrics.MethodRegistry;
+import com.asm.mja.rule.Rule;
+import com.asm.mja.rule.RuleOptions;
+import com.asm.mja.rule.RuleParser;
+import com.asm.mja.transformer.GlobalTransformer;
+import junit.framework.TestCase;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author ashut
+ * @since 16-10-2026
+ */
+
+public class TransformCacheTest extends TestCase {
+
+    public static class Sleepy {
+        public void sleepy() throws InterruptedException {
+            Thread.sleep(20);
+        }
+    }
+
+    private Path traceDir;
+    private String cacheDir;
+
+    @Override
+    protected void setUp() throws IOException {
+        traceDir = Files.createTempDirectory("monarch-test");
+        TraceFileLogger.getInstance().init(traceDir.toString());
+        cacheDir = Files.createTempDirectory("monarch-cache").toString();
+    }
+
+    public void testCacheHitAppliesProfileSettings() throws Exception {
+        String className = Sleepy.class.getName();
+        List<Rule> rules = RuleParser.parseRules(Collections.singletonList(className + "::sleepy@PROFILE[threshold=10ms,stack]"));
+        byte[] original = TestClasses.readClass(Sleepy.class);
+
+        byte[] instrumented = transform(rules, original);
+        MethodMetrics metrics = MethodRegistry.get(MethodRegistry.register(className + ".sleepy", "()V"));
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(10), metrics.getSlowThresholdNanos());
+        // As in a restarted JVM, whose methods have no settings until their class is instrumented
+        metrics.configureProfile(false, RuleOptions.NONE);
+
+        byte[] cached = transform(rules, original);
+        assertTrue(Arrays.equals(instrumented, cached));
+        // The engine sets the PROFILE settings too, so make sure it didn't run
+        String trace = new String(Files.readAllBytes(traceDir.resolve("agent.trace")), StandardCharsets.UTF_8);
+        assertTrue(trace.contains("Using cached instrumentation of class " + className));
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(10), metrics.getSlowThresholdNanos());
+        assertTrue(metrics.isSlowCallStack());
+    }
+
+    /**
+     * Transforms a class with a transformer of its own, which reopens the cache.
+     */
+    private byte[] transform(List<Rule> rules, byte[] original) throws Exception {
+        Config config = new Config();
+        GlobalTransformer transformer = new GlobalTransformer(config, TraceFileLogger.getInstance(), rules);
+        transformer.setTransformCache(new TransformCache(TraceFileLogger.getInstance(), cacheDir, 1024 * 1024, "test"));
+        try {
+            return transformer.transform(getClass().getClassLoader(), Sleepy.class.getName().replace('.', '/'), null, null, original);
+        } finally {
+            transformer.close();
+        }
+    }
+}
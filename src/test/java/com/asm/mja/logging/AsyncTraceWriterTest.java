@@ -0,0 +1,161 @@
+package com.asm.mja.logging;
+
+import junit.framework.TestCase;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * @author ashut
+ * @since 16-10-2026
+ */
+
+public class AsyncTraceWriterTest extends TestCase {
+
+    public void testShutdownWritesEverythingPublished() {
+        RecordingEncoder encoder = new RecordingEncoder();
+        AsyncTraceWriter writer = new AsyncTraceWriter(encoder, new ReentrantLock(), 64, OverflowPolicy.BLOCK);
+        writer.execute();
+        for (int i = 0; i < 10000; i++) {
+            writer.publish(new TraceRecord("TRACE", "record " + i, null));
+        }
+        writer.shutdownAndClose();
+
+        assertEquals(0, writer.getDroppedCount());
+        List<String> messages = encoder.getMessages();
+        assertEquals(10000, messages.size());
+        for (int i = 0; i < messages.size(); i++) {
+            assertEquals("record " + i, messages.get(i));
+        }
+        assertTrue(encoder.isClosed());
+    }
+
+    public void testDropNewestCountsDroppedRecords() throws InterruptedException {
+        RecordingEncoder encoder = new RecordingEncoder();
+        encoder.blockWrites();
+        AsyncTraceWriter writer = new AsyncTraceWriter(encoder, new ReentrantLock(), 4, OverflowPolicy.DROP_NEWEST);
+        writer.execute();
+        writer.publish(new TraceRecord("TRACE", "record", null));
+        encoder.awaitBlockedWrite();
+        // The writer is stuck on the first record, so only the buffer's capacity fits
+        for (int i = 0; i < 10; i++) {
+            writer.publish(new TraceRecord("TRACE", "record", null));
+        }
+        assertEquals(6, writer.getDroppedCount());
+        encoder.unblockWrites();
+        writer.shutdownAndClose();
+
+        List<String> messages = encoder.getMessages();
+        // The records that fit, and one report of the dropped ones
+        assertEquals(6, messages.size());
+        int reports = 0;
+        for (String message : messages) {
+            if (message.startsWith("Trace buffer full, dropped 6 record(s)")) {
+                reports++;
+            } else {
+                assertEquals("record", message);
+            }
+        }
+        assertEquals(1, reports);
+    }
+
+    public void testEncoderIsClosedAfterSlowWriterFinishes() throws InterruptedException {
+        final RecordingEncoder encoder = new RecordingEncoder();
+        encoder.blockWrites();
+        final AsyncTraceWriter writer = new AsyncTraceWriter(encoder, new ReentrantLock(), 64, OverflowPolicy.BLOCK);
+        writer.execute();
+        writer.publish(new TraceRecord("TRACE", "record", null));
+        encoder.awaitBlockedWrite();
+        for (int i = 0; i < 10; i++) {
+            writer.publish(new TraceRecord("TRACE", "record", null));
+        }
+        Thread closer = new Thread(writer::shutdownAndClose);
+        closer.start();
+        // Outlast the writer's shutdown wait, so that the writer is still busy when it gives up
+        closer.join(TimeUnit.SECONDS.toMillis(6));
+        assertFalse(encoder.isClosed());
+        encoder.unblockWrites();
+        closer.join();
+
+        assertTrue(encoder.awaitClose());
+        assertEquals(11, encoder.getMessages().size());
+        assertFalse(encoder.wasWrittenAfterClose());
+    }
+
+    /**
+     * Records the messages written to it, optionally holding up writes until released.
+     */
+    private static class RecordingEncoder implements TraceEncoder {
+        private final List<String> messages = new ArrayList<>();
+        private final CountDownLatch writeBlocked = new CountDownLatch(1);
+        private final CountDownLatch closedLatch = new CountDownLatch(1);
+        private volatile CountDownLatch release = null;
+        private volatile boolean closed = false;
+        private volatile boolean writtenAfterClose = false;
+
+        @Override
+        public void write(TraceRecord record) throws IOException {
+            if (closed) {
+                writtenAfterClose = true;
+            }
+            CountDownLatch latch = release;
+            if (latch != null) {
+                writeBlocked.countDown();
+                try {
+                    latch.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            synchronized (messages) {
+                messages.add(record.getMessage());
+            }
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+            closedLatch.countDown();
+        }
+
+        void blockWrites() {
+            release = new CountDownLatch(1);
+        }
+
+        void unblockWrites() {
+            CountDownLatch latch = release;
+            release = null;
+            latch.countDown();
+        }
+
+        void awaitBlockedWrite() throws InterruptedException {
+            assertTrue(writeBlocked.await(5, TimeUnit.SECONDS));
+        }
+
+        boolean awaitClose() throws InterruptedException {
+            return closedLatch.await(5, TimeUnit.SECONDS);
+        }
+
+        List<String> getMessages() {
+            synchronized (messages) {
+                return new ArrayList<>(messages);
+            }
+        }
+
+        boolean isClosed() {
+            return closed;
+        }
+
+        boolean wasWrittenAfterClose() {
+            return writtenAfterClose;
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package com.asm.mja.logging;
+
+import com.asm.mja.metrics.MethodRegistry;
+import junit.framework.TestCase;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * @author ashut
+ * @since 16-10-2026
+ */
+
+public class BinaryTraceRoundTripTest extends TestCase {
+
+    private static final StackTraceElement[] STACK = {
+            new StackTraceElement("com.acme.Order", "total", "Order.java", 42),
+            new StackTraceElement("com.acme.Cart", "checkout", "Cart.java", 7)
+    };
+
+    private Path traceFile;
+
+    @Override
+    protected void setUp() throws IOException {
+        traceFile = Files.createTempDirectory("monarch-test").resolve(BinaryTraceFormat.FILE_NAME);
+    }
+
+    public void testRecordsRoundTrip() throws Exception {
+        int methodId = MethodRegistry.register("com.acme.Order.total", "()J");
+        final List<TraceRecord> records = new ArrayList<>();
+        records.add(new TraceRecord("TRACE", "Agent started", null));
+        records.add(new TraceRecord("WARN", "{com.acme.Cart.checkout} | ENTRY | STACK", STACK));
+        records.add(new TraceRecord("TRACE", methodId, " | EXIT | RET", 'J', 42L));
+        records.add(new TraceRecord("TRACE", methodId, " | ENTRY | ARGS", new Object[]{"a", 1}, true, null));
+        Thread other = new Thread(() -> records.add(new TraceRecord("ERROR", "from another thread", STACK)), "other-thread");
+        other.start();
+        other.join();
+        // Repeated strings and frames are referenced, not written again
+        records.add(new TraceRecord("WARN", "{com.acme.Cart.checkout} | ENTRY | STACK", STACK));
+        write(records);
+
+        try (BinaryTraceReader reader = new BinaryTraceReader(Files.newInputStream(traceFile))) {
+            for (TraceRecord record : records) {
+                assertTrue(reader.next());
+                assertEquals(record.getTimestamp(), reader.getTimestamp());
+                assertEquals(record.getLevel(), reader.getLevel());
+                assertEquals(record.getThread().getId(), reader.getThreadId());
+                assertEquals(record.getThread().getName(), reader.getThreadName());
+                assertEquals(expectedMessage(record), reader.getMessage());
+                assertEquals(expectedStackTrace(record), reader.getStackTrace());
+            }
+            assertFalse(reader.next());
+            assertFalse(reader.isTruncated());
+        }
+    }
+
+    public void testMethodIsSplitFromMessage() throws Exception {
+        int methodId = MethodRegistry.register("com.acme.Order.total", "()J");
+        write(Arrays.asList(
+                new TraceRecord("TRACE", methodId, " | ENTRY | HEAP", null, false, null),
+                new TraceRecord("TRACE", "{com.acme.Cart.checkout} | EXIT | HEAP", null),
+                new TraceRecord("TRACE", "no method", null)));
+
+        try (BinaryTraceReader reader = new BinaryTraceReader(Files.newInputStream(traceFile))) {
+            assertTrue(reader.next());
+            assertEquals(MethodRegistry.getName(methodId), reader.getMethod());
+            assertTrue(reader.next());
+            assertEquals("com.acme.Cart.checkout", reader.getMethod());
+            assertTrue(reader.next());
+            assertNull(reader.getMethod());
+            assertNull(reader.getStackTrace());
+        }
+    }
+
+    public void testTruncatedFile() throws Exception {
+        write(Arrays.asList(
+                new TraceRecord("TRACE", "first", null),
+                new TraceRecord("TRACE", "second", STACK)));
+        byte[] content = Files.readAllBytes(traceFile);
+
+        InputStream cut = new ByteArrayInputStream(content, 0, content.length - 3);
+        try (BinaryTraceReader reader = new BinaryTraceReader(cut)) {
+            assertTrue(reader.next());
+            assertEquals("first", reader.getMessage());
+            assertFalse(reader.next());
+            assertTrue(reader.isTruncated());
+        }
+    }
+
+    public void testRejectsOtherFiles() {
+        try {
+            new BinaryTraceReader(new ByteArrayInputStream("2026-10-16 [TRACE]".getBytes()));
+            fail("A text trace should be rejected");
+        } catch (IOException e) {
+            assertEquals("Not a Monarch binary trace file", e.getMessage());
+        }
+    }
+
+    private void write(List<TraceRecord> records) throws IOException {
+        BinaryTraceEncoder encoder = new BinaryTraceEncoder(new ChannelTraceOutput(traceFile));
+        try {
+            for (TraceRecord record : records) {
+                encoder.write(record);
+            }
+        } finally {
+            encoder.close();
+        }
+    }
+
+    /**
+     * @return The message as the text format writes it, with the {@code {method}} prefix.
+     */
+    private static String expectedMessage(TraceRecord record) {
+        String message = record.getMessage();
+        return record.getMethodId() == TraceRecord.NO_METHOD ? message : "{" + MethodRegistry.getName(record.getMethodId()) + "}" + message;
+    }
+
+    private static List<String> expectedStackTrace(TraceRecord record) {
+        if (record.getStackTrace() == null) {
+            return null;
+        }
+        List<String> frames = new ArrayList<>();
+        for (StackTraceElement element : record.getStackTrace()) {
+            frames.add(element.toString());
+        }
+        return frames;
+    }
+}
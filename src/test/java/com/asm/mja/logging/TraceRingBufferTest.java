@@ -0,0 +1,91 @@
+package com.asm.mja.logging;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * @author ashut
+ * @since 16-10-2026
+ */
+
+public class TraceRingBufferTest extends TestCase {
+
+    public void testCapacityIsRoundedUpToPowerOfTwo() {
+        assertEquals(2, new TraceRingBuffer<Integer>(2).capacity());
+        assertEquals(8, new TraceRingBuffer<Integer>(5).capacity());
+        assertEquals(1024, new TraceRingBuffer<Integer>(1024).capacity());
+        try {
+            new TraceRingBuffer<Integer>(1);
+            fail("A capacity below 2 should be rejected");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    public void testOfferFailsWhenFull() {
+        TraceRingBuffer<Integer> buffer = new TraceRingBuffer<>(4);
+        assertTrue(buffer.isEmpty());
+        for (int i = 0; i < 4; i++) {
+            assertTrue(buffer.offer(i));
+        }
+        assertFalse(buffer.offer(4));
+        List<Integer> drained = new ArrayList<>();
+        assertEquals(1, buffer.drain(drained::add, 1));
+        // The drained slot is free again
+        assertTrue(buffer.offer(4));
+        assertEquals(4, buffer.drain(drained::add, 10));
+        assertTrue(buffer.isEmpty());
+        for (int i = 0; i < 5; i++) {
+            assertEquals(Integer.valueOf(i), drained.get(i));
+        }
+    }
+
+    public void testDrainRespectsLimit() {
+        TraceRingBuffer<Integer> buffer = new TraceRingBuffer<>(8);
+        for (int i = 0; i < 6; i++) {
+            buffer.offer(i);
+        }
+        List<Integer> drained = new ArrayList<>();
+        assertEquals(4, buffer.drain(drained::add, 4));
+        assertEquals(2, buffer.drain(drained::add, 4));
+        assertEquals(0, buffer.drain(drained::add, 4));
+        assertEquals(6, drained.size());
+    }
+
+    public void testConcurrentProducersKeepTheirOrder() throws InterruptedException {
+        final int producers = 4;
+        final int perProducer = 50000;
+        final TraceRingBuffer<long[]> buffer = new TraceRingBuffer<>(64);
+        Thread[] threads = new Thread[producers];
+        for (int p = 0; p < producers; p++) {
+            final int producer = p;
+            threads[p] = new Thread(() -> {
+                for (int i = 0; i < perProducer; i++) {
+                    long[] element = {producer, i};
+                    while (!buffer.offer(element)) {
+                        Thread.yield();
+                    }
+                }
+            });
+            threads[p].start();
+        }
+        final int[] next = new int[producers];
+        int received = 0;
+        while (received < producers * perProducer) {
+            received += buffer.drain(element -> {
+                int producer = (int) element[0];
+                // Every element arrives once, and each producer's elements in the order they were offered
+                assertEquals(next[producer]++, (int) element[1]);
+            }, 128);
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertTrue(buffer.isEmpty());
+        for (int count : next) {
+            assertEquals(perProducer, count);
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package com.asm.mja.metrics;
+
+import com.asm.mja.rule.RuleOptions;
+import com.asm.mja.transformer.Action;
+import com.asm.mja.transformer.Event;
+import junit.framework.TestCase;
+
+/**
+ * @author ashut
+ * @since 16-10-2026
+ */
+
+public class EventThrottleTest extends TestCase {
+
+    public void testSlotIdentifiesEventAndAction() {
+        EventThrottle throttle = new EventThrottle(EventThrottle.slot(Event.EXIT, Action.RET), spec("rate=1/s"));
+        assertEquals(Event.EXIT, throttle.getEvent());
+        assertEquals(Action.RET, throttle.getAction());
+        assertFalse(EventThrottle.slot(Event.ENTRY, Action.STACK) == EventThrottle.slot(Event.EXIT, Action.STACK));
+        assertTrue(EventThrottle.slot(Event.values()[Event.values().length - 1], Action.values()[Action.values().length - 1])
+                < EventThrottle.SLOT_COUNT);
+    }
+
+    public void testRateAllowsOneSecondBurst() {
+        EventThrottle throttle = throttle("rate=10/s");
+        assertEquals(10, acquire(throttle, 100));
+        assertEquals(90, throttle.getSuppressed());
+    }
+
+    public void testRatePerMinuteAllowsAtLeastOne() {
+        EventThrottle throttle = throttle("rate=6/m");
+        assertEquals(1, acquire(throttle, 100));
+    }
+
+    public void testSampleRate() {
+        EventThrottle throttle = throttle("sample=0.25");
+        int acquired = acquire(throttle, 100000);
+        assertTrue("acquired " + acquired, acquired > 22000 && acquired < 28000);
+        assertEquals(100000 - acquired, throttle.getSuppressed());
+    }
+
+    public void testSampledInvocationsAreRateLimited() {
+        EventThrottle throttle = throttle("sample=0.5,rate=10/s");
+        assertEquals(10, acquire(throttle, 1000));
+    }
+
+    public void testReconfigureKeepsSuppressedCount() {
+        EventThrottle throttle = throttle("rate=1/s");
+        assertEquals(1, acquire(throttle, 10));
+        throttle.reconfigure(spec("sample=0.5"));
+        assertEquals(spec("sample=0.5"), throttle.getThrottleSpec());
+        int acquired = acquire(throttle, 1000);
+        // No longer rate limited
+        assertTrue("acquired " + acquired, acquired > 1);
+        assertEquals(9 + 1000 - acquired, throttle.getSuppressed());
+    }
+
+    private static EventThrottle throttle(String options) {
+        return new EventThrottle(EventThrottle.slot(Event.ENTRY, Action.STACK), spec(options));
+    }
+
+    private static long spec(String options) {
+        return RuleOptions.parse(options).getThrottleSpec();
+    }
+
+    private static int acquire(EventThrottle throttle, int attempts) {
+        int acquired = 0;
+        for (int i = 0; i < attempts; i++) {
+            if (throttle.tryAcquire()) {
+                acquired++;
+            }
+        }
+        return acquired;
+    }
+}
@@ -0,0 +1,99 @@
+package com.asm.mja.metrics;
+
+import junit.framework.TestCase;
+
+/**
+ * @author ashut
+ * @since 16-10-2026
+ */
+
+public class LatencyHistogramTest extends TestCase {
+
+    public void testSmallValuesHaveBucketsOfTheirOwn() {
+        for (int nanos = 0; nanos < 32; nanos++) {
+            assertEquals(nanos, LatencyHistogram.bucketIndex(nanos));
+            assertEquals(nanos, LatencyHistogram.bucketUpperBound(nanos));
+        }
+    }
+
+    public void testBucketsBoundRelativeError() {
+        int previousIndex = -1;
+        for (long nanos = 1; nanos <= LatencyHistogram.MAX_TRACKABLE_NANOS; nanos += 1 + nanos / 7) {
+            int index = LatencyHistogram.bucketIndex(nanos);
+            long upperBound = LatencyHistogram.bucketUpperBound(index);
+            assertTrue(index >= previousIndex);
+            assertTrue(nanos + " above its bucket's bound " + upperBound, nanos <= upperBound);
+            assertTrue(nanos + " too far below its bucket's bound " + upperBound, upperBound - nanos <= nanos / 32);
+            if (upperBound < LatencyHistogram.MAX_TRACKABLE_NANOS) {
+                // The next bucket starts right after this one
+                assertEquals(index + 1, LatencyHistogram.bucketIndex(upperBound + 1));
+            }
+            previousIndex = index;
+        }
+    }
+
+    public void testLargeValuesAreClamped() {
+        int last = LatencyHistogram.BUCKET_COUNT - 1;
+        assertEquals(last, LatencyHistogram.bucketIndex(LatencyHistogram.MAX_TRACKABLE_NANOS));
+        assertEquals(last, LatencyHistogram.bucketIndex(LatencyHistogram.MAX_TRACKABLE_NANOS + 1));
+        assertEquals(last, LatencyHistogram.bucketIndex(Long.MAX_VALUE));
+        assertEquals(LatencyHistogram.MAX_TRACKABLE_NANOS, LatencyHistogram.bucketUpperBound(last));
+    }
+
+    public void testPercentiles() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long micros = 1000; micros >= 1; micros--) {
+            histogram.record(micros * 1000);
+        }
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+        assertEquals(1000, snapshot.getCount());
+        assertEquals(1000, snapshot.getMin());
+        assertEquals(1000000, snapshot.getMax());
+        assertEquals(500500.0, snapshot.getMean(), 0.001);
+        assertWithinBucket(500000, snapshot.getValueAtPercentile(50));
+        assertWithinBucket(990000, snapshot.getValueAtPercentile(99));
+        assertWithinBucket(1000, snapshot.getValueAtPercentile(0));
+        // Never above the recorded maximum, even though its bucket reaches further
+        assertEquals(1000000, snapshot.getValueAtPercentile(100));
+    }
+
+    public void testEmptySnapshot() {
+        LatencyHistogram.Snapshot snapshot = new LatencyHistogram().snapshot();
+        assertEquals(0, snapshot.getCount());
+        assertEquals(0, snapshot.getMin());
+        assertEquals(0, snapshot.getMax());
+        assertEquals(0.0, snapshot.getMean(), 0.0);
+        assertEquals(0, snapshot.getValueAtPercentile(99));
+    }
+
+    public void testNegativeValuesAreRecordedAsZero() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(-5);
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+        assertEquals(1, snapshot.getCount());
+        assertEquals(0, snapshot.getMax());
+        assertEquals(0, snapshot.getValueAtPercentile(100));
+    }
+
+    public void testDrainResets() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(100);
+        histogram.record(300);
+        LatencyHistogram.Snapshot drained = histogram.drain();
+        assertEquals(2, drained.getCount());
+        assertEquals(100, drained.getMin());
+        assertEquals(300, drained.getMax());
+        assertEquals(0, histogram.getCount());
+
+        histogram.record(50);
+        drained = histogram.drain();
+        assertEquals(1, drained.getCount());
+        assertEquals(50, drained.getMin());
+        assertEquals(50, drained.getMax());
+        assertEquals(0, histogram.drain().getCount());
+    }
+
+    private static void assertWithinBucket(long expected, long actual) {
+        assertTrue("expected about " + expected + " but was " + actual, actual >= expected && actual - expected <= expected / 32);
+    }
+}
@@ -0,0 +1,51 @@
+package com.asm.mja.rule;
+
+import junit.framework.TestCase;
+
+/**
+ * @author ashut
+ * @since 16-10-2026
+ */
+
+public class GlobPatternTest extends TestCase {
+
+    public void testLiteralMatchesOnlyItself() {
+        GlobPattern glob = GlobPattern.compile("process");
+        assertTrue(glob.isLiteral());
+        assertTrue(glob.matches("process"));
+        assertFalse(glob.matches("processAll"));
+        assertFalse(glob.matches("proces"));
+    }
+
+    public void testStarMatchesAnyRun() {
+        GlobPattern glob = GlobPattern.compile("get*");
+        assertFalse(glob.isLiteral());
+        assertTrue(glob.matches("get"));
+        assertTrue(glob.matches("getName"));
+        assertFalse(glob.matches("forget"));
+        assertTrue(GlobPattern.compile("*Service*").matches("OrderServiceImpl"));
+        assertTrue(GlobPattern.compile("*").matches(""));
+    }
+
+    public void testQuestionMarkMatchesOneCharacter() {
+        GlobPattern glob = GlobPattern.compile("v?");
+        assertTrue(glob.matches("v1"));
+        assertFalse(glob.matches("v"));
+        assertFalse(glob.matches("v12"));
+    }
+
+    public void testStarBacktracks() {
+        GlobPattern glob = GlobPattern.compile("a*b*c");
+        assertTrue(glob.matches("abbbc"));
+        assertTrue(glob.matches("axbxcxbc"));
+        assertFalse(glob.matches("axbxcxb"));
+    }
+
+    public void testMatchesRegion() {
+        String name = "com/acme/OrderService";
+        GlobPattern glob = GlobPattern.compile("a?me");
+        assertTrue(glob.matches(name, 4, 8));
+        assertFalse(glob.matches(name, 0, 3));
+        assertTrue(GlobPattern.compile("acme").matches(name, 4, 8));
+    }
+}
@@ -0,0 +1,67 @@
+package com.asm.mja.rule;
+
+import junit.framework.TestCase;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * @author ashut
+ * @since 16-10-2026
+ */
+
+public class RuleIndexTest extends TestCase {
+
+    public void testExactClassName() {
+        List<Rule> rules = RuleParser.parseRules(Arrays.asList(
+                "com.acme.Order::total@ENTRY::STACK",
+                "com.acme.Order::total@EXIT::HEAP"));
+        RuleIndex index = RuleIndex.build(rules);
+        assertEquals(rules, index.getRules("com/acme/Order"));
+        assertTrue(index.getRules("com/acme/Orders").isEmpty());
+        assertTrue(index.getRules(null).isEmpty());
+    }
+
+    public void testGlobWithinSegment() {
+        RuleIndex index = RuleIndex.build(RuleParser.parseRules(Arrays.asList("com.acme.*Service::*@ENTRY::STACK")));
+        assertEquals(1, index.getRules("com/acme/OrderService").size());
+        assertTrue(index.getRules("com/acme/OrderServiceImpl").isEmpty());
+        // '*' doesn't cross a package boundary
+        assertTrue(index.getRules("com/acme/order/OrderService").isEmpty());
+    }
+
+    public void testAnySegments() {
+        RuleIndex index = RuleIndex.build(RuleParser.parseRules(Arrays.asList("com.acme.**.Order::*@ENTRY::STACK")));
+        // '**' matches no segment as well as several
+        assertEquals(1, index.getRules("com/acme/Order").size());
+        assertEquals(1, index.getRules("com/acme/shop/Order").size());
+        assertEquals(1, index.getRules("com/acme/shop/cart/Order").size());
+        assertTrue(index.getRules("com/acme/shop/OrderLine").isEmpty());
+        assertTrue(index.getRules("org/acme/Order").isEmpty());
+    }
+
+    public void testMatchesKeepDefinitionOrder() {
+        List<Rule> rules = RuleParser.parseRules(Arrays.asList(
+                "com.acme.**::*@ENTRY::STACK",
+                "com.acme.Order::total@EXIT::HEAP",
+                "com.acme.Ord?r::total@ENTRY::HEAP"));
+        assertEquals(rules, RuleIndex.build(rules).getRules("com/acme/Order"));
+    }
+
+    public void testPatternsSkipTheAgent() {
+        RuleIndex index = RuleIndex.build(RuleParser.parseRules(Arrays.asList("com.**::*@ENTRY::STACK")));
+        assertEquals(1, index.getRules("com/acme/Order").size());
+        assertTrue(index.getRules("com/asm/mja/Agent").isEmpty());
+    }
+
+    public void testRulesForMethod() {
+        List<Rule> rules = RuleParser.parseRules(Arrays.asList(
+                "com.acme.Order::get*@ENTRY::STACK",
+                "com.acme.Order::getTotal@EXIT::HEAP"));
+        assertEquals(rules, RuleIndex.rulesForMethod(rules, "getTotal", false));
+        assertEquals(rules.subList(0, 1), RuleIndex.rulesForMethod(rules, "getLines", false));
+        // Synthetic methods only match exact names
+        assertEquals(rules.subList(1, 2), RuleIndex.rulesForMethod(rules, "getTotal", true));
+        assertTrue(RuleIndex.rulesForMethod(rules, "setTotal", false).isEmpty());
+    }
+}
@@ -0,0 +1,101 @@
+package com.asm.mja.transformer;
+
+import com.asm.mja.TestClasses;
+import com.asm.mja.config.Config;
+import com.asm.mja.logging.TraceFileLogger;
+import com.asm.mja.rule.Rule;
+import com.asm.mja.rule.RuleParser;
+import junit.framework.TestCase;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * @author ashut
+ * @since 16-10-2026
+ */
+
+public class AsmEngineTest extends TestCase {
+
+    public static class Branchy {
+        public int branchy(int value) {
+            int result = 0;
+            if (value > 0) {
+                result = value;
+            }
+            return result;
+        }
+    }
+
+    private Path traceDir;
+
+    @Override
+    protected void setUp() throws IOException {
+        traceDir = Files.createTempDirectory("monarch-test");
+        TraceFileLogger.getInstance().init(traceDir.toString());
+    }
+
+    public void testAtRuleOnBranchTargetVerifies() throws Exception {
+        String className = Branchy.class.getName();
+        byte[] original = TestClasses.readClass(Branchy.class);
+        int line = branchTargetLine(original, "branchy");
+        List<Rule> rules = RuleParser.parseRules(Collections.singletonList(className + "::branchy@AT(" + line + ")::STACK"));
+        AsmEngine engine = new AsmEngine(new Config(), TraceFileLogger.getInstance(), new JavassistEngine(new Config(), TraceFileLogger.getInstance()));
+        byte[] instrumented = engine.instrument(getClass().getClassLoader(), className, original, rules);
+
+        // Loading the class verifies it
+        Object instance = TestClasses.defineClass(className, instrumented).getDeclaredConstructor().newInstance();
+        Method branchy = instance.getClass().getMethod("branchy", int.class);
+        // Both paths reach the line, one of them through the branch
+        assertEquals(0, branchy.invoke(instance, -1));
+        assertEquals(7, branchy.invoke(instance, 7));
+        String trace = new String(Files.readAllBytes(traceDir.resolve("agent.trace")), StandardCharsets.UTF_8);
+        assertTrue(trace.contains("| AT | STACK"));
+    }
+
+    /**
+     * @return The first line of a method that starts at the target of a jump.
+     */
+    private static int branchTargetLine(byte[] bytecode, final String methodName) {
+        final List<Label> targets = new ArrayList<>();
+        final Map<Label, Integer> lines = new HashMap<>();
+        new ClassReader(bytecode).accept(new ClassVisitor(Opcodes.ASM9) {
+            @Override
+            public MethodVisitor visitMethod(int access, String name, String descriptor, String signature, String[] exceptions) {
+                if (!name.equals(methodName)) {
+                    return null;
+                }
+                return new MethodVisitor(Opcodes.ASM9) {
+                    @Override
+                    public void visitJumpInsn(int opcode, Label label) {
+                        targets.add(label);
+                    }
+
+                    @Override
+                    public void visitLineNumber(int line, Label start) {
+                        lines.put(start, line);
+                    }
+                };
+            }
+        }, 0);
+        for (Label target : targets) {
+            if (lines.containsKey(target)) {
+                return lines.get(target);
+            }
+        }
+        throw new IllegalStateException("No line of " + methodName + " starts at a branch target");
+    }
+}
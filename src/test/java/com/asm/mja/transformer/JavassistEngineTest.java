@@ -0,0 +1,106 @@
+package com.asm.mja.transformer;
+
+import com.asm.mja.TestClasses;
+import com.asm.mja.config.Config;
+import com.asm.mja.logging.TraceFileLogger;
+import com.asm.mja.metrics.IntervalMetrics;
+import com.asm.mja.metrics.MethodRegistry;
+import com.asm.mja.rule.Rule;
+import com.asm.mja.rule.RuleParser;
+import junit.framework.TestCase;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * @author ashut
+ * @since 16-10-2026
+ */
+
+public class JavassistEngineTest extends TestCase {
+
+    public static class AlwaysThrows {
+        public void boom() {
+            throw new IllegalStateException("boom");
+        }
+    }
+
+    public static class Branchy {
+        public long branchy(int count, long value) {
+            if (count > 0) {
+                return value;
+            }
+            return count;
+        }
+    }
+
+    @Override
+    protected void setUp() throws IOException {
+        TraceFileLogger.getInstance().init(Files.createTempDirectory("monarch-test").toString());
+    }
+
+    public void testProfileOfMethodThatAlwaysThrowsVerifies() throws Exception {
+        Object instance = instrument(AlwaysThrows.class, "boom@PROFILE");
+        assertThrowsFromBoom(instance);
+        assertEquals(1, rollInterval(AlwaysThrows.class, "boom", "()V").getErrors());
+    }
+
+    public void testCpuOfMethodThatAlwaysThrowsVerifies() throws Exception {
+        assertThrowsFromBoom(instrument(AlwaysThrows.class, "boom@CPU"));
+    }
+
+    public void testAllocOfMethodThatAlwaysThrowsVerifies() throws Exception {
+        assertThrowsFromBoom(instrument(AlwaysThrows.class, "boom@ALLOC"));
+    }
+
+    public void testCpuOfMethodWithBranchesVerifies() throws Exception {
+        Object instance = instrument(Branchy.class, "branchy@CPU");
+        invokeBranchy(instance);
+        assertEquals(2, rollInterval(Branchy.class, "branchy", "(IJ)J").getCpuCalls());
+    }
+
+    public void testAllocOfMethodWithBranchesVerifies() throws Exception {
+        Object instance = instrument(Branchy.class, "branchy@ALLOC");
+        invokeBranchy(instance);
+        assertEquals(2, rollInterval(Branchy.class, "branchy", "(IJ)J").getAllocCalls());
+    }
+
+    /**
+     * Instruments a test class with one rule and loads it, which verifies it.
+     *
+     * @return An instance of the instrumented class.
+     */
+    private Object instrument(Class<?> classz, String rule) throws Exception {
+        String className = classz.getName();
+        List<Rule> rules = RuleParser.parseRules(Collections.singletonList(className + "::" + rule));
+        JavassistEngine engine = new JavassistEngine(new Config(), TraceFileLogger.getInstance());
+        byte[] instrumented = engine.instrument(getClass().getClassLoader(), className, TestClasses.readClass(classz), rules);
+        return TestClasses.defineClass(className, instrumented).getDeclaredConstructor().newInstance();
+    }
+
+    private static void assertThrowsFromBoom(Object instance) throws Exception {
+        try {
+            instance.getClass().getMethod("boom").invoke(instance);
+            fail("boom() should throw");
+        } catch (InvocationTargetException e) {
+            assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+    }
+
+    /**
+     * Calls branchy() once through each of its returns.
+     */
+    private static void invokeBranchy(Object instance) throws Exception {
+        Method branchy = instance.getClass().getMethod("branchy", int.class, long.class);
+        assertEquals(5L, branchy.invoke(instance, 1, 5L));
+        assertEquals(0L, branchy.invoke(instance, 0, 5L));
+    }
+
+    private static IntervalMetrics.Snapshot rollInterval(Class<?> classz, String method, String descriptor) {
+        return MethodRegistry.get(MethodRegistry.register(classz.getName() + '.' + method, descriptor)).rollInterval();
+    }
+}